@@ -0,0 +1,211 @@
+package org.apache.lucene.analysis.cn;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * 用多个线程同时分析一批文档，按文档的输入顺序返回每个文档的Token。
+ *
+ * 每个文档是一个任务，由固定个数的工作线程调用analyzer.reusableTokenStream分析，结果与逐个调用tokenStream完全相同。
+ * 词典是只读的，分词的工作空间属于每个WordTokenizer，每个工作线程重用自己的TokenStream链，因此各个线程之间没有共享的可变状态，也不需要加锁。
+ * 同时处理中的文档最多为并行度的若干倍，文档来自Iterator时不需要先把所有文档读进内存。
+ *
+ * <pre>
+ * ParallelAnalyzer parallel = new ParallelAnalyzer(new SmartChineseAnalyzer(), 8);
+ * parallel.analyze(documents, handler);
+ * parallel.close();
+ * </pre>
+ */
+public class ParallelAnalyzer {
+
+	/**
+	 * 接收一个文档的分析结果，按文档的输入顺序在调用analyze的线程中调用
+	 */
+	public interface TokenHandler {
+
+		/**
+		 * @param index
+		 *            文档的序号，从0开始
+		 * @param tokens
+		 *            文档中的所有Token
+		 */
+		void document(int index, List<Token> tokens) throws IOException;
+
+	}
+
+	/** 每个工作线程最多同时积压的文档数 */
+	private static final int IN_FLIGHT_PER_THREAD = 4;
+
+	private final Analyzer analyzer;
+
+	private final int maxInFlight;
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param analyzer
+	 *            分析每个文档使用的Analyzer，它的reusableTokenStream必须可以被多个线程同时调用
+	 * @param parallelism
+	 *            工作线程的个数，通常为CPU的核数
+	 */
+	public ParallelAnalyzer(Analyzer analyzer, int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive: "
+					+ parallelism);
+		this.analyzer = analyzer;
+		this.maxInFlight = parallelism * IN_FLIGHT_PER_THREAD;
+		this.executor = Executors.newFixedThreadPool(parallelism,
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "ParallelAnalyzer-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * 使用SmartChineseAnalyzer，工作线程的个数等于CPU的核数
+	 */
+	public ParallelAnalyzer() {
+		this(new SmartChineseAnalyzer(), Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * 分析documents中的所有文档，按顺序把每个文档的结果交给handler。documents只在调用者的线程中读取
+	 */
+	public void analyze(Iterator<? extends Reader> documents,
+			TokenHandler handler) throws IOException {
+		LinkedList<Future<List<Token>>> pending = new LinkedList<Future<List<Token>>>();
+		int index = 0;
+		boolean finished = false;
+		try {
+			while (documents.hasNext()) {
+				if (pending.size() >= maxInFlight)
+					handler.document(index++, take(pending));
+				pending.add(executor.submit(new DocumentTask(documents.next())));
+			}
+			while (!pending.isEmpty())
+				handler.document(index++, take(pending));
+			finished = true;
+		} finally {
+			// handler或者documents抛出异常时，不再需要的任务也要取消
+			if (!finished)
+				cancel(pending);
+		}
+	}
+
+	/**
+	 * 分析所有的文本，返回的列表与texts的顺序相同
+	 */
+	public List<List<Token>> analyze(Collection<String> texts)
+			throws IOException {
+		final List<List<Token>> results = new ArrayList<List<Token>>(texts
+				.size());
+		final Iterator<String> iterator = texts.iterator();
+		analyze(new Iterator<Reader>() {
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			public Reader next() {
+				return new StringReader(iterator.next());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}, new TokenHandler() {
+			public void document(int index, List<Token> tokens) {
+				results.add(tokens);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * 停止所有的工作线程，之后不能再调用analyze
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * 等待最早提交的文档分析完毕并取出结果。任务中的异常在这里抛出，此时其余的任务被取消
+	 */
+	private List<Token> take(LinkedList<Future<List<Token>>> pending)
+			throws IOException {
+		Future<List<Token>> future = pending.removeFirst();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			cancel(pending);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			cancel(pending);
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static void cancel(List<Future<List<Token>>> pending) {
+		for (Future<List<Token>> future : pending)
+			future.cancel(false);
+		pending.clear();
+	}
+
+	private class DocumentTask implements Callable<List<Token>> {
+
+		private final Reader reader;
+
+		DocumentTask(Reader reader) {
+			this.reader = reader;
+		}
+
+		public List<Token> call() throws IOException {
+			List<Token> tokens = new ArrayList<Token>();
+			TokenStream stream = analyzer.reusableTokenStream("", reader);
+			Token reusableToken = new Token();
+			try {
+				// 返回的Token只在下一次调用next之前有效，因此保存它的副本
+				for (Token token = stream.next(reusableToken); token != null; token = stream
+						.next(reusableToken))
+					tokens.add((Token) token.clone());
+			} finally {
+				stream.close();
+			}
+			return tokens;
+		}
+
+	}
+
+}
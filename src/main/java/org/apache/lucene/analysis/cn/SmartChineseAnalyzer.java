@@ -16,6 +16,8 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.PorterStemFilter;
 import org.apache.lucene.analysis.StopFilter;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cn.smart.SegmentationMode;
+import org.apache.lucene.analysis.cn.smart.SentenceCache;
 import org.apache.lucene.analysis.cn.smart.SentenceTokenizer;
 import org.apache.lucene.analysis.cn.smart.WordSegmenter;
 import org.apache.lucene.analysis.cn.smart.WordTokenizer;
@@ -44,6 +46,8 @@ public class SmartChineseAnalyzer extends Analyzer {
 
 	private WordSegmenter wordSegment;
 
+	private int maxSentenceLength = SentenceTokenizer.DEFAULT_MAX_SENTENCE_LENGTH;
+
 	public SmartChineseAnalyzer() {
 		this(false);
 	}
@@ -55,11 +59,25 @@ public class SmartChineseAnalyzer extends Analyzer {
 	 * @param useDefaultStopWords
 	 */
 	public SmartChineseAnalyzer(boolean useDefaultStopWords) {
+		this(useDefaultStopWords, SegmentationMode.HHMM);
+	}
+
+	/**
+	 * 指定分词算法。SegmentationMode.MAXIMUM_MATCHING不使用关联词典，速度更快但歧义切分的准确率较低，
+	 * 此时setSentenceCache设置的缓存不起作用
+	 * 
+	 * @param useDefaultStopWords
+	 * @param mode
+	 *            分词算法
+	 * @see SegmentationMode
+	 */
+	public SmartChineseAnalyzer(boolean useDefaultStopWords,
+			SegmentationMode mode) {
 		if (useDefaultStopWords) {
 			stopWords = loadStopWords(this.getClass().getResourceAsStream(
 					"stopwords.txt"));
 		}
-		wordSegment = new WordSegmenter();
+		wordSegment = new WordSegmenter(mode);
 	}
 
 	/**
@@ -102,6 +120,39 @@ public class SmartChineseAnalyzer extends Analyzer {
 		wordSegment = new WordSegmenter();
 	}
 
+	/**
+	 * 设置句子的最大长度。没有标点的长文本超过这个长度时被切分成几个句子，使每个句子分词的时间和内存有上限，0表示不限制
+	 * 
+	 * @see SentenceTokenizer#SentenceTokenizer(Reader, int)
+	 */
+	public void setMaxSentenceLength(int maxSentenceLength) {
+		if (maxSentenceLength < 0)
+			throw new IllegalArgumentException("invalid maxSentenceLength: "
+					+ maxSentenceLength);
+		this.maxSentenceLength = maxSentenceLength;
+	}
+
+	public int getMaxSentenceLength() {
+		return maxSentenceLength;
+	}
+
+	/**
+	 * 设置句子分词结果的缓存，重复出现的句子(例如查询、新闻标题)不再重新分词，null表示不使用缓存
+	 * 
+	 * @see SentenceCache
+	 */
+	public void setSentenceCache(SentenceCache cache) {
+		wordSegment.setCache(cache);
+	}
+
+	public SentenceCache getSentenceCache() {
+		return wordSegment.getCache();
+	}
+
+	public SegmentationMode getSegmentationMode() {
+		return wordSegment.getMode();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -110,8 +161,38 @@ public class SmartChineseAnalyzer extends Analyzer {
 	 */
 	@Override
 	public TokenStream tokenStream(String fieldName, Reader reader) {
-		TokenStream result = new SentenceTokenizer(reader);
-		result = new WordTokenizer(result, wordSegment);
+		return createStreams(reader).result;
+	}
+
+	/**
+	 * 与tokenStream相同，但每个线程重用自己的SentenceTokenizer、WordTokenizer和过滤器，
+	 * 不为每个文档和字段重新创建，适合大量的小文档。返回的TokenStream在同一线程下一次调用本方法时失效
+	 * 
+	 * @see org.apache.lucene.analysis.Analyzer#reusableTokenStream(java.lang.String,
+	 *      java.io.Reader)
+	 */
+	@Override
+	public TokenStream reusableTokenStream(String fieldName, Reader reader)
+			throws IOException {
+		SavedStreams streams = (SavedStreams) getPreviousTokenStream();
+		if (streams == null
+				|| streams.sentenceTokenizer.getMaxSentenceLength() != maxSentenceLength) {
+			// 第一次使用，或者最大句子长度已经改变
+			streams = createStreams(reader);
+			setPreviousTokenStream(streams);
+		} else {
+			streams.wordTokenizer.reset(reader);
+		}
+		return streams.result;
+	}
+
+	private SavedStreams createStreams(Reader reader) {
+		SavedStreams streams = new SavedStreams();
+		streams.sentenceTokenizer = new SentenceTokenizer(reader,
+				maxSentenceLength);
+		streams.wordTokenizer = new WordTokenizer(streams.sentenceTokenizer,
+				wordSegment);
+		TokenStream result = streams.wordTokenizer;
 //		 result = new LowerCaseFilter(result);
 		// 不再需要LowerCaseFilter，因为SegTokenFilter已经将所有英文字符转换成小写
 		// stem太严格了, This is not bug, this feature:)
@@ -119,7 +200,17 @@ public class SmartChineseAnalyzer extends Analyzer {
 		if (stopWords != null) {
 			result = new StopFilter(result, stopWords, false);
 		}
-		return result;
+		streams.result = result;
+		return streams;
+	}
+
+	/**
+	 * 一个线程重用的TokenStream链，过滤器没有跨文档的状态，只需要重置两个Tokenizer
+	 */
+	private static final class SavedStreams {
+		SentenceTokenizer sentenceTokenizer;
+		WordTokenizer wordTokenizer;
+		TokenStream result;
 	}
 	
 	public static void main(String[] args) {
@@ -9,7 +9,7 @@ import java.util.Properties;
  * 在默认情况下，SmartChineseAnalyzer内置有词典库、默认停止词库，已经经过封装，用户可以直接使用。
  * 
  * 特殊情况下，用户需要使用指定的词典库和停止词库，此时需要删除org.apache.lucene.analysis.cn.smart. hhmm下的
- * coredict.mem 和 bigramdict.mem， 然后使用AnalyzerProfile来指定词典库目录。
+ * coredict.bin、coredict.mem 和 bigramdict.mem， 然后使用AnalyzerProfile来指定词典库目录。
  * 
  * AnalyzerProfile 用来寻找存放分词词库数据 和停用词数据的目录， 该目录下应该有 bigramdict.dct, coredict.dct,
  * stopwords_utf8.txt, 查找过程依次如下：
@@ -40,6 +40,13 @@ public class AnalyzerProfile {
 	
 	public static String ANALYSIS_DATA_DIR = "";
 	
+	/**
+	 * 从coredict.dct、bigramdict.dct或者*.mem构建词典之后，是否把结果写成词典目录中的*.bin，下次启动直接映射。
+	 * 默认不写，词典目录可以是只读的；*.bin应该由DictionaryCompiler离线生成。
+	 * 运行时加入参数-Danalysis.data.writebin=true打开
+	 */
+	public static boolean WRITE_BIN = Boolean.getBoolean("analysis.data.writebin");
+	
 	static {
 		init();
 	}
@@ -25,4 +25,36 @@ public enum CharType {
 	
 	/** 未知 */
 	OTHER;
+
+	/*
+	 * 各个类型的byte编码，等于ordinal()。分词时字符类型保存在byte数组中，这些常量用在switch语句里
+	 */
+
+	public static final byte DELIMITER_CODE = 0;
+
+	public static final byte LETTER_CODE = 1;
+
+	public static final byte DIGIT_CODE = 2;
+
+	public static final byte HANZI_CODE = 3;
+
+	public static final byte SPACE_LIKE_CODE = 4;
+
+	public static final byte FULLWIDTH_LETTER_CODE = 5;
+
+	public static final byte FULLWIDTH_DIGIT_CODE = 6;
+
+	public static final byte OTHER_CODE = 7;
+
+	private static final CharType[] VALUES = values();
+
+	/** 这个类型的byte编码 */
+	public byte code() {
+		return (byte) ordinal();
+	}
+
+	/** byte编码对应的类型 */
+	public static CharType fromCode(byte code) {
+		return VALUES[code];
+	}
 }
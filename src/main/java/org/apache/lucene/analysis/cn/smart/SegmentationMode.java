@@ -0,0 +1,9 @@
+package org.apache.lucene.analysis.cn.smart;
+
+/**
+ * 句子分词使用的算法
+ */
+public enum SegmentationMode {
+	HHMM, // 词频和词间跳转概率上的最短路径，结果最准确
+	MAXIMUM_MATCHING; // 双向最大匹配，只用词频区分歧义，不使用关联词典，速度更快
+}
@@ -0,0 +1,533 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.cn.smart.dict.DictionarySnapshot;
+
+/**
+ * 以句子内容为key缓存分词结果，供WordSegmenter跳过重复句子的词格、跳转图和最短路径计算。
+ *
+ * 缓存的不是Token，而是每个词在句子中的起止位置和WordType，命中时由句子本身重新生成Token。
+ * 每个结果记录它所用的词典快照的代数和用户词典的版本号，词典被重新加载或者用户词典被修改后，旧的结果不再命中，随后被淘汰。
+ *
+ * 淘汰策略参照W-TinyLFU：新的结果先进入很小的窗口区(LRU)，从窗口区出来时与主区中最旧的结果比较最近的访问频率，
+ * 只有更常用的才能进入主区，因此一次性的大量句子(例如批量导入)不会冲掉经常重复的句子。访问频率由每段一个
+ * 4位计数器的count-min sketch估计，计数总数达到一定值时全部减半，使频率反映最近的访问。
+ * 主区分为试用区和保护区(SLRU)，在试用区再次命中的结果进入保护区。
+ *
+ * 缓存按句子的hash值分成若干段，每段有自己的锁，不同段的访问互不影响。大小按估计的内存占用限制，而不是按结果的个数。
+ *
+ * <pre>
+ * SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer();
+ * analyzer.setSentenceCache(new SentenceCache(32 * 1024 * 1024));
+ * </pre>
+ */
+public class SentenceCache {
+
+	/** 超过这个长度的句子不查询也不缓存，这样的句子很少重复出现 */
+	public static final int MAX_SENTENCE_LENGTH = 256;
+
+	private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+	/** 每个结果除数组内容以外的大致内存占用：Entry、Key、HashMap.Entry和三个数组的对象头 */
+	private static final int ENTRY_OVERHEAD = 144;
+
+	/** 估计频率时使用的平均结果大小 */
+	private static final int AVERAGE_ENTRY_BYTES = 256;
+
+	private static final WordType[] WORD_TYPES = WordType.values();
+
+	private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+	private final Segment[] segments;
+
+	private final long maxBytes;
+
+	/**
+	 * @param maxBytes
+	 *            缓存最多占用的内存，按估计值计算
+	 */
+	public SentenceCache(long maxBytes) {
+		this(maxBytes, DEFAULT_SEGMENT_COUNT);
+	}
+
+	/**
+	 * @param maxBytes
+	 *            缓存最多占用的内存，按估计值计算
+	 * @param segmentCount
+	 *            分段的个数，取整为2的幂，同时访问缓存的线程较多时可以增加
+	 */
+	public SentenceCache(long maxBytes, int segmentCount) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("invalid maxBytes: " + maxBytes);
+		if (segmentCount < 1)
+			throw new IllegalArgumentException("invalid segmentCount: "
+					+ segmentCount);
+		int count = 1;
+		while (count < segmentCount)
+			count <<= 1;
+		this.maxBytes = maxBytes;
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++)
+			segments[i] = new Segment(maxBytes / count);
+	}
+
+	/**
+	 * 一个句子的分词结果，不包括"始##始"和"末##末"。内容不可修改，可以在锁外读取
+	 */
+	public static final class Entry {
+
+		private final Key key;
+
+		/** 第i个词的起止位置是offsets[2 * i]和offsets[2 * i + 1]，相对于句子的开头 */
+		private final int[] offsets;
+
+		private final byte[] wordTypes;
+
+		/** 分词时所用快照的DictionarySnapshot.getGeneration()，不引用快照本身，旧的词典可以在替换后被回收 */
+		private final long generation;
+
+		private final int userVersion;
+
+		private final int weight;
+
+		private int queue;
+
+		private Entry prev, next;
+
+		private Entry(Key key, int[] offsets, byte[] wordTypes,
+				long generation, int userVersion) {
+			this.key = key;
+			this.offsets = offsets;
+			this.wordTypes = wordTypes;
+			this.generation = generation;
+			this.userVersion = userVersion;
+			this.weight = key == null ? 0 : ENTRY_OVERHEAD + key.length * 2
+					+ offsets.length * 4 + wordTypes.length;
+		}
+
+		/** 词的个数 */
+		public int size() {
+			return wordTypes.length;
+		}
+
+		public int getStartOffset(int index) {
+			return offsets[index * 2];
+		}
+
+		public int getEndOffset(int index) {
+			return offsets[index * 2 + 1];
+		}
+
+		public WordType getWordType(int index) {
+			return WORD_TYPES[wordTypes[index]];
+		}
+
+	}
+
+	/**
+	 * 查询句子的分词结果
+	 *
+	 * @param snapshot
+	 *            分词将要使用的词典快照
+	 * @param userVersion
+	 *            分词之前读取的snapshot.getUserDictionary().getVersion()
+	 * @return 缓存的结果，没有或者已经失效时为null
+	 */
+	public Entry get(char[] sentence, int offset, int length,
+			DictionarySnapshot snapshot, int userVersion) {
+		Key key = new Key(sentence, offset, length);
+		return segmentFor(key).get(key, snapshot.getGeneration(), userVersion);
+	}
+
+	/**
+	 * 保存句子的分词结果，句子的内容会被复制
+	 *
+	 * @param offsets
+	 *            每个词的起止位置，见Entry
+	 * @param wordTypes
+	 *            每个词的WordType.ordinal()
+	 * @return 保存的结果
+	 */
+	public Entry put(char[] sentence, int offset, int length,
+			DictionarySnapshot snapshot, int userVersion, int[] offsets,
+			byte[] wordTypes) {
+		char[] chars = new char[length];
+		System.arraycopy(sentence, offset, chars, 0, length);
+		Key key = new Key(chars, 0, length);
+		Entry entry = new Entry(key, offsets, wordTypes, snapshot
+				.getGeneration(), userVersion);
+		segmentFor(key).put(entry);
+		return entry;
+	}
+
+	/** 删除所有的结果，计数器不变 */
+	public void clear() {
+		for (Segment segment : segments)
+			segment.clear();
+	}
+
+	/** 缓存的结果个数 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	/** 所有结果估计的内存占用 */
+	public long getWeightedSize() {
+		long bytes = 0;
+		for (Segment segment : segments)
+			bytes += segment.weightedSize();
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getHitCount() {
+		long count = 0;
+		for (Segment segment : segments)
+			count += segment.counter(0);
+		return count;
+	}
+
+	/** 未命中的次数，包括结果已经失效的情况 */
+	public long getMissCount() {
+		long count = 0;
+		for (Segment segment : segments)
+			count += segment.counter(1);
+		return count;
+	}
+
+	/** 因为空间不足而淘汰(包括没有被主区接纳)的结果个数 */
+	public long getEvictionCount() {
+		long count = 0;
+		for (Segment segment : segments)
+			count += segment.counter(2);
+		return count;
+	}
+
+	public String toString() {
+		return "SentenceCache[size=" + size() + ", bytes=" + getWeightedSize()
+				+ "/" + maxBytes + ", hits=" + getHitCount() + ", misses="
+				+ getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private Segment segmentFor(Key key) {
+		return segments[(key.hash >>> 16) & (segments.length - 1)];
+	}
+
+	/**
+	 * 句子内容作为HashMap的key。查询时直接引用调用者的数组，不复制
+	 */
+	private static final class Key {
+
+		final char[] chars;
+
+		final int offset;
+
+		final int length;
+
+		final int hash;
+
+		Key(char[] chars, int offset, int length) {
+			this.chars = chars;
+			this.offset = offset;
+			this.length = length;
+			int h = length;
+			for (int i = offset; i < offset + length; i++)
+				h = 31 * h + chars[i];
+			// murmur3的fmix32，高位也均匀，用来选择段和sketch中的位置
+			h ^= h >>> 16;
+			h *= 0x85ebca6b;
+			h ^= h >>> 13;
+			h *= 0xc2b2ae35;
+			h ^= h >>> 16;
+			this.hash = h;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			if (hash != other.hash || length != other.length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (chars[offset + i] != other.chars[other.offset + i])
+					return false;
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * 按最近使用的顺序排列的双向链表，first()是最久没有使用的
+	 */
+	private static final class Queue {
+
+		private final Entry head = new Entry(null, null, null, 0, 0);
+
+		Queue() {
+			head.prev = head;
+			head.next = head;
+		}
+
+		Entry first() {
+			return head.next == head ? null : head.next;
+		}
+
+		void addLast(Entry entry) {
+			entry.prev = head.prev;
+			entry.next = head;
+			head.prev.next = entry;
+			head.prev = entry;
+		}
+
+		void remove(Entry entry) {
+			entry.prev.next = entry.next;
+			entry.next.prev = entry.prev;
+			entry.prev = null;
+			entry.next = null;
+		}
+
+		void moveToLast(Entry entry) {
+			remove(entry);
+			addLast(entry);
+		}
+
+		void clear() {
+			head.prev = head;
+			head.next = head;
+		}
+
+	}
+
+	/**
+	 * 缓存的一段，所有操作都在它自己的锁内进行
+	 */
+	private static final class Segment {
+
+		private final Map<Key, Entry> map = new HashMap<Key, Entry>();
+
+		private final FrequencySketch sketch;
+
+		private final Queue window = new Queue();
+
+		private final Queue probation = new Queue();
+
+		private final Queue protectedQueue = new Queue();
+
+		/** 窗口区占1%，主区中保护区占80% */
+		private final long windowMax, mainMax, protectedMax;
+
+		private long windowBytes, mainBytes, protectedBytes;
+
+		private long hits, misses, evictions;
+
+		Segment(long maxBytes) {
+			windowMax = maxBytes / 100;
+			mainMax = maxBytes - windowMax;
+			protectedMax = mainMax * 4 / 5;
+			sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(16,
+					maxBytes / AVERAGE_ENTRY_BYTES)));
+		}
+
+		synchronized Entry get(Key key, long generation, int userVersion) {
+			sketch.increment(key.hash);
+			Entry entry = map.get(key);
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			if (entry.generation != generation
+					|| entry.userVersion != userVersion) {
+				remove(entry);
+				misses++;
+				return null;
+			}
+			hits++;
+			switch (entry.queue) {
+			case WINDOW:
+				window.moveToLast(entry);
+				break;
+			case PROBATION:
+				// 在试用区再次命中，进入保护区，保护区满时把其中最旧的结果降回试用区
+				probation.remove(entry);
+				entry.queue = PROTECTED;
+				protectedQueue.addLast(entry);
+				protectedBytes += entry.weight;
+				while (protectedBytes > protectedMax) {
+					Entry demoted = protectedQueue.first();
+					protectedQueue.remove(demoted);
+					protectedBytes -= demoted.weight;
+					demoted.queue = PROBATION;
+					probation.addLast(demoted);
+				}
+				break;
+			default:
+				protectedQueue.moveToLast(entry);
+			}
+			return entry;
+		}
+
+		synchronized void put(Entry entry) {
+			Entry old = map.get(entry.key);
+			if (old != null)
+				remove(old);
+			map.put(entry.key, entry);
+			entry.queue = WINDOW;
+			window.addLast(entry);
+			windowBytes += entry.weight;
+			while (windowBytes > windowMax) {
+				Entry candidate = window.first();
+				window.remove(candidate);
+				windowBytes -= candidate.weight;
+				admit(candidate);
+			}
+		}
+
+		/**
+		 * 决定从窗口区出来的结果能否进入主区：主区没有空间时与主区中最旧的结果比较访问频率，淘汰较少使用的一方
+		 */
+		private void admit(Entry candidate) {
+			int frequency = sketch.frequency(candidate.key.hash);
+			while (mainBytes + candidate.weight > mainMax) {
+				Entry victim = probation.first();
+				if (victim == null)
+					victim = protectedQueue.first();
+				if (victim == null
+						|| frequency <= sketch.frequency(victim.key.hash)) {
+					map.remove(candidate.key);
+					evictions++;
+					return;
+				}
+				remove(victim);
+				evictions++;
+			}
+			candidate.queue = PROBATION;
+			probation.addLast(candidate);
+			mainBytes += candidate.weight;
+		}
+
+		/** 从map和所在的链表中删除结果 */
+		private void remove(Entry entry) {
+			map.remove(entry.key);
+			switch (entry.queue) {
+			case WINDOW:
+				window.remove(entry);
+				windowBytes -= entry.weight;
+				break;
+			case PROBATION:
+				probation.remove(entry);
+				mainBytes -= entry.weight;
+				break;
+			default:
+				protectedQueue.remove(entry);
+				mainBytes -= entry.weight;
+				protectedBytes -= entry.weight;
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			window.clear();
+			probation.clear();
+			protectedQueue.clear();
+			windowBytes = mainBytes = protectedBytes = 0;
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		synchronized long weightedSize() {
+			return windowBytes + mainBytes;
+		}
+
+		synchronized long counter(int which) {
+			return which == 0 ? hits : which == 1 ? misses : evictions;
+		}
+
+	}
+
+	/**
+	 * 估计最近访问频率的count-min sketch。每个long中有16个4位计数器，每个key对应4个计数器，取其中的最小值
+	 */
+	private static final class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+				0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+
+		private final int sampleSize;
+
+		private int additions;
+
+		FrequencySketch(int expectedEntries) {
+			int length = 1;
+			while (length < expectedEntries)
+				length <<= 1;
+			table = new long[length];
+			sampleSize = 10 * length;
+		}
+
+		int frequency(int hash) {
+			int min = 15;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long h = indexHash(hash, i);
+				int count = (int) (table[index(h)] >>> shift(h)) & 15;
+				if (count < min)
+					min = count;
+			}
+			return min;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long h = indexHash(hash, i);
+				int index = index(h), shift = shift(h);
+				if (((table[index] >>> shift) & 15) < 15) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize)
+				reset();
+		}
+
+		/** 所有计数器减半，使频率反映最近的访问 */
+		private void reset() {
+			for (int i = 0; i < table.length; i++)
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			additions /= 2;
+		}
+
+		private static long indexHash(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			return h ^ (h >>> 32);
+		}
+
+		private int index(long h) {
+			return (int) (h >>> 32) & (table.length - 1);
+		}
+
+		private static int shift(long h) {
+			return ((int) h & 15) << 2;
+		}
+
+	}
+
+}
@@ -1,19 +1,29 @@
 /**
- * 
+ *
  */
 package org.apache.lucene.analysis.cn.smart;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 
 import org.apache.lucene.analysis.Token;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.cn.smart.dict.DictionarySnapshot;
+import org.apache.lucene.analysis.cn.smart.dict.UserDictionary;
+import org.apache.lucene.analysis.cn.smart.dict.WordDictionary;
 
 /**
- * 
+ *
  * 包含一个完整句子的Token，从文件中读出，是下一步分词的对象
- * 
+ *
+ * 输入按块读入block数组，标点和空白用位图判断。句子总是block中连续的一段，读到块的末尾时把未完成的句子移到数组开头再继续读入，
+ * 句子比block还长时扩大block，因此句子的内容直接从block复制到Token中，不需要StringBuffer和String。
+ *
+ * 没有标点和连续空白的文本(例如网页、日志、OCR的结果)会成为一个很长的句子，使词格和跳转图的大小失去控制。
+ * 句子达到maxSentenceLength时在其中找一个切分点提前结束句子，剩下的部分属于下一个句子：优先在两种不同类型的字符之间切分，
+ * 例如汉字与字母之间，核心词典的词不会跨越这种位置，只要也没有跨越它的用户词(例如"卡拉OK"、"T恤")，切分就不影响分词结果；
+ * 找不到这样的位置时，在最后几个位置中选择跨越它的词典词最少的位置。
+ *
  */
 public class SentenceTokenizer extends Tokenizer {
 
@@ -21,68 +31,252 @@ public class SentenceTokenizer extends Tokenizer {
 	 * 用来切断句子的标点符号 。，！？；,!?;
 	 */
 	public final static String PUNCTION = "。，！？；.,!?;";
-	
-	private StringBuffer buffer = new StringBuffer();
-	
-	private BufferedReader bufferInput;
-	
+
+	/** 每次从reader读入的字符数 */
+	private static final int BLOCK_SIZE = 16384;
+
+	/** 默认的最大句子长度 */
+	public static final int DEFAULT_MAX_SENTENCE_LENGTH = 1024;
+
+	/** 句子全是汉字时，只在最后这么多个位置中查找跨越的词典词最少的切分点 */
+	private static final int HANZI_CUT_WINDOW = 16;
+
+	/** PUNCTION中字符的位图，共65536位 */
+	private static final long[] PUNCTION_SET = toBitSet(PUNCTION);
+
+	/** Utility.SPACES中字符的位图 */
+	private static final long[] SPACE_SET = toBitSet(Utility.SPACES);
+
+	private char[] block = new char[BLOCK_SIZE];
+
+	/** block中下一个要处理的字符 */
+	private int position;
+
+	/** block中有效字符的结束位置 */
+	private int limit;
+
+	/** 当前句子在block中的起始位置 */
+	private int sentenceStart;
+
 	private int tokenStart = 0, tokenEnd = 0;
-	
-	private Token token = new Token();
-	
+
+	private final int maxSentenceLength;
+
 	public SentenceTokenizer(Reader reader) {
-		bufferInput = new BufferedReader(reader, 2048);
+		this(reader, DEFAULT_MAX_SENTENCE_LENGTH);
+	}
+
+	/**
+	 * @param maxSentenceLength
+	 *            句子的最大长度，超过时在适当的位置切分，0表示不限制
+	 */
+	public SentenceTokenizer(Reader reader, int maxSentenceLength) {
+		super(reader);
+		if (maxSentenceLength < 0)
+			throw new IllegalArgumentException("invalid maxSentenceLength: "
+					+ maxSentenceLength);
+		this.maxSentenceLength = maxSentenceLength;
 	}
-	
-	public Token next() throws IOException {
-		buffer.setLength(0);
-		int ci;
-		char ch, pch;
-		boolean atBegin = true;
+
+	public int getMaxSentenceLength() {
+		return maxSentenceLength;
+	}
+
+	/**
+	 * 换成新的输入，从头开始切分句子，用于在多个文档之间重用同一个SentenceTokenizer。
+	 * 为很长的句子扩大过的block恢复为默认大小，不让一个文档长期占用大块内存
+	 */
+	public void reset(Reader input) throws IOException {
+		super.reset(input);
+		if (block.length > BLOCK_SIZE)
+			block = new char[BLOCK_SIZE];
+		position = 0;
+		limit = 0;
+		sentenceStart = 0;
+		tokenStart = 0;
+		tokenEnd = 0;
+	}
+
+	public Token next(Token reusableToken) throws IOException {
+		char ch;
 		tokenStart = tokenEnd;
-		ci = bufferInput.read();
-		ch = (char) ci;
-		
+		// 跳过句首的空白，跳过的部分不需要保留
+		while (true) {
+			sentenceStart = position;
+			if (position == limit && !fill())
+				return null;
+			if (!contains(SPACE_SET, block[position]))
+				break;
+			position++;
+			tokenStart++;
+			tokenEnd++;
+		}
+
+		int sentenceEnd;
 		while (true) {
-			if (ci == -1) {
+			if (maxSentenceLength > 0
+					&& position - sentenceStart == maxSentenceLength) {
+				// 句子太长，退回到切分点，之后的字符重新属于下一个句子
+				sentenceEnd = findCut();
+				tokenEnd -= position - sentenceEnd;
+				position = sentenceEnd;
+				break;
+			}
+			if (position == limit && !fill()) {
+				sentenceEnd = position;
 				break;
-			} else if (PUNCTION.indexOf(ch) != -1) {
+			}
+			ch = block[position++];
+			tokenEnd++;
+			if (contains(PUNCTION_SET, ch)) {
 				// 找到了句子末尾的标识符
-				buffer.append(ch);
-				tokenEnd++;
+				sentenceEnd = position;
 				break;
-			} else if (atBegin && Utility.SPACES.indexOf(ch) != -1) {
-				tokenStart++;
-				tokenEnd++;
-				ci = bufferInput.read();
-				ch = (char) ci;
-			} else {
-				buffer.append(ch);
-				atBegin = false;
-				tokenEnd++;
-				pch = ch;
-				ci = bufferInput.read();
-				ch = (char) ci;
-				// 如果碰上了两个连续的skip字符，例如两个回车，两个空格或者，
-		        // 一个回车加一个空格等等，将其视为句子结束，以免句子太长而内存不足
-				if (Utility.SPACES.indexOf(ch) != -1 &&
-						Utility.SPACES.indexOf(pch) != -1) {
+			}
+			// 如果碰上了两个连续的skip字符，例如两个回车，两个空格或者，
+			// 一个回车加一个空格等等，将其视为句子结束，以免句子太长而内存不足。第二个skip字符不属于句子
+			if (contains(SPACE_SET, ch)) {
+				if (position == limit && !fill())
+					continue;
+				if (contains(SPACE_SET, block[position])) {
+					sentenceEnd = position;
+					position++;
 					tokenEnd++;
 					break;
 				}
 			}
 		}
-		if (buffer.length() == 0)
-			return null;
-		else {
-			token.clear();
-			token.reinit(buffer.toString(), tokenStart, tokenEnd, "sentence");
-			return token;
+		reusableToken.reinit(block, sentenceStart, sentenceEnd - sentenceStart,
+				tokenStart, tokenEnd, "sentence");
+		return reusableToken;
+	}
+
+	/**
+	 * 为已经达到最大长度的句子block[sentenceStart, position)找一个切分点
+	 *
+	 * @return 切分点在block中的位置，句子在它之前结束
+	 */
+	private int findCut() {
+		DictionarySnapshot snapshot = DictionarySnapshot.getCurrent();
+		UserDictionary userDict = snapshot.getUserDictionary();
+		int maxUserWordLength = userDict.getMaxWordLength();
+		int[] userEnds = new int[maxUserWordLength];
+		int[] userFreqs = new int[maxUserWordLength];
+		// 从后向前找不同类型字符之间的位置，只在句子的后一半中找，保证切出的句子不会太短
+		int lowest = sentenceStart + maxSentenceLength / 2;
+		for (int cut = position - 1; cut >= lowest && cut > sentenceStart; cut--) {
+			if (isSafeCut(Utility.getCharTypeCode(block[cut - 1]), Utility
+					.getCharTypeCode(block[cut]))
+					&& countUserWordsCrossing(userDict, cut, userEnds, userFreqs) == 0)
+				return cut;
+		}
+
+		// 都是汉字，选择跨越的核心词典词和用户词最少的位置，相同时取靠后的位置，与HHMMSegmenter放入词格的候选词一致
+		WordDictionary wordDict = snapshot.getWordDictionary();
+		int maxWordLength = wordDict.getMaxWordLength();
+		int[] ends = new int[maxWordLength];
+		int[] freqs = new int[maxWordLength];
+		int bestCut = position, bestCrossing = Integer.MAX_VALUE;
+		lowest = Math.max(sentenceStart + 1, position - HANZI_CUT_WINDOW);
+		for (int cut = position - 1; cut >= lowest; cut--) {
+			int crossing = countUserWordsCrossing(userDict, cut, userEnds,
+					userFreqs);
+			for (int start = Math.max(sentenceStart, cut - maxWordLength + 1); start < cut; start++) {
+				int count = wordDict.prefixSearch(block, start, position, ends,
+						freqs);
+				for (int i = 0; i < count; i++) {
+					if (ends[i] > cut)
+						crossing++;
+				}
+			}
+			if (crossing < bestCrossing) {
+				bestCrossing = crossing;
+				bestCut = cut;
+				if (crossing == 0)
+					break;
+			}
+		}
+		return bestCut;
+	}
+
+	/**
+	 * 跨越cut的用户词的个数，即从cut之前开始、在cut之后(当前句子之内)结束的用户词
+	 */
+	private int countUserWordsCrossing(UserDictionary userDict, int cut,
+			int[] ends, int[] freqs) {
+		int crossing = 0;
+		for (int start = Math.max(sentenceStart, cut - ends.length + 1); start < cut; start++) {
+			int count = userDict.prefixSearch(block, start, position, ends,
+					freqs);
+			for (int i = 0; i < count; i++) {
+				if (ends[i] > cut)
+					crossing++;
+			}
+		}
+		return crossing;
+	}
+
+	/**
+	 * 在类型为before和after的两个相邻字符之间切分是否不会切断任何核心词典的候选词。
+	 * 连续的汉字之间可能有词，连续的字母或者数字(包括全角)在HHMMSegmenter中是一个整体。
+	 * 用户词可以跨越不同类型的字符，需要另外检查
+	 */
+	private static boolean isSafeCut(byte before, byte after) {
+		switch (before) {
+		case CharType.HANZI_CODE:
+			return after != CharType.HANZI_CODE;
+		case CharType.LETTER_CODE:
+		case CharType.FULLWIDTH_LETTER_CODE:
+			return after != CharType.LETTER_CODE
+					&& after != CharType.FULLWIDTH_LETTER_CODE;
+		case CharType.DIGIT_CODE:
+		case CharType.FULLWIDTH_DIGIT_CODE:
+			return after != CharType.DIGIT_CODE
+					&& after != CharType.FULLWIDTH_DIGIT_CODE;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * 读入下一块输入。当前句子中已经读入的部分被移到block的开头，block放满时扩大一倍
+	 *
+	 * @return 是否读入了新的字符，false表示输入已经结束
+	 */
+	private boolean fill() throws IOException {
+		int keep = limit - sentenceStart;
+		if (keep == block.length) {
+			char[] newBlock = new char[block.length * 2];
+			System.arraycopy(block, sentenceStart, newBlock, 0, keep);
+			block = newBlock;
+		} else if (keep > 0) {
+			System.arraycopy(block, sentenceStart, block, 0, keep);
+		}
+		position -= sentenceStart;
+		limit = keep;
+		sentenceStart = 0;
+		int count = input.read(block, limit, block.length - limit);
+		if (count <= 0)
+			return false;
+		limit += count;
+		return true;
+	}
+
+	private static long[] toBitSet(String chars) {
+		long[] bits = new long[1024];
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			bits[c >>> 6] |= 1L << c;
 		}
+		return bits;
 	}
-	
+
+	private static boolean contains(long[] bits, char c) {
+		return (bits[c >>> 6] & (1L << c)) != 0;
+	}
+
 	public void close() throws IOException {
-		bufferInput.close();
+		input.close();
 	}
-	
+
 }
@@ -3,6 +3,18 @@ package org.apache.lucene.analysis.cn.smart;
 public class Utility {
 
 	public static final char[] COMMON_DELIMITER = new char[] {','};
+
+	/** 词典中表示句子开始的特殊词 */
+	public static final char[] START_CHAR_ARRAY = "始##始".toCharArray();
+
+	/** 词典中表示句子结束的特殊词 */
+	public static final char[] END_CHAR_ARRAY = "末##末".toCharArray();
+
+	/** 词典中代表所有英文字符串的特殊词 */
+	public static final char[] STRING_CHAR_ARRAY = "未##串".toCharArray();
+
+	/** 词典中代表所有数字串的特殊词 */
+	public static final char[] NUMBER_CHAR_ARRAY = "未##数".toCharArray();
 	
 	/**
 	 * 需要跳过的符号，例如制表符，回车，换行等等。
@@ -11,8 +23,46 @@ public class Utility {
 	
 	public static final int MAX_FREQUENCE = 2079997 + 80000;
 
+	/**
+	 * 每个字符的类型编码，由classify对全部65536个字符预先计算，共64K
+	 * 
+	 * @see CharType#code()
+	 */
+	private static final byte[] CHAR_TYPE_TABLE = createCharTypeTable();
+
+	private static byte[] createCharTypeTable() {
+		byte[] table = new byte[65536];
+		for (int ch = 0; ch < table.length; ch++)
+			table[ch] = classify((char) ch).code();
+		return table;
+	}
+
 	/** 得到一个字符的字符类型 */
 	public static CharType getCharType(char ch) {
+		return CharType.fromCode(CHAR_TYPE_TABLE[ch]);
+	}
+
+	/**
+	 * 得到一个字符的字符类型编码，只查一次表
+	 * 
+	 * @see CharType#HANZI_CODE
+	 */
+	public static byte getCharTypeCode(char ch) {
+		return CHAR_TYPE_TABLE[ch];
+	}
+
+	/**
+	 * 把buffer中从offset开始的length个字符的类型编码依次放入codes
+	 */
+	public static void getCharTypeCodes(char[] buffer, int offset, int length,
+			byte[] codes) {
+		byte[] table = CHAR_TYPE_TABLE;
+		for (int i = 0; i < length; i++)
+			codes[i] = table[buffer[offset + i]];
+	}
+
+	/** 字符类型的判断规则，只用来生成CHAR_TYPE_TABLE */
+	private static CharType classify(char ch) {
 		// 汉字分词要在英文分词之后进行 最多的是汉字
 		if (ch >= 0x4E00 && ch <= 0x9FA5)
 			return CharType.HANZI;
@@ -1,19 +1,72 @@
 package org.apache.lucene.analysis.cn.smart;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.smart.dict.DictionarySnapshot;
 import org.apache.lucene.analysis.cn.smart.dict.HHMMSegmenter;
+import org.apache.lucene.analysis.cn.smart.dict.MaxMatchSegmenter;
+import org.apache.lucene.analysis.cn.smart.dict.SegGraph;
 import org.apache.lucene.analysis.cn.smart.dict.SegToken;
 import org.apache.lucene.analysis.cn.smart.dict.SegTokenFilter;
+import org.apache.lucene.analysis.cn.smart.dict.SegmentationContext;
 
 public class WordSegmenter {
 
 	private HHMMSegmenter hhmmSegmenter = new HHMMSegmenter();
 
+	private MaxMatchSegmenter maxMatchSegmenter = new MaxMatchSegmenter();
+
 	private SegTokenFilter tokenFilter = new SegTokenFilter();
 
+	private final SegmentationMode mode;
+
+	/** 句子分词结果的缓存，为null时不使用缓存 */
+	private volatile SentenceCache cache;
+
+	public WordSegmenter() {
+		this(SegmentationMode.HHMM);
+	}
+
+	/**
+	 * @param mode
+	 *            分词算法。MAXIMUM_MATCHING时忽略shortPathCount，也不使用缓存
+	 */
+	public WordSegmenter(SegmentationMode mode) {
+		if (mode == null)
+			throw new IllegalArgumentException("mode must not be null");
+		this.mode = mode;
+	}
+
+	/**
+	 * @param cache
+	 *            句子分词结果的缓存，可以被多个WordSegmenter共用
+	 */
+	public WordSegmenter(SentenceCache cache) {
+		this(SegmentationMode.HHMM);
+		this.cache = cache;
+	}
+
+	public SegmentationMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * 设置句子分词结果的缓存，null表示不使用缓存。只有使用SegmentationContext的segment和segmentSentence使用缓存
+	 */
+	public void setCache(SentenceCache cache) {
+		this.cache = cache;
+	}
+
+	public SentenceCache getCache() {
+		return cache;
+	}
+
 	/**
 	 * 调用HHMMSegment类将当前的sentence Token分词，返回分词结果，保存在Token List中
 	 * 
@@ -21,10 +74,19 @@ public class WordSegmenter {
 	 *            句子的Token
 	 * @param shortPathCount
 	 *            HHMM算法分词所需要的优化前的最短路径个数。一般越大分词结果越精确，但是计算代价也较高。
+	 *            大于1时，其他分词结果中与最优结果不同的Token也会以positionIncrement为0的方式插入结果中
 	 * @return 分词结果的Token List
+	 * @see #segmentSentencePaths(Token, int)
 	 */
 	public List<Token> segmentSentence(Token sentenceToken, int shortPathCount) {
+		if (mode == SegmentationMode.MAXIMUM_MATCHING) {
+			List<Token> tokens = segmentSentence(sentenceToken, 1,
+					new SegmentationContext());
+			return new ArrayList<Token>(tokens);
+		}
 		String sentence = sentenceToken.term();
+		if (shortPathCount > 1)
+			return mergePaths(segmentSentencePaths(sentenceToken, shortPathCount));
 
 		List<SegToken> segTokenList = hhmmSegmenter.process(sentence);
 		List<Token> results = new ArrayList<Token>();
@@ -37,6 +99,193 @@ public class WordSegmenter {
 		return results;
 	}
 
+	/**
+	 * 与segmentSentence(Token, int)相同，但使用context中的工作空间，不为每个句子分配新的词格、数组和Token。
+	 * 返回的列表和其中的Token属于context，在处理下一个句子时会被重用
+	 * 
+	 * @param context
+	 *            分词的工作空间，只能同时被一个线程使用
+	 * @see SegmentationContext
+	 * @see #segment(Token, SegmentationContext)
+	 */
+	public List<Token> segmentSentence(Token sentenceToken, int shortPathCount,
+			SegmentationContext context) {
+		if (shortPathCount > 1 && mode == SegmentationMode.HHMM)
+			return segmentSentence(sentenceToken, shortPathCount);
+
+		int count = segment(sentenceToken, context);
+		List<Token> results = context.getTokenList();
+		results.clear();
+		for (int i = 0; i < count; i++) {
+			Token token = context.getToken(i);
+			fillToken(token, sentenceToken, i, context);
+			results.add(token);
+		}
+		return results;
+	}
+
+	/**
+	 * 将句子分词，结果只保存在context中，不生成Token，再用fillToken逐个取出，例如直接填充TokenStream的reusableToken。
+	 * 结果是词格中的最优路径，或者是SentenceCache中的缓存，在同一个context处理下一个句子之前有效
+	 * 
+	 * @param sentenceToken
+	 *            句子的Token，在取完所有的词之前不能修改
+	 * @param context
+	 *            分词的工作空间，只能同时被一个线程使用
+	 * @return 分词结果中词的个数
+	 * @see #fillToken(Token, Token, int, SegmentationContext)
+	 */
+	public int segment(Token sentenceToken, SegmentationContext context) {
+		char[] sentence = sentenceToken.termBuffer();
+		int length = sentenceToken.termLength();
+		if (mode == SegmentationMode.MAXIMUM_MATCHING) {
+			context.setCachedResult(null);
+			return maxMatchSegmenter.process(sentence, 0, length, context);
+		}
+		SentenceCache cache = this.cache;
+		if (cache != null && length <= SentenceCache.MAX_SENTENCE_LENGTH) {
+			SentenceCache.Entry entry = lookup(sentence, length, cache, context);
+			context.setCachedResult(entry);
+			return entry.size();
+		}
+		context.setCachedResult(null);
+		hhmmSegmenter.process(sentence, 0, length, context);
+		return context.getBestPathLength();
+	}
+
+	/**
+	 * 先在cache中查找句子的分词结果，没有时分词并保存到cache中
+	 */
+	private SentenceCache.Entry lookup(char[] sentence, int length,
+			SentenceCache cache, SegmentationContext context) {
+		// 用户词典的版本号在分词之前读取，保证结果不会被标记为比实际使用的词典更新的版本
+		DictionarySnapshot snapshot = DictionarySnapshot.getCurrent();
+		int userVersion = snapshot.getUserDictionary().getVersion();
+		SentenceCache.Entry entry = cache.get(sentence, 0, length, snapshot,
+				userVersion);
+		if (entry == null) {
+			hhmmSegmenter.process(sentence, 0, length, snapshot, context);
+			SegGraph segGraph = context.getSegGraph();
+			int count = context.getBestPathLength();
+			int[] offsets = new int[count * 2];
+			byte[] wordTypes = new byte[count];
+			for (int i = 0; i < count; i++) {
+				int index = context.getBestPathIndex(i);
+				offsets[i * 2] = segGraph.getStartOffset(index);
+				offsets[i * 2 + 1] = segGraph.getEndOffset(index);
+				wordTypes[i] = (byte) segGraph.getWordType(index).ordinal();
+			}
+			entry = cache.put(sentence, 0, length, snapshot, userVersion,
+					offsets, wordTypes);
+		}
+		return entry;
+	}
+
+	/**
+	 * 用最近一次segment(Token, SegmentationContext)结果中的第i个词填充token，标点统一换成Utility.COMMON_DELIMITER
+	 * 
+	 * @param sentenceToken
+	 *            传给segment的句子
+	 */
+	public void fillToken(Token token, Token sentenceToken, int i,
+			SegmentationContext context) {
+		int start, end;
+		WordType wordType;
+		SentenceCache.Entry entry = context.getCachedResult();
+		if (entry != null) {
+			start = entry.getStartOffset(i);
+			end = entry.getEndOffset(i);
+			wordType = entry.getWordType(i);
+		} else {
+			SegGraph segGraph = context.getSegGraph();
+			int index = context.getBestPathIndex(i);
+			start = segGraph.getStartOffset(index);
+			end = segGraph.getEndOffset(index);
+			wordType = segGraph.getWordType(index);
+		}
+		int sentenceStartOffset = sentenceToken.startOffset();
+		if (wordType == WordType.DELIMITER) {
+			token.reinit(Utility.COMMON_DELIMITER, 0,
+					Utility.COMMON_DELIMITER.length, start + sentenceStartOffset,
+					end + sentenceStartOffset, "word");
+		} else {
+			token.reinit(sentenceToken.termBuffer(), start, end - start, start
+					+ sentenceStartOffset, end + sentenceStartOffset, "word");
+			tokenFilter.filter(token.termBuffer(), 0, token.termLength(),
+					wordType);
+		}
+	}
+
+	/**
+	 * 求出句子的前pathCount种分词结果，按概率从大到小排列，例如用于查询扩展
+	 * 
+	 * @param sentenceToken
+	 *            句子的Token
+	 * @param pathCount
+	 *            需要的分词结果个数，句子较短时实际的个数可能更少
+	 * @return 每种分词结果的Token List
+	 */
+	public List<List<Token>> segmentSentencePaths(Token sentenceToken,
+			int pathCount) {
+		String sentence = sentenceToken.term();
+		List<List<SegToken>> paths = hhmmSegmenter.process(sentence, pathCount);
+		List<List<Token>> results = new ArrayList<List<Token>>(paths.size());
+		for (List<SegToken> segTokenList : paths) {
+			List<Token> tokens = new ArrayList<Token>(segTokenList.size());
+			for (int i = 1; i < segTokenList.size() - 1; i++) {
+				tokens.add(convertSegToken(segTokenList.get(i), sentence,
+						sentenceToken.startOffset(), "word"));
+			}
+			results.add(tokens);
+		}
+		return results;
+	}
+
+	/**
+	 * 以最优的分词结果为主，把其他分词结果中不同的Token插入其中。插入的Token的positionIncrement为0，
+	 * 位于起始位置不大于它的最后一个最优Token之后，按起始位置和结束位置排序
+	 */
+	private List<Token> mergePaths(List<List<Token>> paths) {
+		if (paths.isEmpty())
+			return new ArrayList<Token>();
+		List<Token> best = paths.get(0);
+		Set<Long> seen = new HashSet<Long>();
+		for (Token token : best)
+			seen.add(spanOf(token));
+		List<Token> alternatives = new ArrayList<Token>();
+		for (int p = 1; p < paths.size(); p++) {
+			for (Token token : paths.get(p)) {
+				if (seen.add(spanOf(token))) {
+					token.setPositionIncrement(0);
+					alternatives.add(token);
+				}
+			}
+		}
+		Collections.sort(alternatives, new Comparator<Token>() {
+			public int compare(Token t1, Token t2) {
+				if (t1.startOffset() != t2.startOffset())
+					return t1.startOffset() - t2.startOffset();
+				return t1.endOffset() - t2.endOffset();
+			}
+		});
+
+		List<Token> results = new ArrayList<Token>(best.size()
+				+ alternatives.size());
+		int a = 0;
+		for (int b = 0; b < best.size(); b++) {
+			results.add(best.get(b));
+			while (a < alternatives.size()
+					&& (b + 1 == best.size() || alternatives.get(a)
+							.startOffset() < best.get(b + 1).startOffset()))
+				results.add(alternatives.get(a++));
+		}
+		return results;
+	}
+
+	private static Long spanOf(Token token) {
+		return ((long) token.startOffset() << 32) | token.endOffset();
+	}
+
 	/**
 	 * 
 	 * 将RawToken类型转换成索引需要的Token类型， 因为索引需要RawToken在原句中的内容， 因此转换时需要指定原句子。
@@ -1,21 +1,27 @@
 package org.apache.lucene.analysis.cn.smart;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
+import java.io.Reader;
 
 import org.apache.lucene.analysis.Token;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.cn.smart.dict.SegmentationContext;
 
 public class WordTokenizer extends Tokenizer {
 	
 	/** 分词主程序 wordTokenizer初始化时加载 */
 	private WordSegmenter wordSegmenter;
 	private TokenStream in;
-	private Iterator<Token> tokenIter;
-	private List<Token> tokenBuffer;
-	private Token sentenceToken = new Token();
+	/** 当前句子，分词结果中的词直接从它生成 */
+	private Token sentence;
+	/** 当前句子中词的个数 */
+	private int tokenCount;
+	private int tokenIndex;
+	private final Token sentenceToken = new Token();
+	
+	/** 本WordTokenizer分词时使用的工作空间，所有句子共用，其中保存着当前句子的分词结果 */
+	private SegmentationContext context = new SegmentationContext();
 	
 	/**
 	 * 设计上是SentenceTokenizer的下一处理层。将SentenceTokenizer的句子读出，
@@ -34,31 +40,48 @@ public class WordTokenizer extends Tokenizer {
 		this.wordSegmenter = wordSegmenter;
 	}
 	
-	public Token next() throws IOException {
-		if (tokenIter != null && tokenIter.hasNext())
-			return tokenIter.next();
-		else {
-			if (processNextSentence())
-				return tokenIter.next();
-			else
+	/**
+	 * 分词结果只是context中的最优路径，每次直接用其中的下一个词填充reusableToken，不生成中间的Token和列表
+	 */
+	public Token next(Token reusableToken) throws IOException {
+		if (tokenIndex >= tokenCount) {
+			if (!processNextSentence())
 				return null;
 		}
+		wordSegmenter.fillToken(reusableToken, sentence, tokenIndex++, context);
+		return reusableToken;
 	}
 	
 	/**
 	 * 当当前的句子分词并索引完毕时，需要读取下一个句子Token， 本函数负责调用上一层的SentenceTokenizer去加载下一个句子，
-	 * 并将其分词， 将分词结果保存成Token放在tokenBuffer中
+	 * 并将其分词， 分词结果保存在context中
 	 * 
 	 * @return 读取并处理下一个句子成功与否，如果没有成功，说明文件处理完毕，后面没有Token了
 	 * @throws IOException
 	 */
 	private boolean processNextSentence() throws IOException {
-		sentenceToken = in.next(sentenceToken);
-		if (sentenceToken == null)
-			return false;
-		tokenBuffer = wordSegmenter.segmentSentence(sentenceToken, 1);
-		tokenIter = tokenBuffer.iterator();
-		return tokenBuffer != null && tokenIter.hasNext();
+		do {
+			// 输入结束时返回null，sentenceToken本身要保留下来，在reset之后继续使用
+			sentence = in.next(sentenceToken);
+			if (sentence == null)
+				return false;
+			tokenCount = wordSegmenter.segment(sentence, context);
+			tokenIndex = 0;
+		} while (tokenCount == 0);
+		return true;
+	}
+	
+	/**
+	 * 换成新的输入，用于在多个文档之间重用同一个WordTokenizer和它的工作空间。
+	 * 上一层必须是Tokenizer(通常是SentenceTokenizer)，新的输入交给它处理，当前句子中未返回的Token被丢弃
+	 */
+	public void reset(Reader input) throws IOException {
+		if (!(in instanceof Tokenizer))
+			throw new UnsupportedOperationException(
+					"reset(Reader) requires a Tokenizer as input: " + in);
+		((Tokenizer) in).reset(input);
+		tokenCount = 0;
+		tokenIndex = 0;
 	}
 	
 	public void close() throws IOException {
@@ -1,6 +1,9 @@
 package org.apache.lucene.analysis.cn.smart.dict;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public abstract class AbstractDictionary {
 	
@@ -13,6 +16,11 @@ public abstract class AbstractDictionary {
 	/** 词库文件中收录了6768个汉字的词频统计数据 */
 	public static final int CHAR_NUM_IN_FILE = 6768;
 	
+	/** FNV hash的初始值，hash1(char[])相当于从它开始调用updateHash1 */
+	public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	
+	private static final long FNV_PRIME = 1099511628211L;
+	
 	// =====================================================
 	// code +0 +1 +2 +3 +4 +5 +6 +7 +8 +9 +A +B +C +D +E +F
 	// B0A0 啊 阿 埃 挨 哎 唉 哀 皑 癌 蔼 矮 艾 碍 爱 隘
@@ -40,6 +48,68 @@ public abstract class AbstractDictionary {
 	// 88-94 备用区
 	// ======================================================
 	
+	/**
+	 * GB2312编号与Unicode字符的双向对照表，第一次使用时由GB2312字符集生成，之后的转换只需要查表，不再经过字符集的编码和解码
+	 */
+	private static class GB2312Table {
+
+		/** 每个编号对应的字符，与new String(区位码, "GB2312")的结果相同，共94 * 94个；不是有效字符的编号为0 */
+		static final char[] ID_TO_CHAR = new char[94 * 94];
+
+		/** 不是有效字符的编号解码得到的字符串，例如"\uFFFD"或"\uFFFD\uFFFD"，有效字符的位置为null */
+		static final String[] ID_TO_STRING = new String[94 * 94];
+
+		/** 每个Unicode字符的编号，与用getBytes("GB2312")计算的结果相同，-1表示不在GB2312中 */
+		static final short[] CHAR_TO_ID = new short[65536];
+
+		/**
+		 * 两个都不小于0x80的字节不是有效字符时，字符集是把它们一起解码为一个'\uFFFD'，还是只把第一个字节解码为'\uFFFD'，
+		 * 再从第二个字节开始解码。下标为(b0 - 0x80) * 128 + b1 - 0x80，置位表示一起解码
+		 */
+		static final long[] INVALID_PAIRS = new long[128 * 128 / 64];
+
+		static {
+			Arrays.fill(CHAR_TO_ID, (short) -1);
+			try {
+				byte[] buffer = new byte[2];
+				for (int id = 0; id < ID_TO_CHAR.length; id++) {
+					buffer[0] = (byte) (id / 94 + 161);
+					buffer[1] = (byte) (id % 94 + 161);
+					String cchar = new String(buffer, "GB2312");
+					// 有字符的区中无效的位解码为一个'\uFFFD'，也不是有效字符
+					if (cchar.length() == 1 && cchar.charAt(0) != '\uFFFD')
+						ID_TO_CHAR[id] = cchar.charAt(0);
+					else
+						ID_TO_STRING[id] = cchar;
+				}
+				// 只有能解码出来的字符才可能编码成两个字节，这里按编码的结果确定编号，多个区位码对应同一个字符时与编码器的选择一致
+				for (int id = 0; id < ID_TO_CHAR.length; id++) {
+					char ch = ID_TO_CHAR[id];
+					if (ch == 0 || CHAR_TO_ID[ch] != -1)
+						continue;
+					byte[] bytes = Character.toString(ch).getBytes("GB2312");
+					if (bytes.length == 2)
+						CHAR_TO_ID[ch] = (short) (((bytes[0] & 0x0FF) - 161) * 94 + (bytes[1] & 0x0FF) - 161);
+				}
+				// 不同的区对无效字节的处理不同，例如有字符的区中无效的位和没有字符的区，这里直接记录字符集的结果
+				for (int b0 = 0x80; b0 <= 0xFF; b0++) {
+					for (int b1 = 0x80; b1 <= 0xFF; b1++) {
+						buffer[0] = (byte) b0;
+						buffer[1] = (byte) b1;
+						String decoded = new String(buffer, "GB2312");
+						if (decoded.length() == 1 && decoded.charAt(0) == '\uFFFD') {
+							int index = (b0 - 0x80) * 128 + b1 - 0x80;
+							INVALID_PAIRS[index >>> 6] |= 1L << index;
+						}
+					}
+				}
+			} catch (UnsupportedEncodingException e) {
+				e.printStackTrace();
+			}
+		}
+
+	}
+
 	/**
 	 * GB2312 共收录有 7445 个字符，其中简化汉字 6763 个，字母和符号 682 个。
 	 * 
@@ -50,19 +120,71 @@ public abstract class AbstractDictionary {
 	public String getCCByGB2312Id(int ccid) {
 		if (ccid < 0 || ccid > WordDictionary.GB2312_CHAR_NUM)
 			return "";
-		int cc1 = ccid / 94 + 161;	// 区位码的
-		int cc2 = ccid % 94 + 161;
-		byte[] buffer = new byte[2];
-		buffer[0] = (byte) cc1;
-		buffer[1] = (byte) cc2;
-		try {
-			String cchar = new String(buffer, "GB2312");
-			return cchar;
-		} catch (UnsupportedEncodingException e) {
-			return "";
-		}
+		char ch = GB2312Table.ID_TO_CHAR[ccid];
+		return ch != 0 ? String.valueOf(ch) : GB2312Table.ID_TO_STRING[ccid];
+	}
+
+	/**
+	 * 与getCCByGB2312Id相同，但直接返回字符，不生成String
+	 * 
+	 * @return 编号对应的字符，编号不是有效的GB2312字符时为0
+	 */
+	public char getCharByGB2312Id(int ccid) {
+		if (ccid < 0 || ccid > WordDictionary.GB2312_CHAR_NUM)
+			return 0;
+		return GB2312Table.ID_TO_CHAR[ccid];
 	}
 	
+	/**
+	 * 把GB2312编码的字节解码为字符，ASCII字节直接对应一个字符，两个字节的字符查表得到，不能识别的字节变成'\uFFFD'。
+	 * 结果与new String(bytes, "GB2312")相同，包括无效的字节对和末尾单独的高位字节
+	 * 
+	 * @param chars
+	 *            存放结果的数组，长度不小于length
+	 * @return 解码得到的字符数
+	 */
+	public static int decodeGB2312(byte[] bytes, int offset, int length,
+			char[] chars) {
+		return decodeGB2312(ByteBuffer.wrap(bytes, offset, length), length,
+				chars);
+	}
+
+	/**
+	 * 从buffer的当前位置解码length个GB2312编码的字节，并将position移到其后。用于直接在映射的词典源文件上解码，不需要先复制到byte数组
+	 * 
+	 * @see #decodeGB2312(byte[], int, int, char[])
+	 */
+	public static int decodeGB2312(ByteBuffer buffer, int length, char[] chars) {
+		if (length > buffer.remaining())
+			throw new BufferUnderflowException();
+		char[] table = GB2312Table.ID_TO_CHAR;
+		long[] invalidPairs = GB2312Table.INVALID_PAIRS;
+		int count = 0, end = buffer.position() + length, b0, b1, index;
+		char ch;
+		for (int i = buffer.position(); i < end; i++) {
+			b0 = buffer.get(i) & 0x0FF;
+			if (b0 < 0x80) {
+				chars[count++] = (char) b0;
+			} else if (i + 1 < end && (b1 = buffer.get(i + 1) & 0x0FF) >= 0x80) {
+				if (b0 >= 0xA1 && b0 <= 0xFE && b1 >= 0xA1 && b1 <= 0xFE
+						&& (ch = table[(b0 - 161) * 94 + b1 - 161]) != 0) {
+					chars[count++] = ch;
+					i++;
+				} else {
+					chars[count++] = '\uFFFD';
+					index = (b0 - 0x80) * 128 + b1 - 0x80;
+					if ((invalidPairs[index >>> 6] & (1L << index)) != 0)
+						i++;
+				}
+			} else {
+				// 后面是ASCII字节或者已经没有字节
+				chars[count++] = '\uFFFD';
+			}
+		}
+		buffer.position(end);
+		return count;
+	}
+
 	/**
 	 * 根据输入的Unicode字符，获取它的GB2312编码或者ascii编码，
 	 * 
@@ -71,19 +193,7 @@ public abstract class AbstractDictionary {
 	 * @return ch在GB2312中的位置，-1表示该字符不认识
 	 */
 	public short getGB2312Id(char ch) {
-		try {
-			byte[] buffer = Character.toString(ch).getBytes("GB2312");
-			if (buffer.length != 2) {
-				// 正常情况下buffer应该是两个字节，否则说明ch不属于GB2312编码，故返回'?'，此时说明不认识该字符
-				return -1;
-			}
-			int b0 = (int) (buffer[0] & 0x0FF) - 161; // 编码从A1开始，因此减去0xA1=161
-			int b1 = (int) (buffer[1] & 0x0FF) - 161; // 第一个字符和最后一个字符没有汉字，因此每个区只收16*6-2=94个汉字
-			return (short) (b0 * 94 + b1);
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		return -1;
+		return GB2312Table.CHAR_TO_ID[ch];
 	} 
 	
 	/**
@@ -114,18 +224,47 @@ public abstract class AbstractDictionary {
 	 * @return
 	 */
 	public long hash1(char carray[]) {
-		final long p = 1099511628211L;
-		long hash = 0xcbf29ce484222325L;
-		for (char d : carray) {
-			hash = (hash ^ (d & 0x00FF)) * p;
-			hash = (hash ^ (d >> 8)) * p;
-		}
-
+		return hash1(carray, 0, carray.length);
+	}
+	
+	/**
+	 * 计算carray中从offset开始、长度为length的部分的hash值，结果与hash1(char[])对相同内容的计算结果一致
+	 * 
+	 * @see hash1(char[])
+	 */
+	public long hash1(char carray[], int offset, int length) {
 		// hash += hash << 13;
 		// hash ^= hash >> 7;
 		// hash += hash << 3;
 		// hash ^= hash >> 17;
 		// hash += hash << 5;
+		return updateHash1(FNV_OFFSET_BASIS, carray, offset, length);
+	}
+
+	/**
+	 * 在已有的hash1状态上继续计算一个字符。hash1(a + b)等于以hash1(a)为状态继续计算b的结果，
+	 * 因此拼接起来的字符串不需要真正拼接，可以先计算出前一部分的状态，再逐段继续计算
+	 *
+	 * @param hash
+	 *            前面部分的hash1值，空串为FNV_OFFSET_BASIS
+	 */
+	public long updateHash1(long hash, char c) {
+		hash = (hash ^ (c & 0x00FF)) * FNV_PRIME;
+		hash = (hash ^ (c >> 8)) * FNV_PRIME;
+		return hash;
+	}
+
+	/**
+	 * 在已有的hash1状态上继续计算carray中从offset开始、长度为length的部分
+	 *
+	 * @see #updateHash1(long, char)
+	 */
+	public long updateHash1(long hash, char carray[], int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			char d = carray[i];
+			hash = (hash ^ (d & 0x00FF)) * FNV_PRIME;
+			hash = (hash ^ (d >> 8)) * FNV_PRIME;
+		}
 		return hash;
 	}
 	
@@ -157,9 +296,17 @@ public abstract class AbstractDictionary {
 	 * @return
 	 */
 	public int hash2(char carray[]) {
+		return hash2(carray, 0, carray.length);
+	}
+	
+	/**
+	 * @see hash2(char[])
+	 */
+	public int hash2(char carray[], int offset, int length) {
 		int hash = 5381;
 		
-		for (char c : carray) {
+		for (int i = offset; i < offset + length; i++) {
+			char c = carray[i];
 			/** hash 33 + c */
 			hash = ((hash << 5) + hash) + c & 0x00FF;
 			hash = ((hash << 5) + hash) + c >> 8;
@@ -1,83 +1,582 @@
 package org.apache.lucene.analysis.cn.smart.dict;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.lucene.analysis.cn.smart.Utility;
 
+/**
+ * 词格中相邻Token之间的跳转图。
+ *
+ * 每条边从一个Token指向紧跟在它后面的Token，边按照起始Token的index排列(CSR的方式)：
+ * 从第i个Token出发的边是[edgeStarts[i], edgeStarts[i + 1])，每条边的结束Token和跳转代价分别保存在edgeTos和edgeWeights中。
+ * 因为SegGraph中Token的index是按startOffset排序的，而边总是指向startOffset更大的Token，所以按index的顺序就是图的拓扑顺序。
+ *
+ * 所有数组在调用build后可以用于下一个句子，长度不够时才重新分配。
+ */
 public class BiSegGraph {
 
-	private Map<Integer, List<SegTokenPair>> tokenPairListTable = new HashMap<Integer, List<SegTokenPair>>();
+	private SegGraph segGraph;
 
-	private List<SegToken> segTokenList;
+	private int tokenCount;
 
-	private static BigramDictionary bigramDict = BigramDictionary.getInstance();
+	private int edgeCount;
 
+	private int[] edgeStarts = new int[16];
+
+	private int[] edgeTos = new int[64];
+
+	private double[] edgeWeights = new double[64];
+
+	/** 每条边的起始Token，只在计算多条路径时生成 */
+	private int[] edgeFroms = new int[0];
+
+	/** 从"始##始"到每个Token的最短路径长度 */
+	private double[] distances = new double[16];
+
+	/** 最短路径上每个Token的前一个Token */
+	private int[] predecessors = new int[16];
+
+	/** 最短路径上的Token index，从"始##始"到"末##末" */
+	private int[] path = new int[16];
+
+	private int pathLength;
+
+	/** 第k短路径的计算状态，只在findShortPaths的k大于1时使用 */
+	private KBest kBest;
+
+	/** 是否由findShortPaths计算了多条路径 */
+	private boolean multiPath;
+
+	private int pathCount;
+
+	public BiSegGraph() {
+	}
+
+	/**
+	 * 使用当前词典快照中的关联词典生成跳转图
+	 */
 	public BiSegGraph(SegGraph segGraph) {
-		segTokenList = segGraph.makeIndex();
-		generateBitSegGraph(segGraph);
+		build(segGraph, DictionarySnapshot.getCurrent().getBigramDictionary());
 	}
 
 	/**
-	 * 生成两两词之间的二叉图表，将结果保存在一个MultiTokenPairMap中
-	 * 
+	 * 生成两两词之间的跳转图，替换原来的内容
+	 *
+	 * @param segGraph
+	 *            所有的Token
+	 * @param bigramDict
+	 *            查询词与词之间跳转频率的关联词典
+	 */
+	public void build(SegGraph segGraph, BigramDictionary bigramDict) {
+		this.segGraph = segGraph;
+		tokenCount = segGraph.getTokenCount();
+		edgeCount = 0;
+		pathLength = 0;
+		pathCount = 0;
+		multiPath = false;
+		if (edgeStarts.length < tokenCount + 1) {
+			edgeStarts = new int[tokenCount + 1];
+			distances = new double[tokenCount];
+			predecessors = new int[tokenCount];
+			path = new int[tokenCount];
+		}
+		generateBitSegGraph(segGraph, bigramDict);
+	}
+
+	/**
+	 * 生成两两词之间的二叉图表
+	 *
 	 * @param segGraph
 	 *            所有的Token列表
-	 * @param smooth
-	 *            平滑系数
-	 * @param biDict
-	 *            二叉词典
-	 * @return
-	 * 
-	 * @see MultiTokenPairMap
 	 */
-	private void generateBitSegGraph(SegGraph segGraph) {
+	private void generateBitSegGraph(SegGraph segGraph,
+			BigramDictionary bigramDict) {
 		double smooth = 0.1;
 		int wordPairFreq = 0;
-		int maxStart = segGraph.getMaxStart();
 		double oneWordFreq, weight, tinyDouble = 1.0 / Utility.MAX_FREQUENCE;
 
-		int next;
-		char[] idBuffer;
-		// 为segGraph中的每一个元素赋以一个坐标
-		segTokenList = segGraph.makeIndex();
-		// 因为startToken（"始##始"）的起始位置是-1因此key为-1时可以取出startToken
-		int key = -1;
-		List<SegToken> nextTokens = null;
-		while (key < maxStart) {
-			if (segGraph.isStartExist(key)) {
-				List<SegToken> tokenList = segGraph.getStartList(key);
-
-				// 为某一个key对应的所有token都计算一次
-				for (SegToken t : tokenList) {
-					oneWordFreq = t.weight;
-					next = t.endOffset;
-					nextTokens = null;
-					// 找到下一个对应的Token，例如“阳光海岸”，当前Token是“阳光”， 下一个Token可以是“海”或者“海岸”
-					// 如果找不到下一个Token，则说明到了末尾，重新循环。
-					while (next <= maxStart) {
-						// 因为endToken的起始位置是sentenceLen，因此等于sentenceLen是可以找到endToken
-						if (segGraph.isStartExist(next)) {
-							nextTokens = segGraph.getStartList(next);
-							break;
-						}
-						next++;
+		int next, first, end;
+		// 关联词(t+'@'+st)不需要拼接，fromWordHash对每个t只计算一次，再对每个st继续计算
+		long fromWordHash;
+		// Token的index按startOffset递增，从"始##始"(index为0)开始依次计算
+		for (int t = 0; t < tokenCount; t++) {
+			edgeStarts[t] = edgeCount;
+			oneWordFreq = segGraph.getWeight(t);
+			// 找到下一个对应的Token，例如“阳光海岸”，当前Token是“阳光”， 下一个Token可以是“海”或者“海岸”
+			// 因为endToken的起始位置是sentenceLen，因此可以找到endToken；endToken本身没有下一个Token
+			next = segGraph.getNextStart(segGraph.getEndOffset(t));
+			if (next < 0)
+				continue;
+			first = segGraph.getFirstToken(next);
+			end = segGraph.getTokenEnd(next);
+			fromWordHash = bigramDict.getFromWordHash(segGraph.getWordBuffer(t),
+					segGraph.getWordOffset(t), segGraph.getWordLength(t));
+			for (int st = first; st < end; st++) {
+				// 两个词之间的跳转频率
+				wordPairFreq = bigramDict.getFrequency(bigramDict.getBigramHash(
+						fromWordHash, segGraph.getWordBuffer(st), segGraph
+								.getWordOffset(st), segGraph.getWordLength(st)));
+
+				// 平滑 -log{a*P(Ci-1)+(1-a)P(Ci|Ci-1)}, 0<a<1
+				weight = -Math.log(smooth
+						* (1.0 + oneWordFreq)
+						/ (Utility.MAX_FREQUENCE + 0.0)
+						+ (1.0 - smooth)
+						* ((1.0 - tinyDouble) * wordPairFreq
+								/ (1.0 + oneWordFreq) + tinyDouble));
+
+				addEdge(st, weight);
+			}
+		}
+		edgeStarts[tokenCount] = edgeCount;
+	}
+
+	private void addEdge(int to, double weight) {
+		if (edgeCount == edgeTos.length) {
+			int[] newTos = new int[edgeCount * 2];
+			double[] newWeights = new double[edgeCount * 2];
+			System.arraycopy(edgeTos, 0, newTos, 0, edgeCount);
+			System.arraycopy(edgeWeights, 0, newWeights, 0, edgeCount);
+			edgeTos = newTos;
+			edgeWeights = newWeights;
+		}
+		edgeTos[edgeCount] = to;
+		edgeWeights[edgeCount] = weight;
+		edgeCount++;
+	}
+
+	/**
+	 * 计算从"始##始"到"末##末"的最短路径。
+	 * 
+	 * 因为Token的index就是图的拓扑顺序，只需要按index顺序做一遍动态规划：到达每个Token时，它的所有前驱都已经确定了最短距离。
+	 * 距离相同时保留index较小的前驱。
+	 * 
+	 * @return 最短路径上的Token个数，包括"始##始"和"末##末"
+	 * @see #getPathIndex(int)
+	 */
+	public int findShortPath() {
+		if (tokenCount == 0)
+			return pathLength = 0;
+		distances[0] = 0;
+		predecessors[0] = -1;
+		for (int i = 1; i < tokenCount; i++) {
+			distances[i] = Double.POSITIVE_INFINITY;
+			predecessors[i] = -1;
+		}
+		double distance;
+		int to;
+		for (int from = 0; from < tokenCount; from++) {
+			if (predecessors[from] < 0 && from != 0)
+				continue;
+			for (int e = edgeStarts[from]; e < edgeStarts[from + 1]; e++) {
+				to = edgeTos[e];
+				distance = distances[from] + edgeWeights[e];
+				if (distance < distances[to]) {
+					distances[to] = distance;
+					predecessors[to] = from;
+				}
+			}
+		}
+
+		// 从"末##末"沿前驱倒推，再把路径反转
+		pathLength = 0;
+		for (int i = tokenCount - 1; i >= 0; i = predecessors[i])
+			path[pathLength++] = i;
+		for (int i = 0, j = pathLength - 1; i < j; i++, j--) {
+			int tmp = path[i];
+			path[i] = path[j];
+			path[j] = tmp;
+		}
+		return pathLength;
+	}
+
+	/**
+	 * 最短路径上的第i个Token在SegGraph中的index，需要先调用findShortPath
+	 */
+	public int getPathIndex(int i) {
+		return path[i];
+	}
+
+	/**
+	 * 最短路径上所有Token组成的列表，第一个是"始##始"，最后一个是"末##末"
+	 */
+	public List<SegToken> getShortPath() {
+		findShortPath();
+		List<SegToken> result = new ArrayList<SegToken>(pathLength);
+		for (int i = 0; i < pathLength; i++)
+			result.add(segGraph.getSegToken(path[i]));
+		return result;
+	}
+
+	/**
+	 * 计算从"始##始"到"末##末"的前k条最短路径。
+	 * 
+	 * 先用findShortPath得到每个Token的最短路径，再按Huang和Chiang的lazy k-best方法按需计算更长的路径：
+	 * 每个Token有一个候选堆，堆中的每一项是(进入该Token的边, 边的起始Token上的第几条路径)。
+	 * 取出到达某个Token的第j条路径后，只把同一条边上起始Token的第j+1条路径放入堆中，而后者又是按需递归计算的。
+	 * 因此只有前k条路径经过的Token才会展开，k为1时的代价与findShortPath相同。
+	 * 
+	 * @param k
+	 *            需要的路径条数
+	 * @return 实际找到的路径条数，不超过k
+	 * @see #getPath(int, int[])
+	 */
+	public int findShortPaths(int k) {
+		pathCount = findShortPath() > 0 ? 1 : 0;
+		multiPath = false;
+		if (k <= 1 || pathCount == 0)
+			return pathCount;
+		multiPath = true;
+		if (kBest == null)
+			kBest = new KBest();
+		kBest.reset();
+		while (pathCount < k && kBest.kthBest(tokenCount - 1, pathCount))
+			pathCount++;
+		return pathCount;
+	}
+
+	/**
+	 * 取出findShortPaths找到的第rank条路径，需要先调用findShortPaths
+	 * 
+	 * @param rank
+	 *            从0开始，0是最短路径
+	 * @param indexes
+	 *            输出：路径上每个Token的index，长度至少为路径上的Token个数
+	 * @return 路径上的Token个数，包括"始##始"和"末##末"
+	 */
+	public int getPath(int rank, int[] indexes) {
+		if (!multiPath) {
+			System.arraycopy(path, 0, indexes, 0, pathLength);
+			return pathLength;
+		}
+		int length = 0, node = tokenCount - 1, r = rank, edge;
+		while (node > 0) {
+			indexes[length++] = node;
+			if (r == 0) {
+				// 每个Token的第0条路径就是findShortPath的结果，这些Token不一定展开过
+				node = predecessors[node];
+				continue;
+			}
+			edge = kBest.derivationEdges[node][r];
+			r = kBest.derivationRanks[node][r];
+			node = edgeFroms[edge];
+		}
+		indexes[length++] = 0;
+		for (int i = 0, j = length - 1; i < j; i++, j--) {
+			int tmp = indexes[i];
+			indexes[i] = indexes[j];
+			indexes[j] = tmp;
+		}
+		return length;
+	}
+
+	/**
+	 * lazy k-best的计算状态。每个Token已经确定的路径按长度递增保存在derivation*中，
+	 * 第r条路径由进入该Token的边和边的起始Token上的第几条路径表示；候选路径保存在candidate*组成的最小堆中
+	 */
+	private class KBest {
+
+		/** 进入每个Token的边，按结束Token排列(CSR的方式) */
+		private int[] inStarts = new int[0];
+
+		private int[] inEdges = new int[0];
+
+		private int[][] derivationEdges = new int[0][];
+
+		private int[][] derivationRanks = new int[0][];
+
+		private double[][] derivationDistances = new double[0][];
+
+		/** 每个Token已经确定的路径条数，-1表示还没有展开 */
+		private int[] derivationCounts = new int[0];
+
+		private int[][] candidateEdges = new int[0][];
+
+		private int[][] candidateRanks = new int[0][];
+
+		private double[][] candidateDistances = new double[0][];
+
+		private int[] candidateCounts = new int[0];
+
+		/** kthBest的显式栈，每一层是要确定的Token、路径序号和正在等待其起始Token的边(-1表示没有) */
+		private int[] stackNodes = new int[0];
+
+		private int[] stackRanks = new int[0];
+
+		private int[] stackEdges = new int[0];
+
+		/** 按当前的图准备计算，进入每个Token的边用计数排序得到 */
+		void reset() {
+			if (derivationCounts.length < tokenCount) {
+				inStarts = new int[tokenCount + 1];
+				derivationEdges = new int[tokenCount][];
+				derivationRanks = new int[tokenCount][];
+				derivationDistances = new double[tokenCount][];
+				derivationCounts = new int[tokenCount];
+				candidateEdges = new int[tokenCount][];
+				candidateRanks = new int[tokenCount][];
+				candidateDistances = new double[tokenCount][];
+				candidateCounts = new int[tokenCount];
+				stackNodes = new int[tokenCount];
+				stackRanks = new int[tokenCount];
+				stackEdges = new int[tokenCount];
+			}
+			if (inEdges.length < edgeCount) {
+				inEdges = new int[edgeCount];
+				edgeFroms = new int[edgeCount];
+			}
+			for (int i = 0; i <= tokenCount; i++)
+				inStarts[i] = 0;
+			for (int from = 0; from < tokenCount; from++) {
+				for (int e = edgeStarts[from]; e < edgeStarts[from + 1]; e++) {
+					edgeFroms[e] = from;
+					inStarts[edgeTos[e] + 1]++;
+				}
+			}
+			for (int i = 0; i < tokenCount; i++)
+				inStarts[i + 1] += inStarts[i];
+			// 边按起始Token递增的顺序放入，进入同一个Token的边也按起始Token排序
+			for (int e = 0; e < edgeCount; e++)
+				inEdges[inStarts[edgeTos[e]]++] = e;
+			for (int i = tokenCount; i > 0; i--)
+				inStarts[i] = inStarts[i - 1];
+			inStarts[0] = 0;
+			for (int i = 0; i < tokenCount; i++)
+				derivationCounts[i] = -1;
+		}
+
+		/**
+		 * 保证到达node的第j条路径已经确定。
+		 * 
+		 * 确定node的下一条路径之前，要先求出上一条路径所在的边上起始Token的下一条路径，这样一直追溯到句首，
+		 * 深度可以达到路径上的Token个数，因此用显式的栈代替递归。每一层的Token都在上一层之前，栈的深度不超过tokenCount
+		 * 
+		 * @return 是否存在第j条路径
+		 */
+		boolean kthBest(int node, int j) {
+			int top = 0;
+			stackNodes[0] = node;
+			stackRanks[0] = j;
+			stackEdges[0] = -1;
+			// 刚结束的那一层的结果
+			boolean found = false;
+			while (true) {
+				node = stackNodes[top];
+				int edge = stackEdges[top];
+				if (edge >= 0) {
+					// 上一条路径所在的边上，起始Token的下一条路径已经求出，存在时成为新的候选
+					stackEdges[top] = -1;
+					if (found) {
+						int from = edgeFroms[edge];
+						int rank = derivationRanks[node][derivationCounts[node] - 1] + 1;
+						push(node, edge, rank, derivationDistances[from][rank]
+								+ edgeWeights[edge]);
 					}
-					if (nextTokens == null)
-						break;
-					for (SegToken st : nextTokens) {
-						idBuffer = new char[t.charArray.length
-								+ st.charArray.length + 1];
-						System.arraycopy(t.charArray, 0, idBuffer, 0,
-								t.charArray.length);
-						idBuffer[t.charArray.length] = BigramDictionary.WORD_SEGMENT_CHAR;
-						System.arraycopy(st.charArray, 0, idBuffer,
-								t.charArray.length + 1, st.charArray.length);
+					if (candidateCounts[node] == 0) {
+						found = false;
+						if (top-- == 0)
+							return found;
+						continue;
 					}
+					pop(node);
+				} else if (derivationCounts[node] < 0) {
+					expand(node);
+				}
+				int count = derivationCounts[node];
+				if (count > stackRanks[top]) {
+					found = true;
+					if (top-- == 0)
+						return found;
+					continue;
+				}
+				if (count > 0 && node > 0) {
+					// 先求上一条路径所在的边上起始Token的下一条路径
+					edge = derivationEdges[node][count - 1];
+					stackEdges[top] = edge;
+					top++;
+					stackNodes[top] = edgeFroms[edge];
+					stackRanks[top] = derivationRanks[node][count - 1] + 1;
+					stackEdges[top] = -1;
+					continue;
 				}
+				if (candidateCounts[node] == 0) {
+					found = false;
+					if (top-- == 0)
+						return found;
+					continue;
+				}
+				pop(node);
+			}
+		}
+
+		/** 第一次访问node时，把所有进入它的边上起始Token的最短路径作为候选 */
+		private void expand(int node) {
+			derivationCounts[node] = 0;
+			candidateCounts[node] = 0;
+			if (derivationEdges[node] == null) {
+				derivationEdges[node] = new int[4];
+				derivationRanks[node] = new int[4];
+				derivationDistances[node] = new double[4];
+				candidateEdges[node] = new int[4];
+				candidateRanks[node] = new int[4];
+				candidateDistances[node] = new double[4];
+			}
+			if (node == 0) {
+				// "始##始"只有一条长度为0的路径
+				derivationEdges[0][0] = -1;
+				derivationRanks[0][0] = 0;
+				derivationDistances[0][0] = 0;
+				derivationCounts[0] = 1;
+				return;
+			}
+			for (int i = inStarts[node]; i < inStarts[node + 1]; i++) {
+				int edge = inEdges[i];
+				int from = edgeFroms[edge];
+				if (from == 0 || predecessors[from] >= 0)
+					push(node, edge, 0, distances[from] + edgeWeights[edge]);
+			}
+		}
+
+		private void push(int node, int edge, int rank, double distance) {
+			int count = candidateCounts[node];
+			if (count == candidateEdges[node].length) {
+				candidateEdges[node] = grow(candidateEdges[node]);
+				candidateRanks[node] = grow(candidateRanks[node]);
+				candidateDistances[node] = grow(candidateDistances[node]);
+			}
+			int[] edges = candidateEdges[node], ranks = candidateRanks[node];
+			double[] dists = candidateDistances[node];
+			int i = count;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (!less(distance, edge, rank, dists[parent], edges[parent],
+						ranks[parent]))
+					break;
+				edges[i] = edges[parent];
+				ranks[i] = ranks[parent];
+				dists[i] = dists[parent];
+				i = parent;
+			}
+			edges[i] = edge;
+			ranks[i] = rank;
+			dists[i] = distance;
+			candidateCounts[node] = count + 1;
+		}
+
+		/** 取出候选堆中最短的路径，作为node的下一条路径 */
+		private void pop(int node) {
+			int[] edges = candidateEdges[node], ranks = candidateRanks[node];
+			double[] dists = candidateDistances[node];
+			int count = derivationCounts[node];
+			if (count == derivationEdges[node].length) {
+				derivationEdges[node] = grow(derivationEdges[node]);
+				derivationRanks[node] = grow(derivationRanks[node]);
+				derivationDistances[node] = grow(derivationDistances[node]);
 			}
+			derivationEdges[node][count] = edges[0];
+			derivationRanks[node][count] = ranks[0];
+			derivationDistances[node][count] = dists[0];
+			derivationCounts[node] = count + 1;
+
+			int size = --candidateCounts[node];
+			int edge = edges[size], rank = ranks[size];
+			double distance = dists[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size
+						&& less(dists[child + 1], edges[child + 1], ranks[child + 1],
+								dists[child], edges[child], ranks[child]))
+					child++;
+				if (!less(dists[child], edges[child], ranks[child], distance,
+						edge, rank))
+					break;
+				edges[i] = edges[child];
+				ranks[i] = ranks[child];
+				dists[i] = dists[child];
+				i = child;
+			}
+			edges[i] = edge;
+			ranks[i] = rank;
+			dists[i] = distance;
+		}
+
+		/**
+		 * 路径的顺序：距离短的在前，距离相同时起始Token的index小的在前(与findShortPath一致)，再相同时起始Token上排名靠前的在前
+		 */
+		private boolean less(double d1, int e1, int r1, double d2, int e2,
+				int r2) {
+			if (d1 != d2)
+				return d1 < d2;
+			if (e1 != e2)
+				return edgeFroms[e1] < edgeFroms[e2];
+			return r1 < r2;
 		}
+
+	}
+
+	private static int[] grow(int[] array) {
+		int[] result = new int[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private static double[] grow(double[] array) {
+		double[] result = new double[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	/**
+	 * 前k条最短路径，每条路径是Token组成的列表，第一个是"始##始"，最后一个是"末##末"
+	 */
+	public List<List<SegToken>> getShortPaths(int k) {
+		int count = findShortPaths(k);
+		List<List<SegToken>> result = new ArrayList<List<SegToken>>(count);
+		int[] indexes = new int[tokenCount];
+		for (int rank = 0; rank < count; rank++) {
+			int length = getPath(rank, indexes);
+			List<SegToken> tokens = new ArrayList<SegToken>(length);
+			for (int i = 0; i < length; i++)
+				tokens.add(segGraph.getSegToken(indexes[i]));
+			result.add(tokens);
+		}
+		return result;
+	}
+
+	public SegGraph getSegGraph() {
+		return segGraph;
+	}
+
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/** 从第from个Token出发的第一条边 */
+	public int getEdgeStart(int from) {
+		return edgeStarts[from];
+	}
+
+	/** 从第from个Token出发的最后一条边的下一条 */
+	public int getEdgeEnd(int from) {
+		return edgeStarts[from + 1];
+	}
+
+	/** 第edge条边的结束Token */
+	public int getEdgeTo(int edge) {
+		return edgeTos[edge];
+	}
+
+	/** 第edge条边的跳转代价，-log(平滑后的跳转概率) */
+	public double getEdgeWeight(int edge) {
+		return edgeWeights[edge];
 	}
 
 }
@@ -3,10 +3,15 @@
  */
 package org.apache.lucene.analysis.cn.smart.dict;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import org.apache.lucene.analysis.cn.smart.AnalyzerProfile;
 
@@ -21,100 +26,388 @@ public class BigramDictionary extends AbstractDictionary {
 
 	public static final char WORD_SEGMENT_CHAR = '@';
 
-	private static BigramDictionary singleInstance;
+	/** bigramdict.bin的文件头标识，即"BDCT" */
+	public static final int BIN_MAGIC = 0x42444354;
 
-	public static final int PRIME_BIGRAM_LENGTH = 402137;
+	/** bigramdict.bin的格式版本，格式有任何变化都需要增加版本号 */
+	public static final int BIN_VERSION = 1;
 
 	/**
-	 * bigramTable 来存储词与词之间的跳转频率， bigramHashTable 和 frequencyTable
-	 * 就是用来存储这些频率的数据结构。 为了提高查询速度和节省内存， 采用 hash 值来代替关联词作为查询依据， 关联词就是
-	 * (formWord+'@'+toWord) ， 利用 FNV1 hash 算法来计算关联词的hash值 ，并保存在 bigramHashTable
-	 * 中，利用 hash 值来代替关联词有可能会产生很小概率的冲突， 但是 long 类型
-	 * (64bit)的hash值有效地将此概率降到极低。bigramHashTable[i]与frequencyTable[i]一一对应
+	 * 单例由SingletonHolder在第一次调用getInstance时初始化，由JVM的类初始化保证只加载一次，之后的调用不需要加锁。
+	 * 加载失败时记录异常，每次调用getInstance都重新抛出，而不是让类初始化失败，之后只能得到没有原因的NoClassDefFoundError
 	 */
-	private long[] bigramHashTable;
+	private static class SingletonHolder {
+		static final BigramDictionary INSTANCE;
 
-	private int[] frequencyTable;
+		static final RuntimeException FAILURE;
 
-	private int max = 0;
-
-	private int repeat = 0;
-
-	public synchronized static BigramDictionary getInstance() {
-		if (singleInstance == null) {
-			singleInstance = new BigramDictionary();
+		static {
+			BigramDictionary instance = null;
+			RuntimeException failure = null;
 			try {
-				singleInstance.load();
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			} catch (IOException e) {
-				String dictRoot = AnalyzerProfile.ANALYSIS_DATA_DIR;
-				singleInstance.load(dictRoot);
+				instance = createInstance();
+			} catch (RuntimeException e) {
+				failure = e;
 			}
+			INSTANCE = instance;
+			FAILURE = failure;
 		}
-		return singleInstance;
 	}
 
+	/** 从文件或者jar中加载词典的次数，用于测试getInstance是否只加载一次 */
+	static volatile int loadCount;
+
+	/**
+	 * bigramTable 来存储词与词之间的跳转频率。 为了提高查询速度和节省内存， 采用 hash 值来代替关联词作为查询依据， 关联词就是
+	 * (formWord+'@'+toWord) ， 利用 FNV1 hash 算法来计算关联词的64位hash值，bigramTable 中只保存由它得到的32位指纹和频率，
+	 * 表的大小按实际的关联词个数确定。
+	 * 
+	 * @see BigramTable
+	 */
+	private BigramTable bigramTable;
+
+	/**
+	 * @throws RuntimeException
+	 *             词典加载失败，包括在preload的后台线程中失败
+	 */
+	public static BigramDictionary getInstance() {
+		if (SingletonHolder.FAILURE != null)
+			throw SingletonHolder.FAILURE;
+		return SingletonHolder.INSTANCE;
+	}
+
+	private static BigramDictionary createInstance() {
+		BigramDictionary dictionary = new BigramDictionary();
+		String dictRoot = AnalyzerProfile.ANALYSIS_DATA_DIR;
+		try {
+			// 词典目录中已经有bigramdict.bin时优先使用
+			if (dictRoot.length() != 0
+					&& new File(dictRoot, "bigramdict.bin").exists())
+				dictionary.load(dictRoot);
+			else
+				dictionary.load();
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			dictionary.load(dictRoot);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * 在后台线程中开始加载关联词典，使它与核心词典的加载同时进行。加载中的错误在之后调用getInstance时抛出
+	 */
+	public static void preload() {
+		Thread loader = new Thread("BigramDictionary loader") {
+			public void run() {
+				try {
+					getInstance();
+				} catch (RuntimeException e) {
+					// 已经记录在SingletonHolder中，使用者调用getInstance时重新抛出
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * 从外部文件夹加载一个独立于单例的词典实例，用于重新加载词典
+	 * 
+	 * @see DictionarySnapshot#load(String)
+	 */
+	static BigramDictionary loadFrom(String dictRoot) {
+		BigramDictionary dictionary = new BigramDictionary();
+		dictionary.load(dictRoot);
+		return dictionary;
+	}
+
+	/**
+	 * 从词典目录中的源文件构建词典，不读取也不生成bigramdict.bin：有bigramdict.dct时解析它，否则读取bigramdict.mem。
+	 * 由DictionaryCompiler离线调用
+	 * 
+	 * @throws FileNotFoundException
+	 *             两个源文件都不存在
+	 */
+	static BigramDictionary compile(String dictRoot) throws IOException,
+			ClassNotFoundException {
+		BigramDictionary dictionary = new BigramDictionary();
+		File dctFile = new File(dictRoot, "bigramdict.dct");
+		File serialObj = new File(dictRoot, "bigramdict.mem");
+		if (dctFile.exists())
+			dictionary.loadFromFile(dctFile.getPath());
+		else if (serialObj.exists())
+			dictionary.loadFromInputStream(new FileInputStream(serialObj));
+		else
+			throw new FileNotFoundException(dctFile.getPath());
+		return dictionary;
+	}
+
+	/**
+	 * 从jar内部加载词典，优先使用BigramDictionary类当前路径中的bigramdict.bin，没有时再读取bigramdict.mem
+	 */
 	private void load() throws ClassNotFoundException, IOException {
+		loadCount++;
+		ByteBuffer buffer = DictionaryFile.openResource(getClass(),
+				"bigramdict.bin");
+		if (buffer != null) {
+			loadFromBuffer(buffer);
+			return;
+		}
 		InputStream input = this.getClass().getResourceAsStream(
 				"bigramdict.mem");
+		if (input == null)
+			throw new FileNotFoundException("bigramdict.mem");
 		loadFromInputStream(input);
 	}
 
 	private void loadFromInputStream(InputStream serialObjectInputStream)
 			throws IOException, ClassNotFoundException {
-		ObjectInputStream input = new ObjectInputStream(serialObjectInputStream);
-		bigramHashTable = (long[]) input.readObject();
-		frequencyTable = (int[]) input.readObject();
+		ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(
+				serialObjectInputStream));
+		long[] bigramHashTable = (long[]) input.readObject();
+		int[] frequencyTable = (int[]) input.readObject();
 		input.close();
+
+		// 旧格式是一个以0为空的long[]/int[] hash表，这里只取出其中的关联词
+		int count = 0;
+		for (long hashId : bigramHashTable) {
+			if (hashId != 0)
+				count++;
+		}
+		bigramTable = new BigramTable(count);
+		for (int i = 0; i < bigramHashTable.length; i++) {
+			if (bigramHashTable[i] != 0)
+				bigramTable.add(bigramHashTable[i], frequencyTable[i]);
+		}
+		// 与loadFromFile相同，trim之后才能写成bigramdict.bin
+		bigramTable.trim();
 	}
 
+	/**
+	 * 从外部文件夹dictRoot加载词典，依次测试是否有bigramdict.bin和bigramdict.mem文件，比后面的源文件旧的不使用，
+	 * 都没有时解析源文件bigramdict.dct，打开了AnalyzerProfile.WRITE_BIN时在同一目录下生成bigramdict.bin
+	 */
 	private void load(String dictRoot) {
+		loadCount++;
 		String bigramDictPath = dictRoot + "/bigramdict.dct";
-		
+		File binFile = new File(dictRoot, "bigramdict.bin");
 		File serialObj = new File(dictRoot + "/bigramdict.mem");
+		File dctFile = new File(bigramDictPath);
 		
-		if (serialObj.exists() && loadFromObj(serialObj)) {
+		if (DictionaryFile.isUpToDate(binFile, dctFile, serialObj)
+				&& loadFromBin(binFile)) {
+
+		} else if (DictionaryFile.isUpToDate(serialObj, dctFile)
+				&& loadFromObj(serialObj)) {
 			
 		} else {
 			try {
-				bigramHashTable = new long[PRIME_BIGRAM_LENGTH];
-				frequencyTable = new int[PRIME_BIGRAM_LENGTH];
-				for (int i = 0; i < PRIME_BIGRAM_LENGTH; i++) {
-					// 实际上将0作为初始值有一点问题，因为某个字符串可能hash值为0，但是概率非常小，因此影响不大
-					bigramHashTable[i] = 0; // -1
-					frequencyTable[i] = 0; // -1
-				}
 				loadFromFile(bigramDictPath);
 			} catch (IOException e) {
 				throw new RuntimeException(e.getMessage());
 			}
-			saveToObj(serialObj);
+			saveToBin(binFile);
+		}
+	}
+
+	/**
+	 * 只从bigramdict.bin加载词典，文件有问题时抛出异常而不是重新构建，用于验证生成的文件
+	 */
+	static BigramDictionary openBin(File binFile) throws IOException {
+		BigramDictionary dictionary = new BigramDictionary();
+		dictionary.loadFromBuffer(DictionaryFile.map(binFile));
+		return dictionary;
+	}
+
+	/** 从bigramdict.bin映射加载 */
+	private boolean loadFromBin(File binFile) {
+		try {
+			loadFromBuffer(DictionaryFile.map(binFile));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		return false;
 	}
 
 	/**
-	 * 将词库文件加载到WordDictionary的相关数据结构中，只是加载，没有进行合并和修改操作
+	 * 读入bigramdict.bin，格式如下(big endian)：
 	 * 
-	 * @param dctFilePath
-	 * @return
-	 * @throws FileNotFoundException
-	 * @throws IOException
-	 * @throws UnsupportedEncodingException
+	 * <pre>
+	 * int     magic = BIN_MAGIC
+	 * int     version = BIN_VERSION
+	 * ...     bigramTable            (见BigramTable.write)
+	 * int     crc32                  (见DictionaryFile.verifyChecksum)
+	 * </pre>
+	 */
+	private void loadFromBuffer(ByteBuffer buffer) throws IOException {
+		DictionaryFile.checkHeader(buffer, BIN_MAGIC, BIN_VERSION);
+		// 与WordDictionary相同，截断或者损坏的文件作为IOException抛出
+		try {
+			bigramTable = BigramTable.read(buffer);
+			DictionaryFile.checkEnd(buffer);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated dictionary file");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("corrupt dictionary file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 打开了AnalyzerProfile.WRITE_BIN时将词典存储为bigramdict.bin，失败时只打印错误，下次启动会重新构建
 	 */
+	private void saveToBin(File binFile) {
+		if (!AnalyzerProfile.WRITE_BIN)
+			return;
+		try {
+			writeBin(binFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** 将词典写成bigramdict.bin，格式见loadFromBuffer */
+	void writeBin(File binFile) throws IOException {
+		DictionaryFile.Output output = new DictionaryFile.Output(binFile);
+		try {
+			output.writeInt(BIN_MAGIC);
+			output.writeInt(BIN_VERSION);
+			bigramTable.write(output);
+			output.finish();
+		} finally {
+			output.close();
+		}
+	}
+
+	/** 存储关联词频率的表，用于验证生成的bigramdict.bin */
+	BigramTable getBigramTable() {
+		return bigramTable;
+	}
+
+	/**
+	 * 解析关联词典源文件bigramdict.dct。文件与coredict.dct一样按首字的GB2312编号分成CHAR_NUM_IN_FILE行，
+	 * 每行是一个little endian的词数，之后每个词是频率、长度、handle三个int和GB2312编码的词(不含首字)。
+	 * 第3755行是符号，其中的词已经包含首字。相同的关联词频率累加
+	 */
+	private void loadFromFile(String dctFilePath) throws FileNotFoundException,
+			IOException {
+		int i, cnt, length, frequency;
+		char[] charBuffer = new char[64];
+		ByteBuffer dctFile = DictionaryFile.mapSource(new File(dctFilePath));
+		// 每个关联词在文件中大约占20个字节，按文件大小预先分配可以省掉构建时的多次rehash
+		bigramTable = new BigramTable(dctFile.capacity() / 20);
+
+		try {
+			for (i = GB2312_FIRST_CHAR; i < GB2312_FIRST_CHAR + CHAR_NUM_IN_FILE; i++) {
+				cnt = dctFile.getInt();
+				if (cnt <= 0)
+					continue;
+				// 首字的hash状态对这一行的所有关联词都相同，只计算一次
+				long rowHash = FNV_OFFSET_BASIS;
+				if (i != 3755 + GB2312_FIRST_CHAR) {
+					char[] currentChars = getCCByGB2312Id(i).toCharArray();
+					rowHash = updateHash1(rowHash, currentChars, 0,
+							currentChars.length);
+				}
+				for (int j = 0; j < cnt; j++) {
+					frequency = dctFile.getInt();
+					length = dctFile.getInt();
+					dctFile.getInt(); // handle
+					if (length <= 0)
+						continue;
+					if (charBuffer.length < length)
+						charBuffer = new char[length];
+					int charCount = decodeGB2312(dctFile, length, charBuffer);
+					bigramTable.add(updateHash1(rowHash, charBuffer, 0, charCount),
+							frequency);
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated dictionary file: " + dctFilePath);
+		}
+		bigramTable.trim();
+	}
+
+	/** 从序列化对象bigramdict.mem加载 */
 	private boolean loadFromObj(File serialObj) {
+		try {
+			loadFromInputStream(new FileInputStream(serialObj));
+			return true;
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassCastException e) {
+			e.printStackTrace();
+		} catch (IndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
 		return false;
 	}
 	
-	private int getAvaliableIndex(long hashId, char carray[]) {
-		return -1;
+	public int getFrequency(char[] carray) {
+		return getFrequency(carray, 0, carray.length);
 	}
 	
-	public int getFrequency(char[] carray) {
-		int index = getBigramItemIndex(carray);
-		if (index != -1)
-			return frequencyTable[index];
-		return 0;
+	/**
+	 * 获取carray中从offset开始、长度为length的关联词(formWord+'@'+toWord)的跳转频率，
+	 * 调用者可以重复使用同一个carray来拼接关联词，不需要每次分配新的数组
+	 * 
+	 * @return 跳转频率，不存在时为0
+	 */
+	public int getFrequency(char[] carray, int offset, int length) {
+		return bigramTable.get(hash1(carray, offset, length));
+	}
+
+	/**
+	 * 计算formWord连同分隔符'@'的hash状态。同一个formWord与多个toWord组成关联词时，这个状态只需要计算一次
+	 *
+	 * @see #getBigramHash(long, char[])
+	 */
+	public long getFromWordHash(char[] fromWord) {
+		return getFromWordHash(fromWord, 0, fromWord.length);
+	}
+
+	/**
+	 * 计算carray中从offset开始、长度为length的formWord连同分隔符'@'的hash状态
+	 *
+	 * @see #getFromWordHash(char[])
+	 */
+	public long getFromWordHash(char[] carray, int offset, int length) {
+		return updateHash1(updateHash1(FNV_OFFSET_BASIS, carray, offset,
+				length), WORD_SEGMENT_CHAR);
+	}
+
+	/**
+	 * 由formWord的hash状态继续计算关联词(formWord+'@'+toWord)的hash值，结果与对拼接后的关联词调用hash1相同
+	 *
+	 * @param fromWordHash
+	 *            getFromWordHash(formWord)的结果
+	 */
+	public long getBigramHash(long fromWordHash, char[] toWord) {
+		return getBigramHash(fromWordHash, toWord, 0, toWord.length);
+	}
+
+	/**
+	 * 由formWord的hash状态继续计算关联词的hash值，toWord是carray中从offset开始、长度为length的部分
+	 *
+	 * @see #getBigramHash(long, char[])
+	 */
+	public long getBigramHash(long fromWordHash, char[] carray, int offset,
+			int length) {
+		return updateHash1(fromWordHash, carray, offset, length);
+	}
+
+	/**
+	 * 按照预先计算好的关联词hash值获取跳转频率
+	 *
+	 * @param bigramHash
+	 *            关联词的hash值，例如getBigramHash的结果
+	 * @return 跳转频率，不存在时为0
+	 */
+	public int getFrequency(long bigramHash) {
+		return bigramTable.get(bigramHash);
 	}
 
 }
@@ -0,0 +1,298 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 存储关联词跳转频率的紧凑hash表。
+ *
+ * 关联词(formWord+'@'+toWord)用64位的hash值代表，hash值经过混合后取高32位作为指纹(fingerprint)保存，
+ * 指纹同时决定该项在表中的起始位置。每个位置只占两个int：指纹和频率，二者相邻存放，查询命中时通常只有一次cache miss。
+ * 指纹为0的位置表示空。
+ *
+ * 冲突采用Robin Hood线性探测：插入时如果当前位置上的项离自己的起始位置比待插入的项近，就把它挤走，
+ * 这样所有项的探测长度都比较平均，最大探测长度maxProbe在插入时记录下来，查询时最多探测maxProbe + 1个位置，
+ * 不存在的关联词一般在探测一两个位置后就能确定。
+ *
+ * 构建时保留完整的64位hash值，如果两个不同的关联词恰好有相同的指纹，就把该位置的频率标记为COLLIDED，
+ * 这些关联词改为按完整hash值存放在一个很小的overflowTable中，因此已有关联词的频率总是准确的。
+ * 构建完成后调用trim()，按实际的关联词个数确定表的大小并释放构建时的数据，之后表是只读的，可以被多个线程同时查询。
+ */
+public class BigramTable {
+
+	/** 装载因子，Robin Hood探测在这个装载因子下探测长度仍然很短 */
+	public static final double LOAD_FACTOR = 0.85;
+
+	/** 指纹冲突的位置上的频率，真正的频率在overflowTable中 */
+	private static final int COLLIDED = -1;
+
+	private int capacity;
+
+	/** slots[2 * i]是第i个位置的指纹，slots[2 * i + 1]是对应的频率 */
+	private int[] slots;
+
+	/** 构建时与slots中每个位置对应的完整hash值，trim()之后为null */
+	private long[] hashIds;
+
+	private Map<Long, Integer> overflowTable = new HashMap<Long, Integer>();
+
+	private int size;
+
+	private int maxProbe;
+
+	public BigramTable() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            预计的关联词个数，表的大小按LOAD_FACTOR确定
+	 */
+	public BigramTable(int expectedSize) {
+		capacity = Math.max(16, (int) Math.ceil(expectedSize / LOAD_FACTOR));
+		slots = new int[capacity * 2];
+		hashIds = new long[capacity];
+	}
+
+	/** 由read使用，直接采用文件中的表 */
+	private BigramTable(int capacity, int size, int maxProbe, int[] slots) {
+		this.capacity = capacity;
+		this.size = size;
+		this.maxProbe = maxProbe;
+		this.slots = slots;
+	}
+
+	/**
+	 * 由64位hash值计算32位指纹，保证不为0
+	 */
+	static int fingerprint(long hashId) {
+		// murmur3的fmix64，使hash值的每一位都均匀影响高32位
+		hashId ^= hashId >>> 33;
+		hashId *= 0xff51afd7ed558ccdL;
+		hashId ^= hashId >>> 33;
+		hashId *= 0xc4ceb9fe1a85ec53L;
+		hashId ^= hashId >>> 33;
+		int fp = (int) (hashId >>> 32);
+		return fp == 0 ? 1 : fp;
+	}
+
+	/** 指纹对应的起始位置 */
+	private int home(int fp) {
+		return (int) (((fp & 0xFFFFFFFFL) * capacity) >>> 32);
+	}
+
+	/** 位于pos的指纹fp离它的起始位置的距离 */
+	private int distance(int fp, int pos) {
+		int d = pos - home(fp);
+		return d < 0 ? d + capacity : d;
+	}
+
+	/**
+	 * 增加一个关联词的频率，如果已经存在则累加
+	 *
+	 * @param hashId
+	 *            关联词的hash值
+	 * @param frequency
+	 *            频率
+	 * @throws IllegalStateException
+	 *             已经调用过trim()
+	 */
+	public void add(long hashId, int frequency) {
+		if (hashIds == null)
+			throw new IllegalStateException("bigram table is read only");
+		if (size + 1 > capacity * LOAD_FACTOR)
+			rehash(capacity * 2);
+		insert(fingerprint(hashId), hashId, frequency);
+	}
+
+	private void insert(int fp, long hashId, int frequency) {
+		int pos = home(fp), dist = 0;
+		while (true) {
+			int cur = slots[pos * 2];
+			if (cur == 0) {
+				slots[pos * 2] = fp;
+				slots[pos * 2 + 1] = frequency;
+				hashIds[pos] = hashId;
+				size++;
+				if (dist > maxProbe)
+					maxProbe = dist;
+				return;
+			}
+			if (cur == fp) {
+				if (slots[pos * 2 + 1] == COLLIDED) {
+					addOverflow(hashId, frequency);
+				} else if (hashIds[pos] == hashId) {
+					slots[pos * 2 + 1] += frequency;
+				} else {
+					// 两个不同的关联词有相同的指纹，都改为存放到overflowTable中
+					addOverflow(hashIds[pos], slots[pos * 2 + 1]);
+					addOverflow(hashId, frequency);
+					slots[pos * 2 + 1] = COLLIDED;
+				}
+				return;
+			}
+			int curDist = distance(cur, pos);
+			if (curDist < dist) {
+				// 挤走离起始位置较近的项，继续为它寻找位置
+				int curFreq = slots[pos * 2 + 1];
+				long curHashId = hashIds[pos];
+				slots[pos * 2] = fp;
+				slots[pos * 2 + 1] = frequency;
+				hashIds[pos] = hashId;
+				if (dist > maxProbe)
+					maxProbe = dist;
+				fp = cur;
+				frequency = curFreq;
+				hashId = curHashId;
+				dist = curDist;
+			}
+			pos = pos + 1 == capacity ? 0 : pos + 1;
+			dist++;
+		}
+	}
+
+	private void addOverflow(long hashId, int frequency) {
+		Integer old = overflowTable.get(hashId);
+		overflowTable.put(hashId, old == null ? frequency : old + frequency);
+	}
+
+	/**
+	 * 查询关联词的频率
+	 *
+	 * @param hashId
+	 *            关联词的hash值
+	 * @return 频率，不存在时为0
+	 */
+	public int get(long hashId) {
+		int fp = fingerprint(hashId);
+		int pos = home(fp);
+		for (int dist = 0; dist <= maxProbe; dist++) {
+			int cur = slots[pos * 2];
+			if (cur == fp) {
+				int frequency = slots[pos * 2 + 1];
+				if (frequency != COLLIDED)
+					return frequency;
+				Integer overflow = overflowTable.get(hashId);
+				return overflow == null ? 0 : overflow;
+			}
+			if (cur == 0 || distance(cur, pos) < dist)
+				return 0;
+			pos = pos + 1 == capacity ? 0 : pos + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 按照实际的关联词个数重新确定表的大小，并释放构建时保存的完整hash值。在所有关联词加入之后调用，之后不能再加入关联词
+	 */
+	public void trim() {
+		if (hashIds == null)
+			return;
+		int newCapacity = Math.max(16, (int) Math.ceil(size / LOAD_FACTOR));
+		if (newCapacity != capacity)
+			rehash(newCapacity);
+		hashIds = null;
+	}
+
+	private void rehash(int newCapacity) {
+		int[] oldSlots = slots;
+		long[] oldHashIds = hashIds;
+		capacity = newCapacity;
+		slots = new int[capacity * 2];
+		hashIds = new long[capacity];
+		size = 0;
+		maxProbe = 0;
+		for (int i = 0; i < oldHashIds.length; i++) {
+			if (oldSlots[i * 2] != 0)
+				insert(oldSlots[i * 2], oldHashIds[i], oldSlots[i * 2 + 1]);
+		}
+	}
+
+	/**
+	 * 写出trim()之后的表，格式如下(big endian)，overflowTable中的项按hash值排序，相同的表总是写出相同的内容：
+	 * 
+	 * <pre>
+	 * int     capacity, size, maxProbe, overflowCount
+	 * int     slots[capacity * 2]
+	 * {long hashId, int frequency}[overflowCount]
+	 * </pre>
+	 * 
+	 * @throws IllegalStateException
+	 *             还没有调用trim()
+	 */
+	void write(DataOutputStream output) throws IOException {
+		if (hashIds != null)
+			throw new IllegalStateException("bigram table is not trimmed");
+		output.writeInt(capacity);
+		output.writeInt(size);
+		output.writeInt(maxProbe);
+		output.writeInt(overflowTable.size());
+		for (int i = 0; i < slots.length; i++)
+			output.writeInt(slots[i]);
+		for (Map.Entry<Long, Integer> entry : new TreeMap<Long, Integer>(
+				overflowTable).entrySet()) {
+			output.writeLong(entry.getKey());
+			output.writeInt(entry.getValue());
+		}
+	}
+
+	/**
+	 * 从buffer的当前位置读入write写出的表，读入后的表是只读的
+	 */
+	static BigramTable read(ByteBuffer buffer) throws IOException {
+		int capacity = buffer.getInt();
+		int size = buffer.getInt();
+		int maxProbe = buffer.getInt();
+		int overflowCount = buffer.getInt();
+		if (capacity < 16 || size > capacity || maxProbe >= capacity
+				|| overflowCount < 0)
+			throw new IOException("bigram table layout mismatch");
+		// 先检查长度再分配slots，截断的文件不会因为文件头中的capacity分配过大的数组
+		if ((long) capacity * 8 + (long) overflowCount * 12 > buffer.remaining())
+			throw new IOException("truncated bigram table");
+		int[] slots = new int[capacity * 2];
+		DictionaryFile.sliceInts(buffer, slots.length).get(slots);
+		BigramTable table = new BigramTable(capacity, size, maxProbe, slots);
+		for (int i = 0; i < overflowCount; i++) {
+			long hashId = buffer.getLong();
+			table.overflowTable.put(hashId, buffer.getInt());
+		}
+		return table;
+	}
+
+	/**
+	 * 两个表的内容是否完全相同，用来验证写出后再读入的表与原来的一致
+	 */
+	boolean contentEquals(BigramTable other) {
+		return capacity == other.capacity && size == other.size
+				&& maxProbe == other.maxProbe
+				&& Arrays.equals(slots, other.slots)
+				&& overflowTable.equals(other.overflowTable);
+	}
+
+	/** 表中的位置个数，包括指纹冲突的位置，但不包括overflowTable中的项 */
+	public int size() {
+		return size;
+	}
+
+	/** 表中位置的个数 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/** 所有项中离起始位置最远的距离，查询时最多探测maxProbe + 1个位置 */
+	public int getMaxProbe() {
+		return maxProbe;
+	}
+
+	/** 指纹冲突而存放在overflowTable中的关联词个数 */
+	public int getOverflowCount() {
+		return overflowTable.size();
+	}
+
+}
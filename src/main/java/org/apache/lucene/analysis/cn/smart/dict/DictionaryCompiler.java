@@ -0,0 +1,148 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 离线词典编译工具。
+ *
+ * 从词典源文件(coredict.dct和bigramdict.dct，没有时使用对应的*.mem)构建核心词典和关联词典：解析、展开标点、
+ * 排序并合并相同的词，生成带CRC32校验和的coredict.bin和bigramdict.bin。之后用运行时的加载代码读回生成的文件，
+ * 逐个词与构建结果比较，全部一致才算成功。生成的文件随词典目录发布，运行时只需要映射，不再付出构建的代价。
+ *
+ * <pre>
+ * java org.apache.lucene.analysis.cn.smart.dict.DictionaryCompiler sourceDir [outputDir]
+ * java org.apache.lucene.analysis.cn.smart.dict.DictionaryCompiler -verify dictDir
+ * </pre>
+ *
+ * outputDir默认与sourceDir相同。第二种用法只检查已经发布的文件的校验和，例如在部署之后。失败时进程的退出码为1。
+ */
+public class DictionaryCompiler {
+
+	public static final String WORD_BIN = "coredict.bin";
+
+	public static final String BIGRAM_BIN = "bigramdict.bin";
+
+	private DictionaryCompiler() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean success;
+		if (args.length == 2 && "-verify".equals(args[0])) {
+			success = verify(args[1]);
+		} else if (args.length == 1 || args.length == 2) {
+			success = compile(args[0], args.length == 2 ? args[1] : args[0]);
+		} else {
+			System.err.println("usage: DictionaryCompiler sourceDir [outputDir]");
+			System.err.println("       DictionaryCompiler -verify dictDir");
+			success = false;
+		}
+		if (!success)
+			System.exit(1);
+	}
+
+	/**
+	 * 编译sourceDir中的词典源文件，结果写到outputDir。某个词典没有源文件时跳过它，两个都没有时失败
+	 *
+	 * @return 生成的文件是否都通过了验证
+	 */
+	public static boolean compile(String sourceDir, String outputDir)
+			throws IOException, ClassNotFoundException {
+		File output = new File(outputDir);
+		if (!output.isDirectory() && !output.mkdirs())
+			throw new IOException("cannot create " + output);
+		boolean compiled = false, success = true;
+
+		if (hasSource(sourceDir, "coredict")) {
+			long start = System.currentTimeMillis();
+			WordDictionary built = WordDictionary.compile(sourceDir);
+			File binFile = new File(output, WORD_BIN);
+			built.writeBin(binFile);
+			System.out.println(WORD_BIN + ": " + built.getWordCount()
+					+ " words, " + binFile.length() + " bytes, "
+					+ (System.currentTimeMillis() - start) + " ms");
+			success &= verifyWords(built, binFile);
+			compiled = true;
+		} else {
+			System.out.println(WORD_BIN + ": no source, skipped");
+		}
+
+		if (hasSource(sourceDir, "bigramdict")) {
+			long start = System.currentTimeMillis();
+			BigramDictionary built = BigramDictionary.compile(sourceDir);
+			File binFile = new File(output, BIGRAM_BIN);
+			built.writeBin(binFile);
+			BigramTable table = built.getBigramTable();
+			System.out.println(BIGRAM_BIN + ": "
+					+ (table.size() + table.getOverflowCount()) + " bigrams, "
+					+ binFile.length() + " bytes, "
+					+ (System.currentTimeMillis() - start) + " ms");
+			success &= verifyBigrams(built, binFile);
+			compiled = true;
+		} else {
+			System.out.println(BIGRAM_BIN + ": no source, skipped");
+		}
+		return compiled && success;
+	}
+
+	/**
+	 * 检查dictDir中已有的coredict.bin和bigramdict.bin的校验和
+	 *
+	 * @return 存在的文件是否都完好，两个文件都不存在时返回false
+	 */
+	public static boolean verify(String dictDir) throws IOException {
+		boolean found = false, success = true;
+		String[] names = { WORD_BIN, BIGRAM_BIN };
+		for (int i = 0; i < names.length; i++) {
+			File binFile = new File(dictDir, names[i]);
+			if (!binFile.exists())
+				continue;
+			found = true;
+			success &= verifyChecksum(binFile);
+		}
+		if (!found)
+			System.err.println("no dictionary file in " + dictDir);
+		return found && success;
+	}
+
+	private static boolean hasSource(String sourceDir, String name) {
+		return new File(sourceDir, name + ".dct").exists()
+				|| new File(sourceDir, name + ".mem").exists();
+	}
+
+	private static boolean verifyChecksum(File binFile) throws IOException {
+		boolean valid = DictionaryFile.verifyChecksum(DictionaryFile
+				.map(binFile));
+		System.out.println(binFile.getName() + ": checksum "
+				+ (valid ? "ok" : "MISMATCH"));
+		return valid;
+	}
+
+	/** 用运行时的加载代码读回coredict.bin，每个词的词频都应当与构建结果相同 */
+	private static boolean verifyWords(WordDictionary built, File binFile)
+			throws IOException {
+		if (!verifyChecksum(binFile))
+			return false;
+		WordDictionary loaded = WordDictionary.openBin(binFile);
+		int differences = built.countDifferences(loaded);
+		if (loaded.getMaxWordLength() != built.getMaxWordLength())
+			differences++;
+		System.out.println(binFile.getName() + ": "
+				+ (differences == 0 ? "verified" : differences + " differences"));
+		return differences == 0;
+	}
+
+	/** 用运行时的加载代码读回bigramdict.bin，表的内容应当与构建结果完全相同 */
+	private static boolean verifyBigrams(BigramDictionary built, File binFile)
+			throws IOException {
+		if (!verifyChecksum(binFile))
+			return false;
+		BigramDictionary loaded = BigramDictionary.openBin(binFile);
+		boolean same = built.getBigramTable().contentEquals(
+				loaded.getBigramTable());
+		System.out.println(binFile.getName() + ": "
+				+ (same ? "verified" : "differences"));
+		return same;
+	}
+
+}
@@ -0,0 +1,261 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 词典二进制文件(*.bin)的公共读取工具。
+ *
+ * 与Java序列化的*.mem文件不同，*.bin文件是一段扁平的、带版本号的二进制数据：文件头是magic和version两个int，
+ * 之后是若干个定长的int/short/char数组，全部采用big endian顺序。载入时直接用FileChannel.map将文件映射到内存，
+ * 然后在映射出来的ByteBuffer上切出各个数组的视图就地查询，不需要为每个词生成对象。
+ *
+ * 如果词典位于jar包内部无法映射，则一次性读入到一个ByteBuffer中，查询方式完全相同。
+ *
+ * 文件的最后4个字节是之前所有内容的CRC32。载入时不检查它，以免为了计算校验和读入整个映射的文件，
+ * 文件由Output先写到临时文件再改名，不会出现写了一半的文件；需要检查时调用verifyChecksum，例如DictionaryCompiler。
+ */
+public class DictionaryFile {
+
+	private DictionaryFile() {
+	}
+
+	/**
+	 * 以只读方式将整个文件映射到内存
+	 *
+	 * @param file
+	 *            词典文件
+	 * @return 映射出的ByteBuffer，position为0
+	 * @throws IOException
+	 */
+	public static ByteBuffer map(File file) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * 映射词典源文件(*.dct)。源文件由C程序生成，其中的整数是little endian的，返回的ByteBuffer已经设置为little endian顺序，
+	 * 解析时直接调用getInt，不需要逐个转换字节序
+	 */
+	public static ByteBuffer mapSource(File file) throws IOException {
+		return map(file).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * 将输入流整块读入到一个ByteBuffer中，用于无法映射的情况(例如词典位于jar包中)
+	 *
+	 * @param input
+	 * @return 读入的ByteBuffer，position为0
+	 * @throws IOException
+	 */
+	public static ByteBuffer read(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 20);
+		byte[] block = new byte[1 << 16];
+		int n;
+		while ((n = input.read(block)) != -1)
+			output.write(block, 0, n);
+		return ByteBuffer.wrap(output.toByteArray());
+	}
+
+	/**
+	 * 打开clazz所在路径下的词典资源，如果资源是本地文件就直接映射，否则整块读入
+	 *
+	 * @param clazz
+	 *            用来定位资源的类
+	 * @param name
+	 *            资源名称，例如coredict.bin
+	 * @return 资源对应的ByteBuffer，如果资源不存在返回null
+	 * @throws IOException
+	 */
+	public static ByteBuffer openResource(Class<?> clazz, String name)
+			throws IOException {
+		URL url = clazz.getResource(name);
+		if (url == null)
+			return null;
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return map(new File(url.toURI()));
+			} catch (URISyntaxException e) {
+				// 退回到流的方式读取
+			}
+		}
+		InputStream input = url.openStream();
+		try {
+			return read(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * 检查文件头，并将buffer的position移到文件头之后
+	 *
+	 * @throws IOException
+	 *             magic或者version不匹配
+	 */
+	public static void checkHeader(ByteBuffer buffer, int magic, int version)
+			throws IOException {
+		if (buffer.remaining() < 8 || buffer.getInt() != magic)
+			throw new IOException("not a dictionary file");
+		int fileVersion = buffer.getInt();
+		if (fileVersion != version)
+			throw new IOException("unsupported dictionary version: "
+					+ fileVersion + ", expected: " + version);
+	}
+
+	/** 从buffer的当前位置切出count个int的视图，并将position移到其后 */
+	public static IntBuffer sliceInts(ByteBuffer buffer, int count) {
+		return slice(buffer, count * 4).asIntBuffer();
+	}
+
+	/** 从buffer的当前位置切出count个short的视图，并将position移到其后 */
+	public static ShortBuffer sliceShorts(ByteBuffer buffer, int count) {
+		return slice(buffer, count * 2).asShortBuffer();
+	}
+
+	/** 从buffer的当前位置切出count个char的视图，并将position移到其后 */
+	public static CharBuffer sliceChars(ByteBuffer buffer, int count) {
+		return slice(buffer, count * 2).asCharBuffer();
+	}
+
+	/**
+	 * 检查文件最后4个字节中的CRC32是否与之前的内容一致，不改变buffer的position
+	 *
+	 * @return 校验和是否一致
+	 */
+	public static boolean verifyChecksum(ByteBuffer buffer) {
+		int length = buffer.limit() - 4;
+		if (length < 0)
+			return false;
+		ByteBuffer content = buffer.duplicate();
+		content.position(0);
+		CRC32 checksum = new CRC32();
+		byte[] block = new byte[1 << 16];
+		while (content.position() < length) {
+			int n = Math.min(block.length, length - content.position());
+			content.get(block, 0, n);
+			checksum.update(block, 0, n);
+		}
+		return (int) checksum.getValue() == content.getInt();
+	}
+
+	/**
+	 * binFile存在并且不比sources中任何一个存在的源文件旧。源文件更新之后，旧的*.bin不再使用，而是从源文件重新构建
+	 */
+	public static boolean isUpToDate(File binFile, File... sources) {
+		if (!binFile.exists())
+			return false;
+		long modified = binFile.lastModified();
+		for (File source : sources) {
+			if (source.exists() && source.lastModified() > modified)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 写出*.bin文件的输出流。内容先写到同一目录下新建的临时文件中，同时计算CRC32，finish时写入校验和并改名为目标文件。
+	 * 临时文件名由File.createTempFile生成，多个进程同时写同一个文件时互不干扰。没有调用finish就close时删除临时文件，目标文件保持不变
+	 */
+	public static class Output extends DataOutputStream {
+
+		private final File file;
+
+		private final File tempFile;
+
+		private final CRC32 checksum;
+
+		private boolean finished;
+
+		public Output(File file) throws IOException {
+			this(file, File.createTempFile(file.getName(), ".tmp", file
+					.getAbsoluteFile().getParentFile()), new CRC32());
+		}
+
+		private Output(File file, File tempFile, CRC32 checksum)
+				throws IOException {
+			super(new CheckedOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile), 1 << 16), checksum));
+			this.file = file;
+			this.tempFile = tempFile;
+			this.checksum = checksum;
+		}
+
+		/**
+		 * 写入校验和，关闭文件并用它替换目标文件。先直接改名覆盖目标文件，这样读者看到的总是完整的旧文件或者新文件；
+		 * 有的平台不允许改名覆盖已有的文件，这时才先删除目标文件再改名
+		 */
+		public void finish() throws IOException {
+			flush();
+			writeInt((int) checksum.getValue());
+			super.close();
+			finished = true;
+			if (tempFile.renameTo(file))
+				return;
+			if (file.exists() && !file.delete()) {
+				tempFile.delete();
+				throw new IOException("cannot replace " + file);
+			}
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				throw new IOException("cannot rename " + tempFile + " to "
+						+ file);
+			}
+		}
+
+		public void close() throws IOException {
+			if (!finished) {
+				super.close();
+				tempFile.delete();
+			}
+		}
+
+	}
+
+	/**
+	 * 检查buffer中读完所有数组之后只剩下最后4个字节的CRC32
+	 *
+	 * @throws IOException
+	 *             文件被截断或者有多余的内容
+	 */
+	public static void checkEnd(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() != 4)
+			throw new IOException("dictionary file size mismatch");
+	}
+
+	/**
+	 * @throws BufferUnderflowException
+	 *             buffer中剩下的内容不足bytes个字节，例如文件被截断或者文件头中的长度不对
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int bytes) {
+		if (bytes < 0 || bytes > buffer.remaining())
+			throw new BufferUnderflowException();
+		ByteBuffer slice = buffer.slice();
+		slice.limit(bytes);
+		buffer.position(buffer.position() + bytes);
+		return slice;
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分词时使用的一组词典：核心词典、关联词典和用户词典。
+ *
+ * 快照本身不可修改，当前使用的快照保存在一个AtomicReference中。重新加载词典时，新的快照在调用者的线程(通常是后台线程)中完整地构建好，
+ * 再用一次引用替换发布出去。HHMMSegmenter在处理每个句子之前取一次当前快照，正在处理的句子继续使用旧的快照直到结束，
+ * 之后的句子使用新的快照，分词过程中不需要任何锁，也不会因为重新加载而暂停。旧的快照在不再被使用后由GC回收。
+ */
+public final class DictionarySnapshot {
+
+	private static final AtomicReference<DictionarySnapshot> current = new AtomicReference<DictionarySnapshot>();
+
+	private static final AtomicLong generations = new AtomicLong();
+
+	/** 快照的代数，每创建一个快照加1 */
+	private final long generation;
+
+	private final WordDictionary wordDictionary;
+
+	private final BigramDictionary bigramDictionary;
+
+	private final UserDictionary userDictionary;
+
+	/**
+	 * 使用默认的用户词典UserDictionary.getInstance()
+	 */
+	public DictionarySnapshot(WordDictionary wordDictionary,
+			BigramDictionary bigramDictionary) {
+		this(wordDictionary, bigramDictionary, UserDictionary.getInstance());
+	}
+
+	/**
+	 * @param userDictionary
+	 *            用户词典本身可以随时修改，不随快照替换
+	 */
+	public DictionarySnapshot(WordDictionary wordDictionary,
+			BigramDictionary bigramDictionary, UserDictionary userDictionary) {
+		this.wordDictionary = wordDictionary;
+		this.bigramDictionary = bigramDictionary;
+		this.userDictionary = userDictionary;
+		this.generation = generations.incrementAndGet();
+	}
+
+	public WordDictionary getWordDictionary() {
+		return wordDictionary;
+	}
+
+	public BigramDictionary getBigramDictionary() {
+		return bigramDictionary;
+	}
+
+	public UserDictionary getUserDictionary() {
+		return userDictionary;
+	}
+
+	/**
+	 * 快照的代数，不同的快照代数一定不同。缓存分词结果时记录代数而不是快照本身，不会让被替换的词典一直留在内存中
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * 当前使用的快照。第一次调用时由WordDictionary和BigramDictionary的单例组成，两个词典同时加载
+	 */
+	public static DictionarySnapshot getCurrent() {
+		DictionarySnapshot snapshot = current.get();
+		if (snapshot == null) {
+			BigramDictionary.preload();
+			WordDictionary wordDictionary = WordDictionary.getInstance();
+			// 单例只会加载一次，并发时各线程得到的是同样的词典，只有一个快照能被设置
+			current.compareAndSet(null, new DictionarySnapshot(wordDictionary,
+					BigramDictionary.getInstance()));
+			snapshot = current.get();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * 从词典目录dictRoot加载一组新的词典，但并不发布。加载过程与单例相同，依次尝试coredict.bin、coredict.mem和coredict.dct等文件。
+	 * *.bin比同名的*.dct或*.mem旧时不使用它，修改源文件之后重新加载就能生效，不需要先删除或重新编译*.bin
+	 */
+	public static DictionarySnapshot load(String dictRoot) {
+		return new DictionarySnapshot(WordDictionary.loadFrom(dictRoot),
+				BigramDictionary.loadFrom(dictRoot));
+	}
+
+	/**
+	 * 发布新的快照，之后开始处理的句子都使用它
+	 *
+	 * @return 被替换的快照
+	 */
+	public static DictionarySnapshot publish(DictionarySnapshot snapshot) {
+		if (snapshot == null)
+			throw new IllegalArgumentException("snapshot is null");
+		return current.getAndSet(snapshot);
+	}
+
+	/**
+	 * 在当前线程中从dictRoot重新加载词典并发布。加载期间分词继续使用旧的快照
+	 *
+	 * @return 新的快照
+	 */
+	public static DictionarySnapshot reload(String dictRoot) {
+		DictionarySnapshot snapshot = load(dictRoot);
+		publish(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * 在后台线程中从dictRoot重新加载词典并发布，加载失败时保留旧的快照并打印错误
+	 *
+	 * @return 执行加载的线程，可以用join等待加载结束
+	 */
+	public static Thread reloadInBackground(final String dictRoot) {
+		Thread loader = new Thread("DictionarySnapshot reloader") {
+			public void run() {
+				try {
+					reload(dictRoot);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+		return loader;
+	}
+
+}
@@ -0,0 +1,306 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 双数组trie(Double-Array Trie)，用来在一个字符序列中一次遍历找出所有从某个位置开始的词典词。
+ *
+ * 每个字符先通过charCodes映射成从1开始的紧凑编码，从状态s经字符c转移到状态t = base[s] + code(c)，
+ * 当且仅当check[t] == s时转移有效。根状态为0。状态s对应一个完整的词时，位置base[s](即编码0)上有一个结束节点，
+ * 它的check为s，base为-(value + 1)，value就是该词的编号。
+ *
+ * 三个数组都可以直接是coredict.bin的内存映射视图。
+ */
+public class DoubleArrayTrie {
+
+	/** 字符编码表的大小，覆盖全部Unicode BMP字符 */
+	public static final int CHAR_CODE_LENGTH = 65536;
+
+	private static final int FREE = -1;
+
+	/** 字符到编码的映射，0表示该字符不在任何词中出现 */
+	private CharBuffer charCodes;
+
+	private IntBuffer base;
+
+	private IntBuffer check;
+
+	private int size;
+
+	DoubleArrayTrie(CharBuffer charCodes, IntBuffer base, IntBuffer check) {
+		this.charCodes = charCodes;
+		this.base = base;
+		this.check = check;
+		this.size = base.capacity();
+	}
+
+	/**
+	 * 从coredict.bin中读取trie，buffer的position须位于trie数据的开始位置，读取后移到trie数据之后
+	 *
+	 * @param size
+	 *            base和check数组的长度
+	 */
+	static DoubleArrayTrie read(ByteBuffer buffer, int size) {
+		CharBuffer charCodes = DictionaryFile.sliceChars(buffer, CHAR_CODE_LENGTH);
+		IntBuffer base = DictionaryFile.sliceInts(buffer, size);
+		IntBuffer check = DictionaryFile.sliceInts(buffer, size);
+		return new DoubleArrayTrie(charCodes, base, check);
+	}
+
+	/** 按照read所要求的格式写出trie */
+	void write(DataOutputStream output) throws IOException {
+		for (int i = 0; i < CHAR_CODE_LENGTH; i++)
+			output.writeChar(charCodes.get(i));
+		for (int i = 0; i < size; i++)
+			output.writeInt(base.get(i));
+		for (int i = 0; i < size; i++)
+			output.writeInt(check.get(i));
+	}
+
+	/** base和check数组的长度 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 找出buffer中所有以start开始、在end之前结束的词，结果按词长递增的顺序给出
+	 *
+	 * @param buffer
+	 *            输入的字符序列
+	 * @param start
+	 *            起始位置
+	 * @param end
+	 *            结束位置(不包含)
+	 * @param ends
+	 *            输出：每个词的结束位置(不包含)
+	 * @param values
+	 *            输出：每个词的编号
+	 * @return 找到的词的个数，最多为ends.length
+	 */
+	public int commonPrefixSearch(char[] buffer, int start, int end,
+			int[] ends, int[] values) {
+		int count = 0, s = 0, t, code;
+		for (int i = start; i < end && count < ends.length; i++) {
+			code = charCodes.get(buffer[i]);
+			if (code == 0)
+				break;
+			t = base.get(s) + code;
+			if (t >= size || check.get(t) != s)
+				break;
+			s = t;
+			t = base.get(s);
+			if (t < size && check.get(t) == s) {
+				ends[count] = i + 1;
+				values[count] = -base.get(t) - 1;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 精确查找buffer中[start, end)对应的词
+	 *
+	 * @return 词的编号，不存在时返回-1
+	 */
+	public int exactMatch(char[] buffer, int start, int end) {
+		int s = 0, t, code;
+		for (int i = start; i < end; i++) {
+			code = charCodes.get(buffer[i]);
+			if (code == 0)
+				return -1;
+			t = base.get(s) + code;
+			if (t >= size || check.get(t) != s)
+				return -1;
+			s = t;
+		}
+		t = base.get(s);
+		if (t < size && check.get(t) == s)
+			return -base.get(t) - 1;
+		return -1;
+	}
+
+	/**
+	 * 对一组词构建双数组trie，keys[i]对应的编号为values[i]，keys中不能有重复的词
+	 */
+	public static DoubleArrayTrie build(char[][] keys, int[] values) {
+		return new Builder(keys, values).build();
+	}
+
+	/**
+	 * 按照darts的方法构建：将所有词排序后，逐层取出同一父节点下的所有子节点，从左到右寻找第一个能容纳全部子节点的base
+	 */
+	private static class Builder {
+
+		private char[][] keys;
+
+		private int[] values;
+
+		private char[] codes = new char[CHAR_CODE_LENGTH];
+
+		private int[] base;
+
+		private int[] check;
+
+		private boolean[] used;
+
+		private int nextCheckPos;
+
+		private int maxIndex;
+
+		Builder(char[][] keys, int[] values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		DoubleArrayTrie build() {
+			// 编码按字符大小顺序分配，保证编码序列与字符序列的排序一致
+			boolean[] seen = new boolean[CHAR_CODE_LENGTH];
+			for (char[] key : keys)
+				for (char c : key)
+					seen[c] = true;
+			char code = 0;
+			for (int c = 0; c < CHAR_CODE_LENGTH; c++) {
+				if (seen[c])
+					codes[c] = ++code;
+			}
+
+			Integer[] order = new Integer[keys.length];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer l, Integer r) {
+					char[] lk = keys[l], rk = keys[r];
+					int n = Math.min(lk.length, rk.length);
+					for (int i = 0; i < n; i++) {
+						if (lk[i] != rk[i])
+							return lk[i] - rk[i];
+					}
+					return lk.length - rk.length;
+				}
+			});
+			char[][] sortedKeys = new char[keys.length][];
+			int[] sortedValues = new int[keys.length];
+			for (int i = 0; i < order.length; i++) {
+				sortedKeys[i] = keys[order[i]];
+				sortedValues[i] = values[order[i]];
+			}
+			keys = sortedKeys;
+			values = sortedValues;
+
+			resize(keys.length * 4 + CHAR_CODE_LENGTH);
+			check[0] = 0;
+			nextCheckPos = 1;
+			if (keys.length > 0)
+				base[0] = insert(0, 0, keys.length, 0);
+
+			int length = maxIndex + 1;
+			int[] finalBase = new int[length];
+			int[] finalCheck = new int[length];
+			System.arraycopy(base, 0, finalBase, 0, length);
+			System.arraycopy(check, 0, finalCheck, 0, length);
+			return new DoubleArrayTrie(CharBuffer.wrap(codes),
+					IntBuffer.wrap(finalBase), IntBuffer.wrap(finalCheck));
+		}
+
+		/**
+		 * 将keys[left, right)在depth层的所有子节点放入trie，它们的父节点为parent
+		 *
+		 * @return 父节点的base
+		 */
+		private int insert(int parent, int left, int right, int depth) {
+			// 取出所有不同的子节点编码，编码0表示词在depth处结束
+			int[] childCodes = new int[right - left];
+			int[] childLeft = new int[right - left + 1];
+			int childCount = 0, prev = -1;
+			for (int i = left; i < right; i++) {
+				int c = keys[i].length == depth ? 0 : codes[keys[i][depth]];
+				if (c != prev) {
+					childCodes[childCount] = c;
+					childLeft[childCount] = i;
+					childCount++;
+					prev = c;
+				}
+			}
+			childLeft[childCount] = right;
+
+			int begin = findBase(childCodes, childCount);
+			for (int k = 0; k < childCount; k++)
+				check[begin + childCodes[k]] = parent;
+			for (int k = 0; k < childCount; k++) {
+				int t = begin + childCodes[k];
+				if (childCodes[k] == 0)
+					base[t] = -values[childLeft[k]] - 1;
+				else
+					base[t] = insert(t, childLeft[k], childLeft[k + 1], depth + 1);
+			}
+			return begin;
+		}
+
+		private int findBase(int[] childCodes, int childCount) {
+			int first = childCodes[0], last = childCodes[childCount - 1];
+			int pos = Math.max(first + 1, nextCheckPos) - 1;
+			int nonZero = 0;
+			boolean isFirst = true;
+			int begin;
+			outer: while (true) {
+				pos++;
+				if (pos >= check.length)
+					resize(pos + 1);
+				if (check[pos] != FREE) {
+					nonZero++;
+					continue;
+				} else if (isFirst) {
+					nextCheckPos = pos;
+					isFirst = false;
+				}
+				begin = pos - first;
+				if (begin < 1)
+					continue;
+				if (begin + last >= check.length)
+					resize(begin + last + 1);
+				if (used[begin])
+					continue;
+				for (int k = 1; k < childCount; k++) {
+					if (check[begin + childCodes[k]] != FREE)
+						continue outer;
+				}
+				break;
+			}
+			// 如果从nextCheckPos开始的位置已经基本被占满，直接跳过这一段
+			if (1.0 * nonZero / (pos - nextCheckPos + 1) >= 0.95)
+				nextCheckPos = pos;
+			used[begin] = true;
+			if (begin + last > maxIndex)
+				maxIndex = begin + last;
+			return begin;
+		}
+
+		private void resize(int newSize) {
+			int oldSize = base == null ? 0 : base.length;
+			if (newSize <= oldSize)
+				return;
+			newSize = Math.max(newSize, oldSize + (oldSize >> 1));
+			int[] newBase = new int[newSize];
+			int[] newCheck = new int[newSize];
+			boolean[] newUsed = new boolean[newSize];
+			if (oldSize > 0) {
+				System.arraycopy(base, 0, newBase, 0, oldSize);
+				System.arraycopy(check, 0, newCheck, 0, oldSize);
+				System.arraycopy(used, 0, newUsed, 0, oldSize);
+			}
+			Arrays.fill(newCheck, oldSize, newSize, FREE);
+			base = newBase;
+			check = newCheck;
+			used = newUsed;
+		}
+
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.Arrays;
+
+/**
+ * 核心词典的紧凑只读表示，所有的词前缀压缩(front coding)后存放在一个char池中。
+ *
+ * 与WordDictionary相同，每个词只保存去掉首字后的部分，按首字分行，行内按字典序排列，词的编号也与WordDictionary相同。
+ * 每行的词每BLOCK_SIZE个分成一块，块中第一个词完整保存，其余的词只保存与前一个词不同的后缀。
+ * 池中每个词是一个头部字符加上后缀：头部的高8位是与前一个词相同的前缀长度，低8位是后缀长度。
+ * 查找时先在行内按块的第一个词二分查找，再在块内顺序比较，比较时只记录与前一个词相同的前缀长度，不需要还原出完整的词。
+ *
+ * 同一行的词通常有相同的第二个字，例如"中国"、"中国人"、"中国人民"，每个词平均只需要一两个字符，
+ * 加上词频和每块一个int的偏移，比每个词一个char[]的char[][][]结构小得多。词频直接存放在以词的编号为下标的int[]中。
+ *
+ * 构建完成后是只读的，可以被多个线程同时查询。
+ *
+ * @see WordDictionary
+ */
+public class FrontCodedWordTable {
+
+	/** 每块中词的个数，越大越省空间，块内顺序比较的代价也越高 */
+	public static final int BLOCK_SIZE = 16;
+
+	/** 头部字符中长度字段的最大值 */
+	private static final int MAX_LENGTH = 0xFF;
+
+	/** 以字符为下标，给出以该字符开头的词所在的行，-1表示没有 */
+	private final short[] charRows;
+
+	/** 第row行的词是第rowWords[row]到第rowWords[row+1]-1个词 */
+	private final int[] rowWords;
+
+	/** 第row行的块是第rowBlocks[row]到第rowBlocks[row+1]-1块 */
+	private final int[] rowBlocks;
+
+	/** 每一块的第一个词在pool中的位置 */
+	private final int[] blockOffsets;
+
+	private final char[] pool;
+
+	private final int[] frequencies;
+
+	private FrontCodedWordTable(short[] charRows, int[] rowWords,
+			int[] rowBlocks, int[] blockOffsets, char[] pool, int[] frequencies) {
+		this.charRows = charRows;
+		this.rowWords = rowWords;
+		this.rowBlocks = rowBlocks;
+		this.blockOffsets = blockOffsets;
+		this.pool = pool;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * 从WordDictionary中的全部词构建
+	 *
+	 * @throws IllegalArgumentException
+	 *             有超过256个字符的词
+	 */
+	public static FrontCodedWordTable build(WordDictionary dictionary) {
+		int rowCount = dictionary.getRowCount();
+		int wordCount = dictionary.getWordCount();
+		char[] previous = new char[dictionary.getMaxWordLength()];
+		char[] word = new char[previous.length];
+
+		// 第一遍计算块数和池的大小
+		int blockCount = 0, poolSize = 0;
+		for (int row = 0; row < rowCount; row++) {
+			int previousLength = 0;
+			int first = dictionary.getRowStart(row);
+			int end = dictionary.getRowStart(row + 1);
+			for (int w = first; w < end; w++) {
+				int length = dictionary.getWordSuffix(w, word);
+				if (length > MAX_LENGTH)
+					throw new IllegalArgumentException("word too long: "
+							+ new String(word, 0, length));
+				int shared = 0;
+				if ((w - first) % BLOCK_SIZE == 0)
+					blockCount++;
+				else
+					shared = commonPrefix(previous, previousLength, word, length);
+				poolSize += 1 + length - shared;
+				System.arraycopy(word, 0, previous, 0, length);
+				previousLength = length;
+			}
+		}
+
+		short[] charRows = new short[WordDictionary.CHAR_TABLE_LENGTH];
+		Arrays.fill(charRows, (short) -1);
+		int[] rowWords = new int[rowCount + 1];
+		int[] rowBlocks = new int[rowCount + 1];
+		int[] blockOffsets = new int[blockCount];
+		char[] pool = new char[poolSize];
+		int[] frequencies = new int[wordCount];
+		int b = 0, p = 0;
+		for (int row = 0; row < rowCount; row++) {
+			int first = dictionary.getRowStart(row);
+			int end = dictionary.getRowStart(row + 1);
+			rowWords[row] = first;
+			rowBlocks[row] = b;
+			if (first < end)
+				charRows[dictionary.getRowChar(row)] = (short) row;
+			int previousLength = 0;
+			for (int w = first; w < end; w++) {
+				int length = dictionary.getWordSuffix(w, word);
+				int shared = 0;
+				if ((w - first) % BLOCK_SIZE == 0)
+					blockOffsets[b++] = p;
+				else
+					shared = commonPrefix(previous, previousLength, word, length);
+				pool[p++] = (char) (shared << 8 | (length - shared));
+				System.arraycopy(word, shared, pool, p, length - shared);
+				p += length - shared;
+				frequencies[w] = dictionary.getWordFrequency(w);
+				System.arraycopy(word, 0, previous, 0, length);
+				previousLength = length;
+			}
+		}
+		rowWords[rowCount] = wordCount;
+		rowBlocks[rowCount] = b;
+		return new FrontCodedWordTable(charRows, rowWords, rowBlocks,
+				blockOffsets, pool, frequencies);
+	}
+
+	private static int commonPrefix(char[] left, int leftLength, char[] right,
+			int rightLength) {
+		int n = Math.min(leftLength, rightLength);
+		int i = 0;
+		while (i < n && left[i] == right[i])
+			i++;
+		return i;
+	}
+
+	/** 词的个数 */
+	public int getWordCount() {
+		return frequencies.length;
+	}
+
+	/**
+	 * 获取buffer中从offset开始、长度为length的单词的词频
+	 *
+	 * @return 单词的词频，不存在时为0
+	 */
+	public int getFrequency(char[] buffer, int offset, int length) {
+		int wordId = find(buffer, offset, length);
+		return wordId == -1 ? 0 : frequencies[wordId];
+	}
+
+	/**
+	 * buffer中从offset开始、长度为length的单词在不在词典中出现
+	 */
+	public boolean isExist(char[] buffer, int offset, int length) {
+		return find(buffer, offset, length) != -1;
+	}
+
+	/**
+	 * @return 单词的编号，与WordDictionary中的编号相同，不存在时为-1
+	 */
+	public int find(char[] buffer, int offset, int length) {
+		if (length == 0)
+			return -1;
+		int row = charRows[buffer[offset]];
+		if (row == -1)
+			return -1;
+		int start = offset + 1, end = offset + length;
+		int low = rowBlocks[row], high = rowBlocks[row + 1] - 1;
+		if (low > high)
+			return -1;
+		// 最后一个第一个词不大于要找的词的块
+		int firstBlock = low;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (compareHead(mid, buffer, start, end) <= 0)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+
+		int wordId = rowWords[row] + (low - firstBlock) * BLOCK_SIZE;
+		int last = Math.min(wordId + BLOCK_SIZE, rowWords[row + 1]);
+		int p = blockOffsets[low];
+		// matched是前一个词与要找的词相同的前缀长度，前一个词总是比要找的词小
+		int matched = 0;
+		for (; wordId < last; wordId++) {
+			int shared = pool[p] >>> 8, suffix = pool[p] & MAX_LENGTH;
+			p++;
+			if (shared < matched) {
+				// 这个词在matched之前就与前一个词不同，只能比要找的词大
+				return -1;
+			}
+			if (shared == matched) {
+				int i = 0, k = start + matched;
+				while (i < suffix && k < end && pool[p + i] == buffer[k]) {
+					i++;
+					k++;
+				}
+				if (i == suffix && k == end)
+					return wordId;
+				if (i < suffix && (k == end || pool[p + i] > buffer[k]))
+					return -1;
+				matched += i;
+			}
+			// shared > matched时这个词在matched处与前一个词相同，仍然比要找的词小
+			p += suffix;
+		}
+		return -1;
+	}
+
+	/**
+	 * 比较第block块的第一个词与buffer中[start, end)的部分，比较规则同Utility.compareArray
+	 */
+	private int compareHead(int block, char[] buffer, int start, int end) {
+		int p = blockOffsets[block];
+		int li = p + 1, lend = li + (pool[p] & MAX_LENGTH);
+		int ri = start;
+		while (li < lend && ri < end && pool[li] == buffer[ri]) {
+			li++;
+			ri++;
+		}
+		if (li == lend)
+			return ri == end ? 0 : -1;
+		if (ri == end)
+			return 1;
+		return pool[li] > buffer[ri] ? 1 : -1;
+	}
+
+	/**
+	 * 所有数组占用的堆内存的估计值，按64位JVM、压缩指针下数组头16字节、8字节对齐计算
+	 */
+	public long estimateHeapBytes() {
+		return arrayBytes(charRows.length, 2) + arrayBytes(rowWords.length, 4)
+				+ arrayBytes(rowBlocks.length, 4)
+				+ arrayBytes(blockOffsets.length, 4)
+				+ arrayBytes(pool.length, 2) + arrayBytes(frequencies.length, 4);
+	}
+
+	/** 长度为length、每个元素elementSize字节的数组占用的堆内存 */
+	static long arrayBytes(int length, int elementSize) {
+		return (16 + (long) length * elementSize + 7) & ~7L;
+	}
+
+}
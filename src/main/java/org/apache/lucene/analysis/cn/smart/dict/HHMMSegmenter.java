@@ -9,80 +9,302 @@ import org.apache.lucene.analysis.cn.smart.Utility;
 
 public class HHMMSegmenter {
 	
-	private static WordDictionary wordDict = WordDictionary.getInstance();
-	
 	/**
-	 * 寻找sentence中所有可能的Token，最后再添加两个特殊Token，"始##始",
+	 * 寻找sentence中所有可能的Token，并在首尾添加两个特殊Token，"始##始",
 	 * "末##末"，"始##始"Token的起始位置是-1,"末##末"Token的起始位置是句子的长度
 	 * 
 	 * @param sentence
 	 *            输入的句子，不包含"始##始","末##末"等
 	 * @return 所有可能的Token
-	 * @see MultiTokenMap
+	 * @see SegGraph
 	 */
-	private SegGraph createSegGraph(String sentence) {
-		int i = 0, j;
-		int length = sentence.length();
-		int foundIndex;
-		CharType[] charTypeArray = getCharTypes(sentence);
-		StringBuffer sb = new StringBuffer();
-		SegToken token;
+	SegGraph createSegGraph(String sentence) {
+		return createSegGraph(sentence, DictionarySnapshot.getCurrent());
+	}
+
+	private SegGraph createSegGraph(String sentence, DictionarySnapshot snapshot) {
+		char[] sentenceChars = sentence.toCharArray();
+		SegmentationContext context = new SegmentationContext();
+		fillSegGraph(snapshot, context, sentenceChars, 0, sentenceChars.length);
+		return context.segGraph;
+	}
+
+	/**
+	 * 把buffer中的句子复制到context中，清空context.segGraph，再放入句子中所有可能的Token
+	 * 
+	 * @param snapshot
+	 *            查询词频使用的词典，核心词典和用户词典中的词都会放入词格
+	 * @param buffer
+	 *            句子所在的数组
+	 * @param offset
+	 *            句子的起始位置
+	 * @param length
+	 *            句子的长度
+	 * @see MaxMatchSegmenter
+	 */
+	void fillSegGraph(DictionarySnapshot snapshot,
+			SegmentationContext context, char[] buffer, int offset, int length) {
+		WordDictionary wordDict = snapshot.getWordDictionary();
+		UserDictionary userDict = snapshot.getUserDictionary();
+		char[] sentenceChars = context.prepare(buffer, offset, length, wordDict
+				.getMaxWordLength(), userDict.getMaxWordLength());
+		byte[] charTypeArray = getCharTypes(sentenceChars, length,
+				context.charTypes);
+		context.charTypes = charTypeArray;
+		int[] wordEnds = context.wordEnds, wordFreqs = context.wordFreqs;
+		int[] userWordEnds = context.userWordEnds, userWordFreqs = context.userWordFreqs;
+		SegGraph segGraph = context.segGraph;
+		int i = 0, j, k, u;
+		int wordCount, userWordCount;
 		int frequency = 0; // word 出现的次数
 		boolean hasFullWidth;
 		WordType wordType;
 		
-		
-		SegGraph segGraph = new SegGraph();
+		segGraph.reset(sentenceChars, length);
+		// 词格要求Token按startOffset递增的顺序加入，因此先加入"始##始"
+		frequency = wordDict.getFrequency(Utility.START_CHAR_ARRAY);
+		segGraph.addToken(-1, 0, WordType.SENTENCE_BEGIN, frequency);
 		while (i < length) {
 			hasFullWidth = false;
 			switch (charTypeArray[i]) {
-			case SPACE_LIKE:
+			case CharType.SPACE_LIKE_CODE:
 				i++;
 				break;// 跳过
-			case HANZI:
+			case CharType.HANZI_CODE:
+				// 核心词典的候选词只在连续的汉字中查找，用户词可以包含其他字符，例如"卡拉OK"
+				j = i + 1;
+				while (j < length && charTypeArray[j] == CharType.HANZI_CODE)
+					j++;
+				// 一次遍历trie得到所有以i开始的词，结果按长度递增
+				wordCount = wordDict.prefixSearch(sentenceChars, i, j,
+						wordEnds, wordFreqs);
+				userWordCount = searchUserWords(userDict, sentenceChars,
+						charTypeArray, i, length, userWordEnds, userWordFreqs);
+				// 不管单个汉字能不能构成词， 都将单个汉字存到segGraph中去，否则会造成分词不完整
+				k = 0;
+				u = 0;
+				frequency = 0;
+				if (wordCount > 0 && wordEnds[0] == i + 1)
+					frequency = wordFreqs[k++];
+				if (userWordCount > 0 && userWordEnds[0] == i + 1)
+					frequency = userWordFreqs[u++];
+				segGraph.addToken(i, i + 1, WordType.CHINESE_WORD, frequency);
+				// 两组结果都按长度递增，合并时同一个词只加入一次，以用户词典的词频为准
+				while (k < wordCount || u < userWordCount) {
+					if (u == userWordCount
+							|| (k < wordCount && wordEnds[k] < userWordEnds[u])) {
+						segGraph.addToken(i, wordEnds[k], WordType.CHINESE_WORD,
+								wordFreqs[k]);
+						k++;
+					} else {
+						if (k < wordCount && wordEnds[k] == userWordEnds[u])
+							k++;
+						segGraph.addToken(i, userWordEnds[u],
+								WordType.CHINESE_WORD, userWordFreqs[u]);
+						u++;
+					}
+				}
+				i++;
+				break;
+			case CharType.FULLWIDTH_LETTER_CODE:
+			case CharType.LETTER_CODE:
+				hasFullWidth = charTypeArray[i] == CharType.FULLWIDTH_LETTER_CODE;
+				j = i + 1;
+				while (j < length
+						&& (charTypeArray[j] == CharType.LETTER_CODE || charTypeArray[j] == CharType.FULLWIDTH_LETTER_CODE)) {
+					if (charTypeArray[j] == CharType.FULLWIDTH_LETTER_CODE)
+						hasFullWidth = true;
+					j++;
+				}
+				// 找到了从i到j的一个字母串，用"未##串"的词频代表
+				frequency = wordDict.getFrequency(Utility.STRING_CHAR_ARRAY);
+				wordType = hasFullWidth ? WordType.FULLWIDTH_STRING : WordType.STRING;
+				userWordCount = searchUserWords(userDict, sentenceChars,
+						charTypeArray, i, length, userWordEnds, userWordFreqs);
+				addTokens(segGraph, i, j, wordType, frequency, userWordEnds,
+						userWordFreqs, userWordCount);
+				i = j;
+				break;
+			case CharType.FULLWIDTH_DIGIT_CODE:
+			case CharType.DIGIT_CODE:
+				hasFullWidth = charTypeArray[i] == CharType.FULLWIDTH_DIGIT_CODE;
 				j = i + 1;
-				sb.delete(0, sb.length());
-				// 不管单个汉字能不能构成词， 都将单个汉字存到segGraph中去，
-				sb.append(sentence.charAt(i));
-				char[] charArray = new char[] { sentence.charAt(i) };
-				// 获取词频
-				frequency = wordDict.getFrequency(charArray);
-				token = new SegToken(charArray, i, j, WordType.CHINESE_WORD, frequency);
-				segGraph.addToken(token);
-				
-				foundIndex = wordDict.getPrefixMatch(charArray);
-				while (j <= length && foundIndex != -1) {
-					
+				while (j < length
+						&& (charTypeArray[j] == CharType.DIGIT_CODE || charTypeArray[j] == CharType.FULLWIDTH_DIGIT_CODE)) {
+					if (charTypeArray[j] == CharType.FULLWIDTH_DIGIT_CODE)
+						hasFullWidth = true;
+					j++;
 				}
+				// 找到了从i到j的一个数字串，用"未##数"的词频代表
+				frequency = wordDict.getFrequency(Utility.NUMBER_CHAR_ARRAY);
+				wordType = hasFullWidth ? WordType.FULLWIDTH_NUMBER : WordType.NUMBER;
+				userWordCount = searchUserWords(userDict, sentenceChars,
+						charTypeArray, i, length, userWordEnds, userWordFreqs);
+				addTokens(segGraph, i, j, wordType, frequency, userWordEnds,
+						userWordFreqs, userWordCount);
+				i = j;
+				break;
+			case CharType.DELIMITER_CODE:
+				j = i + 1;
+				// 标点符号不需要查词频，直接取最大词频
+				frequency = Utility.MAX_FREQUENCE;
+				userWordCount = searchUserWords(userDict, sentenceChars,
+						charTypeArray, i, length, userWordEnds, userWordFreqs);
+				addTokens(segGraph, i, j, WordType.DELIMITER, frequency,
+						userWordEnds, userWordFreqs, userWordCount);
+				i = j;
+				break;
+			default:
+				j = i + 1;
+				// 不认识的字符(例如不在GB2312中的字符)当作未知字符串处理
+				frequency = wordDict.getFrequency(Utility.STRING_CHAR_ARRAY);
+				userWordCount = searchUserWords(userDict, sentenceChars,
+						charTypeArray, i, length, userWordEnds, userWordFreqs);
+				addTokens(segGraph, i, j, WordType.STRING, frequency,
+						userWordEnds, userWordFreqs, userWordCount);
+				i = j;
+				break;
 			}
 		}
+		
+		// 最后增加"末##末"
+		frequency = wordDict.getFrequency(Utility.END_CHAR_ARRAY);
+		segGraph.addToken(length, length + 1, WordType.SENTENCE_END, frequency);
+	}
+
+	/**
+	 * 在每个Token的起始位置查找用户词，不论这个位置是什么类型的字符，用户词可以跨越不同类型的字符，例如"A股"、"T恤"、"C++"。
+	 * 字母串和数字串在词格中只作为一个整体出现，在它们中间结束的用户词无法与下一个Token相连，这样的词被去掉
+	 * 
+	 * @return 留下的用户词个数，结果按词长递增保存在ends和freqs的开头
+	 */
+	private static int searchUserWords(UserDictionary userDict, char[] sentence,
+			byte[] charTypes, int start, int length, int[] ends, int[] freqs) {
+		int count = userDict.prefixSearch(sentence, start, length, ends, freqs);
+		int kept = 0;
+		for (int w = 0; w < count; w++) {
+			int end = ends[w];
+			if (end < length && runOf(charTypes[end - 1]) != 0
+					&& runOf(charTypes[end - 1]) == runOf(charTypes[end]))
+				continue;
+			ends[kept] = end;
+			freqs[kept] = freqs[w];
+			kept++;
+		}
+		return kept;
+	}
+
+	/** 字母(包括全角)为1，数字(包括全角)为2，其他字符不会连成一个Token，为0 */
+	private static int runOf(byte charType) {
+		switch (charType) {
+		case CharType.LETTER_CODE:
+		case CharType.FULLWIDTH_LETTER_CODE:
+			return 1;
+		case CharType.DIGIT_CODE:
+		case CharType.FULLWIDTH_DIGIT_CODE:
+			return 2;
+		default:
+			return 0;
+		}
 	}
 
 	/**
-	 * 为sentence中的每个字符确定唯一的字符类型
+	 * 把Token(start, end)和从start开始的用户词按结束位置递增加入词格，与它结束位置相同的用户词不再加入
+	 */
+	private static void addTokens(SegGraph segGraph, int start, int end,
+			WordType wordType, int frequency, int[] userWordEnds,
+			int[] userWordFreqs, int userWordCount) {
+		int u = 0;
+		while (u < userWordCount && userWordEnds[u] < end) {
+			segGraph.addToken(start, userWordEnds[u], WordType.CHINESE_WORD,
+					userWordFreqs[u]);
+			u++;
+		}
+		segGraph.addToken(start, end, wordType, frequency);
+		if (u < userWordCount && userWordEnds[u] == end)
+			u++;
+		for (; u < userWordCount; u++)
+			segGraph.addToken(start, userWordEnds[u], WordType.CHINESE_WORD,
+					userWordFreqs[u]);
+	}
+
+	/**
+	 * 为sentence中的每个字符确定唯一的字符类型，每个字符只查一次Utility中的字符类型表
 	 * 
-	 * @see Utility.charType(char)
+	 * @see Utility#getCharTypeCode(char)
 	 * @param sentence
 	 *            输入的完成句子
-	 * @return 返回的字符类型数组，如果输入为null，返回也是null
+	 * @param charTypeArray
+	 *            用来存放结果的数组，为null或者长度不够时重新分配
+	 * @return 返回的字符类型编码数组
 	 */
-	private CharType[] getCharTypes(String sentence) {
-		int length = sentence.length();
-		CharType[] charTypeArray = new CharType[length];
-		// 生成对应单个汉字的字符类型数组
-		for (int i = 0; i < length; i++)
-			charTypeArray[i] = Utility.getCharType(sentence.charAt(i));
+	private byte[] getCharTypes(char[] sentence, int length,
+			byte[] charTypeArray) {
+		if (charTypeArray == null || charTypeArray.length < length)
+			charTypeArray = new byte[length];
+		Utility.getCharTypeCodes(sentence, 0, length, charTypeArray);
 		return charTypeArray;
 	}
 	
 	/** 最短路径分一手词先 */
 	public List<SegToken> process(String sentence) {
-		SegGraph segGraph = createSegGraph(sentence);
-		BiSegGraph biSegGraph = new BiSegGraph(segGraph);
+		return process(sentence, DictionarySnapshot.getCurrent());
+	}
+
+	/**
+	 * 使用指定的词典快照分词。一个句子从头到尾只使用同一个快照，重新加载词典不影响正在处理的句子
+	 */
+	public List<SegToken> process(String sentence, DictionarySnapshot snapshot) {
+		SegGraph segGraph = createSegGraph(sentence, snapshot);
+		BiSegGraph biSegGraph = new BiSegGraph();
+		biSegGraph.build(segGraph, snapshot.getBigramDictionary());
 		List<SegToken> shortPath = biSegGraph.getShortPath();
 		return shortPath;
 	}
-	
-	
+
+	/**
+	 * 求出sentence的前shortPathCount种分词结果，按概率从大到小排列，第一种与process(String)的结果相同
+	 * 
+	 * @param shortPathCount
+	 *            需要的分词结果个数，句子较短时实际的个数可能更少
+	 * @return 每种分词结果都包括"始##始"和"末##末"
+	 */
+	public List<List<SegToken>> process(String sentence, int shortPathCount) {
+		DictionarySnapshot snapshot = DictionarySnapshot.getCurrent();
+		SegGraph segGraph = createSegGraph(sentence, snapshot);
+		BiSegGraph biSegGraph = new BiSegGraph();
+		biSegGraph.build(segGraph, snapshot.getBigramDictionary());
+		return biSegGraph.getShortPaths(shortPathCount);
+	}
+
+	/**
+	 * 使用context中的工作空间对buffer中从offset开始、长度为length的句子分词，不为每个句子分配新的词格和数组。
+	 * 分词结果是context.getBiSegGraph()中的最短路径，Token的位置相对于offset。
+	 * 去掉"始##始"和"末##末"的路径同时复制到context中，可以用context.getBestPathIndex(i)取得
+	 * 
+	 * @return 最短路径上的Token个数，包括"始##始"和"末##末"
+	 * @see BiSegGraph#getPathIndex(int)
+	 */
+	public int process(char[] buffer, int offset, int length,
+			SegmentationContext context) {
+		// 整个句子只取一次快照，词典被重新加载时也不会混用新旧两个词典
+		return process(buffer, offset, length, DictionarySnapshot.getCurrent(),
+				context);
+	}
+
+	/**
+	 * 与process(char[], int, int, SegmentationContext)相同，但使用调用者取得的词典快照，
+	 * 例如需要知道分词结果来自哪个词典的时候
+	 */
+	public int process(char[] buffer, int offset, int length,
+			DictionarySnapshot snapshot, SegmentationContext context) {
+		fillSegGraph(snapshot, context, buffer, offset, length);
+		context.biSegGraph.build(context.segGraph, snapshot
+				.getBigramDictionary());
+		int pathLength = context.biSegGraph.findShortPath();
+		context.copyShortPath(pathLength);
+		return pathLength;
+	}
+
 
 }
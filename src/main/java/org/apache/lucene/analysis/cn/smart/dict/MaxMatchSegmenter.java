@@ -0,0 +1,184 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import org.apache.lucene.analysis.cn.smart.WordType;
+
+/**
+ * 双向最大匹配分词，速度优先，不使用关联词典。
+ *
+ * 词格与HHMMSegmenter相同，由核心词典和用户词典在一次trie遍历中得到，字母串、数字串和标点的处理方式也相同，
+ * 但不构建跳转图，也不计算最短路径：正向匹配在每个位置取最长的词，逆向匹配从句子末尾开始在每个位置取结束于此的最长的词。
+ * 两种结果在相同的位置重新对齐，对齐点之间不一致的部分分别比较：词少的优先，其次单字词少的优先，
+ * 再次词频的对数和大的优先，仍然相同时取逆向的结果(汉语中逆向匹配的错误通常更少)。
+ *
+ * 结果写入SegmentationContext，不为每个句子分配对象。
+ *
+ * @see HHMMSegmenter
+ */
+public class MaxMatchSegmenter {
+
+	private final HHMMSegmenter latticeBuilder = new HHMMSegmenter();
+
+	/**
+	 * 对buffer中从offset开始、长度为length的句子分词，结果是context.getSegGraph()中的Token，
+	 * 用context.getBestPathIndex(i)取得，不包括"始##始"和"末##末"
+	 *
+	 * @return 分词结果中Token的个数
+	 */
+	public int process(char[] buffer, int offset, int length,
+			SegmentationContext context) {
+		return process(buffer, offset, length, DictionarySnapshot.getCurrent(),
+				context);
+	}
+
+	/**
+	 * 使用指定的词典快照分词，只用到其中的核心词典和用户词典
+	 *
+	 * @see #process(char[], int, int, SegmentationContext)
+	 */
+	public int process(char[] buffer, int offset, int length,
+			DictionarySnapshot snapshot, SegmentationContext context) {
+		latticeBuilder.fillSegGraph(snapshot, context, buffer, offset, length);
+		SegGraph segGraph = context.segGraph;
+		if (context.forwardPath.length < length) {
+			context.forwardPath = new int[length];
+			context.backwardPath = new int[length];
+		}
+		if (context.bestPath.length < length)
+			context.bestPath = new int[length];
+		if (context.longestEnding.length < length + 1)
+			context.longestEnding = new int[length + 1];
+		int forwardCount = matchForward(segGraph, length, context.forwardPath);
+		int backwardCount = matchBackward(segGraph, length,
+				context.longestEnding, context.backwardPath);
+		context.bestPathLength = merge(segGraph, context.forwardPath,
+				forwardCount, context.backwardPath, backwardCount,
+				context.bestPath);
+		return context.bestPathLength;
+	}
+
+	/** 正向最大匹配：同一位置开始的Token按长度递增加入词格，最后一个就是最长的 */
+	private static int matchForward(SegGraph segGraph, int length, int[] path) {
+		int count = 0;
+		int s = segGraph.getNextStart(0);
+		while (s >= 0 && s < length) {
+			int index = segGraph.getTokenEnd(s) - 1;
+			path[count++] = index;
+			s = segGraph.getNextStart(segGraph.getEndOffset(index));
+		}
+		return count;
+	}
+
+	/** 逆向最大匹配，结果按位置从前到后排列 */
+	private static int matchBackward(SegGraph segGraph, int length,
+			int[] longestEnding, int[] path) {
+		// Token按startOffset递增，在每个位置结束的Token中第一个遇到的就是最长的。
+		// 不能用getTokenEnd(length - 1)作为边界：最后一个位置可能没有Token开始(例如句末的数字串、空白)，这时它是0
+		for (int e = 0; e <= length; e++)
+			longestEnding[e] = -1;
+		int tokenCount = segGraph.getTokenCount();
+		// index 0是"始##始"，"末##末"的startOffset是length
+		for (int index = 1; index < tokenCount
+				&& segGraph.getStartOffset(index) < length; index++) {
+			int end = segGraph.getEndOffset(index);
+			if (longestEnding[end] == -1)
+				longestEnding[end] = index;
+		}
+		int count = 0;
+		int e = length;
+		while (e > 0) {
+			int index = longestEnding[e];
+			if (index == -1) {
+				// 空白，没有Token在这里结束
+				e--;
+				continue;
+			}
+			path[count++] = index;
+			e = segGraph.getStartOffset(index);
+		}
+		for (int i = 0, j = count - 1; i < j; i++, j--) {
+			int t = path[i];
+			path[i] = path[j];
+			path[j] = t;
+		}
+		return count;
+	}
+
+	/**
+	 * 合并正向和逆向的结果：相同的Token直接采用，不同的部分延伸到两者再次在同一位置结束为止，然后选择其中较好的一个
+	 */
+	private static int merge(SegGraph segGraph, int[] forward,
+			int forwardCount, int[] backward, int backwardCount, int[] path) {
+		int count = 0, f = 0, b = 0;
+		while (f < forwardCount && b < backwardCount) {
+			if (forward[f] == backward[b]) {
+				path[count++] = forward[f];
+				f++;
+				b++;
+				continue;
+			}
+			int forwardFrom = f, backwardFrom = b;
+			int forwardEnd = segGraph.getEndOffset(forward[f++]);
+			int backwardEnd = segGraph.getEndOffset(backward[b++]);
+			while (forwardEnd != backwardEnd) {
+				if (forwardEnd < backwardEnd)
+					forwardEnd = segGraph.getEndOffset(forward[f++]);
+				else
+					backwardEnd = segGraph.getEndOffset(backward[b++]);
+			}
+			if (compare(segGraph, forward, forwardFrom, f, backward,
+					backwardFrom, b) > 0) {
+				System.arraycopy(forward, forwardFrom, path, count, f
+						- forwardFrom);
+				count += f - forwardFrom;
+			} else {
+				System.arraycopy(backward, backwardFrom, path, count, b
+						- backwardFrom);
+				count += b - backwardFrom;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 比较两段覆盖相同位置的分词结果
+	 *
+	 * @return 正数表示第一段较好，否则第二段较好或者两者相同
+	 */
+	private static int compare(SegGraph segGraph, int[] first, int firstFrom,
+			int firstTo, int[] second, int secondFrom, int secondTo) {
+		int firstCount = firstTo - firstFrom, secondCount = secondTo
+				- secondFrom;
+		if (firstCount != secondCount)
+			return secondCount - firstCount;
+		int firstSingles = countSingles(segGraph, first, firstFrom, firstTo);
+		int secondSingles = countSingles(segGraph, second, secondFrom,
+				secondTo);
+		if (firstSingles != secondSingles)
+			return secondSingles - firstSingles;
+		return Double.compare(logFrequency(segGraph, first, firstFrom, firstTo),
+				logFrequency(segGraph, second, secondFrom, secondTo));
+	}
+
+	private static int countSingles(SegGraph segGraph, int[] path, int from,
+			int to) {
+		int singles = 0;
+		for (int i = from; i < to; i++) {
+			int index = path[i];
+			if (segGraph.getWordType(index) == WordType.CHINESE_WORD
+					&& segGraph.getEndOffset(index)
+							- segGraph.getStartOffset(index) == 1)
+				singles++;
+		}
+		return singles;
+	}
+
+	/** 各个词的词频的对数和，相当于一元语言模型的概率 */
+	private static double logFrequency(SegGraph segGraph, int[] path, int from,
+			int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++)
+			sum += Math.log(segGraph.getWeight(path[i]) + 1.0);
+		return sum;
+	}
+
+}
@@ -1,123 +1,260 @@
 package org.apache.lucene.analysis.cn.smart.dict;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
+import org.apache.lucene.analysis.cn.smart.Utility;
+import org.apache.lucene.analysis.cn.smart.WordType;
+
+/**
+ * 句子的词格(lattice)，保存句子中所有可能的Token。
+ *
+ * Token必须按照startOffset递增的顺序加入，加入的顺序就是Token的index，因此index本身就是按startOffset排序的。
+ * 每个Token的startOffset、endOffset、词频和词性分别保存在平行的int数组中，
+ * 相同startOffset的Token在数组中是连续的一段，由firstTokens和tokenEnds记录(CSR的方式)，
+ * 查询某个位置开始的Token不需要hash，也不需要装箱。
+ *
+ * startOffset的取值范围是-1("始##始")到句子长度("末##末")，对应firstTokens中的第0到第length+1个位置。
+ * 所有数组按句子长度分配，调用reset后可以用于下一个句子，长度不够时才重新分配。
+ */
 public class SegGraph {
-	
+
+	private static final WordType[] WORD_TYPES = WordType.values();
+
+	private char[] sentence;
+
+	private int length;
+
+	private int tokenCount;
+
+	private int[] startOffsets = new int[16];
+
+	private int[] endOffsets = new int[16];
+
+	private int[] weights = new int[16];
+
+	private int[] wordTypes = new int[16];
+
+	/** startOffset为s的Token的index范围是[firstTokens[s + 1], tokenEnds[s + 1]) */
+	private int[] firstTokens = new int[16];
+
+	private int[] tokenEnds = new int[16];
+
+	private int startCount;
+
+	private int maxStart = -1;
+
+	public SegGraph() {
+	}
+
+	public SegGraph(char[] sentence, int length) {
+		reset(sentence, length);
+	}
+
 	/**
-	 * 用一个ArrayList记录startOffset相同的Token，这个startOffset就是Token的key 再hash
+	 * 清空词格，准备加入新句子的Token
+	 *
+	 * @param sentence
+	 *            句子的内容，CHINESE_WORD和DELIMITER类型的Token的内容直接引用其中的字符
+	 * @param length
+	 *            句子的长度
 	 */
-	private Map<Integer, List<SegToken>> tokenListTable = new HashMap<Integer, List<SegToken>>();
-	
-	private int maxStart = -1;
-	
+	public void reset(char[] sentence, int length) {
+		this.sentence = sentence;
+		this.length = length;
+		tokenCount = 0;
+		startCount = 0;
+		maxStart = -1;
+		if (firstTokens.length < length + 2) {
+			firstTokens = new int[length + 2];
+			tokenEnds = new int[length + 2];
+		} else {
+			Arrays.fill(firstTokens, 0, length + 2, 0);
+			Arrays.fill(tokenEnds, 0, length + 2, 0);
+		}
+	}
+
 	/**
 	 * 查看startOffset为s的Token是否存在，如果没有则说明s处没有Token或者还没有添加
-	 * 
+	 *
 	 * @param s startOffset
 	 * @return
 	 */
 	public boolean isStartExist(int s) {
-		return tokenListTable.get(s) != null;
+		return s >= -1 && s <= length && tokenEnds[s + 1] > firstTokens[s + 1];
 	}
-	
+
 	/**
-	 * 取出startOffset为s的所有Tokens，如果没有则返回null
-	 * 
-	 * @param s
-	 * @return 所有相同startOffset的Token的序列
+	 * startOffset为s的第一个Token的index
 	 */
-	public List<SegToken> getStartList(int s) {
-		return tokenListTable.get(s);
+	public int getFirstToken(int s) {
+		return firstTokens[s + 1];
 	}
-	
-	public int getMaxStart() {
-		return maxStart;
+
+	/**
+	 * startOffset为s的最后一个Token的下一个index，没有Token时与getFirstToken(s)相等
+	 */
+	public int getTokenEnd(int s) {
+		return tokenEnds[s + 1];
 	}
-	
+
 	/**
-	 * 为SegGraph中的所有Tokens生成一个统一的index，index从0开始，
-	 * 按照startOffset递增的顺序排序，相同startOffset的Tokens按照放置先后顺序排序
+	 * 从offset开始(包含offset)向后找到第一个有Token的startOffset
+	 *
+	 * @return 找到的startOffset，没有时返回-2
 	 */
-	public List<SegToken> makeIndex() {
-		List<SegToken> result = new ArrayList<SegToken>();
-		int s = -1, count = 0, size = tokenListTable.size();
-		List<SegToken> tokenList;
-		short index = 0;
-		while (count < size) {
-			if (isStartExist(s)) {
-				tokenList = tokenListTable.get(s);
-				for (SegToken st : tokenList) {
-					st.index = index;
-					result.add(st);
-					index++;
-				}
-				count ++;
-			}
-			s ++;
+	public int getNextStart(int offset) {
+		for (int s = offset; s <= maxStart; s++) {
+			if (tokenEnds[s + 1] > firstTokens[s + 1])
+				return s;
 		}
-		return result;
+		return -2;
+	}
+
+	public int getMaxStart() {
+		return maxStart;
 	}
-	
+
 	/**
-	 * 向Map中增加一个Token，这些Token按照相同startOffset放在同一个列表中，
-	 * 
-	 * @param token
+	 * 向词格中增加一个Token，startOffset不能小于已经加入的Token的startOffset
+	 *
+	 * @return 新Token的index
 	 */
-	public void addToken(SegToken token) {
-		int s = token.startOffset;
-		if (!isStartExist(s)) {
-			ArrayList<SegToken> newList = new ArrayList<SegToken>();
-			newList.add(token);
-			tokenListTable.put(s, newList);
-		} else
-			tokenListTable.get(s).add(token);
-		if (s > maxStart)
-			maxStart = s;
+	public int addToken(int startOffset, int endOffset, WordType wordType,
+			int weight) {
+		if (startOffset < maxStart || startOffset < -1 || startOffset > length)
+			throw new IllegalArgumentException("token start " + startOffset
+					+ " out of order");
+		if (tokenCount == startOffsets.length) {
+			int newLength = tokenCount * 2;
+			startOffsets = grow(startOffsets, newLength);
+			endOffsets = grow(endOffsets, newLength);
+			weights = grow(weights, newLength);
+			wordTypes = grow(wordTypes, newLength);
+		}
+		int index = tokenCount++;
+		startOffsets[index] = startOffset;
+		endOffsets[index] = endOffset;
+		weights[index] = weight;
+		wordTypes[index] = wordType.ordinal();
+		if (tokenEnds[startOffset + 1] == firstTokens[startOffset + 1]) {
+			firstTokens[startOffset + 1] = index;
+			startCount++;
+		}
+		tokenEnds[startOffset + 1] = index + 1;
+		maxStart = startOffset;
+		return index;
 	}
-	
+
+	private static int[] grow(int[] array, int newLength) {
+		int[] result = new int[newLength];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
 	/**
 	 * 获取SegGraph中不同起始（Start）位置Token类的个数，每个开始位置可能有多个Token，因此位置数与Token数并不一致
-	 * 
+	 *
 	 * @return
 	 */
 	public int getStartCount() {
-		return tokenListTable.size();
+		return startCount;
+	}
+
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	public int getStartOffset(int index) {
+		return startOffsets[index];
+	}
+
+	public int getEndOffset(int index) {
+		return endOffsets[index];
+	}
+
+	public int getWeight(int index) {
+		return weights[index];
+	}
+
+	public WordType getWordType(int index) {
+		return WORD_TYPES[wordTypes[index]];
 	}
-	
+
 	/**
-	 * 将Map中存储的所有Token按照起始位置从小到大的方式组成一个列表
-	 * 
+	 * Token用来查询词典的字符内容所在的数组。中文词和标点直接是句子本身，字符串、数字和句子首尾则是"未##串"等代表词
+	 *
+	 * @see #getWordOffset(int)
+	 * @see #getWordLength(int)
+	 */
+	public char[] getWordBuffer(int index) {
+		switch (WORD_TYPES[wordTypes[index]]) {
+		case CHINESE_WORD:
+		case DELIMITER:
+			return sentence;
+		case NUMBER:
+		case FULLWIDTH_NUMBER:
+			return Utility.NUMBER_CHAR_ARRAY;
+		case SENTENCE_BEGIN:
+			return Utility.START_CHAR_ARRAY;
+		case SENTENCE_END:
+			return Utility.END_CHAR_ARRAY;
+		default:
+			return Utility.STRING_CHAR_ARRAY;
+		}
+	}
+
+	public int getWordOffset(int index) {
+		return getWordBuffer(index) == sentence ? startOffsets[index] : 0;
+	}
+
+	public int getWordLength(int index) {
+		char[] buffer = getWordBuffer(index);
+		return buffer == sentence ? endOffsets[index] - startOffsets[index]
+				: buffer.length;
+	}
+
+	/**
+	 * 将第index个Token转换成SegToken，Token的内容复制到新的数组中
+	 */
+	public SegToken getSegToken(int index) {
+		char[] buffer = getWordBuffer(index);
+		char[] charArray;
+		if (buffer == sentence) {
+			charArray = new char[endOffsets[index] - startOffsets[index]];
+			System.arraycopy(sentence, startOffsets[index], charArray, 0,
+					charArray.length);
+		} else
+			charArray = buffer;
+		SegToken token = new SegToken(charArray, startOffsets[index],
+				endOffsets[index], getWordType(index), weights[index]);
+		token.index = index;
+		return token;
+	}
+
+	/**
+	 * 将所有Token按照起始位置从小到大的方式组成一个列表
+	 *
 	 * @return
 	 */
 	public List<SegToken> toTokenList() {
-		List<SegToken> result = new ArrayList<SegToken>();
-		int s = -1, count = 0, size = tokenListTable.size();
-		List<SegToken> tokenList;
-		
-		while (count < size) {
-			if (isStartExist(s)) {
-				tokenList = tokenListTable.get(s);
-				for (SegToken st : tokenList)
-					result.add(st);
-				count++;
-			}
-			s++;
-		}
+		List<SegToken> result = new ArrayList<SegToken>(tokenCount);
+		for (int i = 0; i < tokenCount; i++)
+			result.add(getSegToken(i));
 		return result;
 	}
-	
+
 	public String toString() {
-		List<SegToken> tokenList = this.toTokenList();
 		StringBuffer sb = new StringBuffer();
-		for (SegToken st : tokenList) {
-			sb.append(st + "\n");
+		for (int i = 0; i < tokenCount; i++) {
+			sb.append(i).append(' ').append(getWordBuffer(i), getWordOffset(i),
+					getWordLength(i)).append(' ').append(startOffsets[i])
+					.append('-').append(endOffsets[i]).append(' ').append(
+							getWordType(i)).append(' ').append(weights[i])
+					.append("\n");
 		}
 		return sb.toString();
-		
 	}
 
 }
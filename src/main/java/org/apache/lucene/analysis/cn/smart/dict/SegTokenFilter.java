@@ -1,34 +1,43 @@
 package org.apache.lucene.analysis.cn.smart.dict;
 
 import org.apache.lucene.analysis.cn.smart.Utility;
+import org.apache.lucene.analysis.cn.smart.WordType;
 
 public class SegTokenFilter {
 	
 	public SegToken filter(SegToken token) {
-		switch (token.wordType) {
+		if (token.wordType == WordType.DELIMITER)
+			token.charArray = Utility.COMMON_DELIMITER;// 统一转成 ,
+		else
+			filter(token.charArray, 0, token.charArray.length, token.wordType);
+		return token;
+	}
+
+	/**
+	 * 在buffer中直接转换从offset开始、长度为length的Token内容：全角字符转成半角，英文字母转成小写。
+	 * 标点符号需要整个替换成Utility.COMMON_DELIMITER，不在这里处理
+	 */
+	public void filter(char[] buffer, int offset, int length, WordType wordType) {
+		switch (wordType) {
 		case FULLWIDTH_NUMBER:
 		case FULLWIDTH_STRING:
-			for (int i = 0; i < token.charArray.length; i++) {
-				if (token.charArray[i] >= 0xFF10)
-					token.charArray[i] -= 0xFEE0;
+			for (int i = offset; i < offset + length; i++) {
+				if (buffer[i] >= 0xFF10)
+					buffer[i] -= 0xFEE0;
 				
-				if (token.charArray[i] >= 0x0041 && token.charArray[i] <= 0x005A)
-					token.charArray[i] += 0x0020;
+				if (buffer[i] >= 0x0041 && buffer[i] <= 0x005A)
+					buffer[i] += 0x0020;
 			}
 			break;
 		case STRING:
-			for (int i = 0; i < token.charArray.length; i++) {
-				if (token.charArray[i] >= 0x0041 && token.charArray[i] <= 0x005A)
-					token.charArray[i] += 0x0020;
+			for (int i = offset; i < offset + length; i++) {
+				if (buffer[i] >= 0x0041 && buffer[i] <= 0x005A)
+					buffer[i] += 0x0020;
 			}
 			break;
-		case DELIMITER:
-			token.charArray = Utility.COMMON_DELIMITER;// 统一转成 ,
-			break;
 		default:
 			break;
 		}
-		return token;
 	}
 
 }
@@ -0,0 +1,150 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.smart.SentenceCache;
+
+/**
+ * 分词时使用的工作空间：句子内容、字符类型编码、词格、跳转图、分词结果以及输出的Token。
+ *
+ * 所有数组按照处理过的最长句子分配，长度不够时才重新分配，处理下一个句子时直接清空重用，因此稳定之后分词不再产生新的对象。
+ * 一个SegmentationContext只能同时被一个线程使用，通常由一个WordTokenizer持有。
+ *
+ * @see HHMMSegmenter#process(char[], int, int, SegmentationContext)
+ */
+public class SegmentationContext {
+
+	char[] sentence = new char[64];
+
+	/** 每个字符的类型编码 */
+	byte[] charTypes = new byte[64];
+
+	int[] wordEnds = new int[0];
+
+	int[] wordFreqs = new int[0];
+
+	int[] userWordEnds = new int[0];
+
+	int[] userWordFreqs = new int[0];
+
+	final SegGraph segGraph = new SegGraph();
+
+	final BiSegGraph biSegGraph = new BiSegGraph();
+
+	/** MaxMatchSegmenter的正向、逆向匹配结果，都是segGraph中Token的index */
+	int[] forwardPath = new int[16], backwardPath = new int[16];
+
+	/** 最近一个句子的分词结果，segGraph中Token的index，不包括"始##始"和"末##末" */
+	int[] bestPath = new int[16];
+
+	int bestPathLength;
+
+	/** 最近一个句子的分词结果来自SentenceCache时是缓存的结果，此时bestPath无效 */
+	private SentenceCache.Entry cachedResult;
+
+	/** longestEnding[e]是在e结束的最长的Token的index，MaxMatchSegmenter逆向匹配时使用 */
+	int[] longestEnding = new int[16];
+
+	private Token[] tokens = new Token[16];
+
+	private List<Token> tokenList = new ArrayList<Token>();
+
+	/**
+	 * 把句子复制到sentence中，并按需要扩大各个数组
+	 *
+	 * @param maxWordLength
+	 *            核心词典中最长的词的长度
+	 * @param maxUserWordLength
+	 *            用户词典中最长的词的长度
+	 * @return 句子从0开始的内容
+	 */
+	char[] prepare(char[] buffer, int offset, int length, int maxWordLength,
+			int maxUserWordLength) {
+		if (sentence.length < length)
+			sentence = new char[Math.max(length, sentence.length * 2)];
+		System.arraycopy(buffer, offset, sentence, 0, length);
+		if (wordEnds.length < maxWordLength) {
+			wordEnds = new int[maxWordLength];
+			wordFreqs = new int[maxWordLength];
+		}
+		if (userWordEnds.length < maxUserWordLength) {
+			userWordEnds = new int[maxUserWordLength];
+			userWordFreqs = new int[maxUserWordLength];
+		}
+		return sentence;
+	}
+
+	/** 最近一个句子的内容，从0开始 */
+	public char[] getSentence() {
+		return sentence;
+	}
+
+	public SegGraph getSegGraph() {
+		return segGraph;
+	}
+
+	public BiSegGraph getBiSegGraph() {
+		return biSegGraph;
+	}
+
+	/**
+	 * 最近一个句子的分词结果中第i个词在getSegGraph()中的index，"始##始"和"末##末"不计在内
+	 *
+	 * @see HHMMSegmenter#process(char[], int, int, SegmentationContext)
+	 * @see MaxMatchSegmenter#process(char[], int, int, SegmentationContext)
+	 */
+	public int getBestPathIndex(int i) {
+		return bestPath[i];
+	}
+
+	/** 最近一个句子的分词结果中词的个数 */
+	public int getBestPathLength() {
+		return bestPathLength;
+	}
+
+	/**
+	 * 把biSegGraph的最短路径复制到bestPath中，去掉首尾的"始##始"和"末##末"
+	 */
+	void copyShortPath(int pathLength) {
+		if (bestPath.length < pathLength)
+			bestPath = new int[Math.max(pathLength, bestPath.length * 2)];
+		bestPathLength = 0;
+		for (int i = 1; i < pathLength - 1; i++)
+			bestPath[bestPathLength++] = biSegGraph.getPathIndex(i);
+	}
+
+	public SentenceCache.Entry getCachedResult() {
+		return cachedResult;
+	}
+
+	/**
+	 * 句子的分词结果取自SentenceCache时由WordSegmenter设置，在图上分词时为null
+	 */
+	public void setCachedResult(SentenceCache.Entry cachedResult) {
+		this.cachedResult = cachedResult;
+	}
+
+	/**
+	 * 第i个可以重用的Token，不存在时新建一个
+	 */
+	public Token getToken(int i) {
+		if (i >= tokens.length) {
+			Token[] newTokens = new Token[Math.max(i + 1, tokens.length * 2)];
+			System.arraycopy(tokens, 0, newTokens, 0, tokens.length);
+			tokens = newTokens;
+		}
+		if (tokens[i] == null)
+			tokens[i] = new Token();
+		return tokens[i];
+	}
+
+	/**
+	 * 用来存放分词结果的列表，其中的Token在处理下一个句子时会被重用
+	 */
+	public List<Token> getTokenList() {
+		return tokenList;
+	}
+
+}
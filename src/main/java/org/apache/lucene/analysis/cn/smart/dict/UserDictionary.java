@@ -0,0 +1,305 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+/**
+ * 运行时添加的用户词典，例如产品名、人名等核心词典中没有的词。分词时与核心词典一起查询，同一个词以用户词典的词频为准。
+ *
+ * 所有的词保存在一个不可修改的Table中：词的内容连续存放在一个char数组里，另外用几个int/long数组保存每个词的位置、hash值和词频，
+ * 再用开放寻址的int数组作为hash表，不为每个词创建String或者Map.Entry。
+ * 查询时只读取一次volatile的table，不需要加锁；添加和删除在锁内生成新的Table，再整体替换。
+ * 每次修改都要复制整个Table，因此大量的词应该用addAll/removeAll成批修改。
+ *
+ * 查询时先用词首字符的位图过滤，不是任何用户词首字的位置只需要一次位运算，用户词典为空时不影响核心词典的查询速度。
+ *
+ * @see HHMMSegmenter
+ */
+public class UserDictionary extends AbstractDictionary {
+
+	private static final UserDictionary INSTANCE = new UserDictionary();
+
+	private volatile Table table = new Table(0, 0);
+
+	private final Object writeLock = new Object();
+
+	/**
+	 * 默认的用户词典，DictionarySnapshot没有指定用户词典时使用它，重新加载核心词典和关联词典不会清空其中的词
+	 */
+	public static UserDictionary getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * 添加一个词，已经存在时更新词频。添加大量的词时使用addAll
+	 */
+	public void add(String word, int frequency) {
+		addAll(new String[] { word }, new int[] { frequency });
+	}
+
+	/**
+	 * 成批添加词，已经存在的词更新词频，同一批中重复的词以最后一个为准
+	 *
+	 * @param words
+	 *            要添加的词，不能为空串
+	 * @param frequencies
+	 *            每个词的词频，长度与words相同
+	 */
+	public void addAll(String[] words, int[] frequencies) {
+		if (words.length != frequencies.length)
+			throw new IllegalArgumentException("words.length "
+					+ words.length + " != frequencies.length "
+					+ frequencies.length);
+		for (String word : words) {
+			if (word.length() == 0)
+				throw new IllegalArgumentException("empty word");
+		}
+		synchronized (writeLock) {
+			Table old = table;
+			int charCount = old.charCount;
+			for (String word : words)
+				charCount += word.length();
+			Table newTable = new Table(old.size + words.length, charCount);
+			newTable.copyFrom(old, null);
+			for (int i = 0; i < words.length; i++) {
+				char[] chars = words[i].toCharArray();
+				newTable.put(chars, 0, chars.length, hash1(chars),
+						frequencies[i]);
+			}
+			newTable.version = old.version + 1;
+			table = newTable;
+		}
+	}
+
+	/**
+	 * 删除一个词，不存在时不做任何事。删除大量的词时使用removeAll
+	 */
+	public void remove(String word) {
+		removeAll(new String[] { word });
+	}
+
+	/**
+	 * 成批删除词，不存在的词被忽略。只删除用户词典中的词，核心词典不受影响
+	 */
+	public void removeAll(String[] words) {
+		synchronized (writeLock) {
+			Table old = table;
+			boolean[] removed = new boolean[old.size];
+			int removedCount = 0, removedChars = 0;
+			for (String word : words) {
+				char[] chars = word.toCharArray();
+				int entry = old.find(chars, 0, chars.length, hash1(chars));
+				if (entry >= 0 && !removed[entry]) {
+					removed[entry] = true;
+					removedCount++;
+					removedChars += chars.length;
+				}
+			}
+			if (removedCount == 0)
+				return;
+			Table newTable = new Table(old.size - removedCount, old.charCount
+					- removedChars);
+			newTable.copyFrom(old, removed);
+			newTable.version = old.version + 1;
+			table = newTable;
+		}
+	}
+
+	/** 删除所有的词 */
+	public void clear() {
+		synchronized (writeLock) {
+			Table newTable = new Table(0, 0);
+			newTable.version = table.version + 1;
+			table = newTable;
+		}
+	}
+
+	/**
+	 * 用户词典的版本号，每次添加或者删除词后增加，用来判断缓存的分词结果是否还有效。
+	 * 应当在分词之前读取，这样分词时看到的词典不会比这个版本旧
+	 */
+	public int getVersion() {
+		return table.version;
+	}
+
+	/** 用户词典中词的个数 */
+	public int size() {
+		return table.size;
+	}
+
+	/** 最长的用户词的长度，没有词时为0 */
+	public int getMaxWordLength() {
+		return table.maxLength;
+	}
+
+	/**
+	 * 获取buffer中从offset开始、长度为length的词的词频
+	 *
+	 * @return 词频，不在用户词典中时为-1
+	 */
+	public int getFrequency(char[] buffer, int offset, int length) {
+		Table current = table;
+		int entry = current.find(buffer, offset, length, hash1(buffer, offset,
+				length));
+		return entry < 0 ? -1 : current.frequencies[entry];
+	}
+
+	public boolean contains(String word) {
+		char[] chars = word.toCharArray();
+		return getFrequency(chars, 0, chars.length) >= 0;
+	}
+
+	/**
+	 * 找出buffer中所有从start开始、在end之前结束的用户词及其词频，结果按词长递增的顺序给出，与WordDictionary.prefixSearch相同。
+	 * 结果数组的长度不需要超过getMaxWordLength()；查询时有其他线程添加了更长的词，超出数组长度的词被忽略
+	 *
+	 * @return 找到的词的个数，最多为ends.length
+	 * @see WordDictionary#prefixSearch(char[], int, int, int[], int[])
+	 */
+	public int prefixSearch(char[] buffer, int start, int end, int[] ends,
+			int[] freqs) {
+		Table current = table;
+		char first = buffer[start];
+		if ((current.firstChars[first >>> 6] & (1L << first)) == 0)
+			return 0;
+		int limit = Math.min(end, start + Math.min(current.maxLength,
+				ends.length));
+		long hash = FNV_OFFSET_BASIS;
+		int count = 0, entry, length;
+		for (int i = start; i < limit; i++) {
+			hash = updateHash1(hash, buffer[i]);
+			length = i + 1 - start;
+			if (length < 64 && (current.lengths & (1L << length)) == 0)
+				continue;
+			entry = current.find(buffer, start, length, hash);
+			if (entry >= 0) {
+				ends[count] = i + 1;
+				freqs[count] = current.frequencies[entry];
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 某一时刻用户词典的全部内容，发布之后不再修改
+	 */
+	private static final class Table {
+
+		int size;
+
+		/** 所有词的内容，第i个词是chars[wordOffsets[i], wordOffsets[i] + wordLengths[i]) */
+		final char[] chars;
+
+		int charCount;
+
+		final int[] wordOffsets;
+
+		final int[] wordLengths;
+
+		final long[] hashes;
+
+		final int[] frequencies;
+
+		/** 开放寻址的hash表，保存词的序号加1，0表示空位。装载因子不超过0.5 */
+		final int[] slots;
+
+		final int mask;
+
+		/** 每个字符是否是某个词的首字，共65536位 */
+		final long[] firstChars = new long[1024];
+
+		/** 第i位表示是否有长度为i的词，只记录长度小于64的词 */
+		long lengths;
+
+		int maxLength;
+
+		/** 见getVersion()，在替换table之前设置 */
+		int version;
+
+		/**
+		 * @param capacity
+		 *            最多可以放入的词数
+		 * @param charCapacity
+		 *            最多可以放入的字符数
+		 */
+		Table(int capacity, int charCapacity) {
+			chars = new char[charCapacity];
+			wordOffsets = new int[capacity];
+			wordLengths = new int[capacity];
+			hashes = new long[capacity];
+			frequencies = new int[capacity];
+			int slotCount = 4;
+			while (slotCount < capacity * 2)
+				slotCount <<= 1;
+			slots = new int[slotCount];
+			mask = slotCount - 1;
+		}
+
+		/** 放入old中所有没有被删除的词 */
+		void copyFrom(Table old, boolean[] removed) {
+			for (int i = 0; i < old.size; i++) {
+				if (removed == null || !removed[i])
+					append(old.chars, old.wordOffsets[i], old.wordLengths[i],
+							old.hashes[i], old.frequencies[i]);
+			}
+		}
+
+		/** 放入一个词，已经存在时只更新词频 */
+		void put(char[] buffer, int offset, int length, long hash,
+				int frequency) {
+			int entry = find(buffer, offset, length, hash);
+			if (entry >= 0)
+				frequencies[entry] = frequency;
+			else
+				append(buffer, offset, length, hash, frequency);
+		}
+
+		private void append(char[] buffer, int offset, int length, long hash,
+				int frequency) {
+			int entry = size++;
+			System.arraycopy(buffer, offset, chars, charCount, length);
+			wordOffsets[entry] = charCount;
+			wordLengths[entry] = length;
+			hashes[entry] = hash;
+			frequencies[entry] = frequency;
+			charCount += length;
+
+			int slot = BigramTable.fingerprint(hash) & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = entry + 1;
+
+			char first = buffer[offset];
+			firstChars[first >>> 6] |= 1L << first;
+			if (length < 64)
+				lengths |= 1L << length;
+			if (length > maxLength)
+				maxLength = length;
+		}
+
+		/**
+		 * @return 词的序号，不存在时为-1
+		 */
+		int find(char[] buffer, int offset, int length, long hash) {
+			int slot = BigramTable.fingerprint(hash) & mask;
+			int entry;
+			while ((entry = slots[slot]) != 0) {
+				entry--;
+				if (hashes[entry] == hash && wordLengths[entry] == length
+						&& equals(entry, buffer, offset))
+					return entry;
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private boolean equals(int entry, char[] buffer, int offset) {
+			int start = wordOffsets[entry];
+			for (int i = 0; i < wordLengths[entry]; i++) {
+				if (chars[start + i] != buffer[offset + i])
+					return false;
+			}
+			return true;
+		}
+
+	}
+
+}
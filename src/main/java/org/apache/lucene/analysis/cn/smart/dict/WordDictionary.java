@@ -1,16 +1,18 @@
 package org.apache.lucene.analysis.cn.smart.dict;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.apache.lucene.analysis.cn.smart.AnalyzerProfile;
 import org.apache.lucene.analysis.cn.smart.Utility;
@@ -21,85 +23,212 @@ public class WordDictionary extends AbstractDictionary {
 	private WordDictionary() {
 	}
 
-	private static WordDictionary singleInstance;
+	/**
+	 * 单例由SingletonHolder在第一次调用getInstance时初始化，由JVM的类初始化保证只加载一次，之后的调用不需要加锁
+	 */
+	private static class SingletonHolder {
+		static final WordDictionary INSTANCE = createInstance();
+	}
+
+	/** 从文件或者jar中加载词典的次数，用于测试getInstance是否只加载一次 */
+	static volatile int loadCount;
+
+	/** coredict.bin的文件头标识，即"CDCT" */
+	public static final int BIN_MAGIC = 0x43444354;
+
+	/** coredict.bin的格式版本，格式有任何变化都需要增加版本号 */
+	public static final int BIN_VERSION = 4;
+
+	/** 字符表的大小，覆盖全部Unicode BMP字符 */
+	public static final int CHAR_TABLE_LENGTH = 65536;
 
 	/**
-	 * 一个较大的素数，保证hash能够遍历查找所有的位置
+	 * charRowTable直接以字符为下标，给出以该字符开头的词所在的行，-1表示词典中没有以该字符开头的词。
+	 * 本程序只处理GB2312字符部分，真正有数据的只有6768个汉字加上一些符号，但是用整个BMP做下标可以省掉hash计算，
+	 * 查找首字只需要一次数组访问
 	 */
-	public static final int PRIME_INDEX_LENGTH = 12071;
+	private short[] charRowTable;
+
+	/** charFrequencyTable以字符为下标，给出单字词的词频，不存在的为0 */
+	private int[] charFrequencyTable;
+
+	/** 每一行的首字，rowChars[row]为0表示这一行没有数据 */
+	private char[] rowChars;
 
 	/**
-	 * wordIndexTable保证将Unicode中的所有汉字编码hash到PRIME_INDEX_LENGTH长度的数组中，
-	 * 当然会有冲突，但实际上本程序只处理GB2312字符部分，6768个字符加上一些ASCII字符，
-	 * 因此对这些字符是有效的，为了保证比较的准确性，保留原来的字符在charIndexTable中以确定查找的准确性
+	 * 存储所有词库的真正数据结构。所有的词依次存放在一个连续的char池wordChars中，每个词只保存去掉首字后的部分，
+	 * 首字由词所在的行(首字的GB2312编号)决定。第i个词占据wordChars中[wordOffsets[i], wordOffsets[i+1])的位置，
+	 * 词频为frequencies[i]。首字编号为row的所有词是第rowOffsets[row]到第rowOffsets[row+1]-1个词，已按字典序排好。
+	 * 
+	 * 这几个数组可以直接是coredict.bin的内存映射视图，查询时只做下标计算，不产生任何对象
 	 */
-	private short[] wordIndexTable;
+	private IntBuffer rowOffsets;
+
+	private IntBuffer wordOffsets;
+
+	private IntBuffer frequencies;
+
+	private CharBuffer wordChars;
 
-	private char[] charIndexTable;
+	/** 以完整的词为key、词的编号为value的双数组trie，用于一次遍历找出从某个位置开始的所有词 */
+	private DoubleArrayTrie trie;
+
+	/** 词典中最长的词的长度 */
+	private int maxWordLength;
 
 	/**
-	 * 存储所有词库的真正数据结构，为了避免占用空间太多，用了两个单独的多维数组来存储词组和频率。
-	 * 每个词放在一个char[]中，每个char对应一个汉字或其他字符，每个频率放在一个int中，
-	 * 这两个数组的前两个下表是一一对应的。因此可以利用wordItem_charArrayTable[i][j]来查词，
-	 * 用wordItem_frequencyTable[i][j]来查询对应的频率
+	 * 从coredict.dct或者coredict.mem构建词典时使用的临时结构，每个词放在一个char[]中，
+	 * wordItem_charArrayTable[i][j]与wordItem_frequencyTable[i][j]一一对应。构建完成后转换成上面的紧凑结构并释放
 	 */
 	private char[][][] wordItem_charArrayTable;
 
 	private int[][] wordItem_frequencyTable;
 
-	public synchronized static WordDictionary getInstance() {
-		if (singleInstance == null)
-			singleInstance = new WordDictionary();
+	public static WordDictionary getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+
+	private static WordDictionary createInstance() {
+		WordDictionary dictionary = new WordDictionary();
+		String wordDictRoot = AnalyzerProfile.ANALYSIS_DATA_DIR;
 		try {
-			// 加载词典
-			singleInstance.load();
+			// 加载词典，词典目录中已经有coredict.bin时优先使用，避免去读jar内部的序列化文件
+			if (wordDictRoot.length() != 0
+					&& new File(wordDictRoot, "coredict.bin").exists())
+				dictionary.load(wordDictRoot);
+			else
+				dictionary.load();
 		} catch (IOException e) {
-			String wordDictRoot = AnalyzerProfile.ANALYSIS_DATA_DIR;
-			singleInstance.load(wordDictRoot);
+			dictionary.load(wordDictRoot);
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
 		}
-		return singleInstance;
+		return dictionary;
+	}
+
+	/**
+	 * 从外部文件夹加载一个独立于单例的词典实例，用于重新加载词典、测试和性能比较
+	 * 
+	 * @see DictionarySnapshot#load(String)
+	 */
+	static WordDictionary loadFrom(String dctFileRoot) {
+		WordDictionary dictionary = new WordDictionary();
+		dictionary.load(dctFileRoot);
+		return dictionary;
+	}
+
+	/**
+	 * 从词典目录中的源文件构建词典，不读取也不生成coredict.bin：有coredict.dct时解析它，否则读取coredict.mem。
+	 * 由DictionaryCompiler离线调用，生成的coredict.bin随词典目录发布，运行时只需要映射
+	 * 
+	 * @throws FileNotFoundException
+	 *             两个源文件都不存在
+	 */
+	static WordDictionary compile(String dctFileRoot) throws IOException,
+			ClassNotFoundException {
+		WordDictionary dictionary = new WordDictionary();
+		File dctFile = new File(dctFileRoot, "coredict.dct");
+		File serialObj = new File(dctFileRoot, "coredict.mem");
+		if (dctFile.exists())
+			dictionary.buildFromDct(dctFile.getPath());
+		else if (serialObj.exists())
+			dictionary.loadFromObjectInputStream(new FileInputStream(serialObj));
+		else
+			throw new FileNotFoundException(dctFile.getPath());
+		return dictionary;
+	}
+
+	/**
+	 * 只从coredict.bin加载词典，文件有问题时抛出异常而不是重新构建，用于验证生成的文件
+	 */
+	static WordDictionary openBin(File binFile) throws IOException {
+		WordDictionary dictionary = new WordDictionary();
+		dictionary.loadFromBuffer(DictionaryFile.map(binFile));
+		return dictionary;
+	}
+
+	/** 词典中词的个数 */
+	int getWordCount() {
+		return frequencies.capacity();
+	}
+
+	/** 行数，每行是首字相同的所有词 */
+	int getRowCount() {
+		return rowChars.length;
+	}
+
+	/** 第row行的首字 */
+	char getRowChar(int row) {
+		return rowChars[row];
+	}
+
+	/** 第row行第一个词的编号，getRowStart(getRowCount())是词的个数 */
+	int getRowStart(int row) {
+		return rowOffsets.get(row);
+	}
+
+	/**
+	 * 把第wordId个词去掉首字后的部分复制到dest中
+	 *
+	 * @return 复制的字符个数
+	 */
+	int getWordSuffix(int wordId, char[] dest) {
+		int offset = wordOffsets.get(wordId);
+		int length = wordOffsets.get(wordId + 1) - offset;
+		for (int k = 0; k < length; k++)
+			dest[k] = wordChars.get(offset + k);
+		return length;
+	}
+
+	int getWordFrequency(int wordId) {
+		return frequencies.get(wordId);
+	}
+
+	/**
+	 * 构建同样内容的前缀压缩表示
+	 *
+	 * @see FrontCodedWordTable
+	 */
+	public FrontCodedWordTable toFrontCoded() {
+		return FrontCodedWordTable.build(this);
 	}
 
 	/**
-	 * 从外部文件夹dctFileRoot加载词典库文件，首先测试是否有coredict.mem文件， 如果有则直接作为序列化对象加载，
-	 * 如果没有则加载词典库源文件coredict.dct
+	 * 从外部文件夹dctFileRoot加载词典库文件，依次测试是否有coredict.bin和coredict.mem文件，
+	 * 如果有则直接加载，如果都没有则加载词典库源文件coredict.dct。比后面的源文件旧的coredict.bin或coredict.mem不使用，
+	 * 修改coredict.dct之后重新加载就能生效。从后两者加载时，只有打开了AnalyzerProfile.WRITE_BIN
+	 * 才会在同一目录下生成coredict.bin，否则应该用DictionaryCompiler离线生成
 	 * 
 	 * @param dctFileName
 	 *            词典库文件的路径
 	 */
 	public void load(String dctFileRoot) {
+		loadCount++;
 		String dctFilePath = dctFileRoot + "/coredict.dct";
-		File serialObj = new File(dctFileRoot + "coredict.mem");
+		File binFile = new File(dctFileRoot, "coredict.bin");
+		File serialObj = new File(dctFileRoot, "coredict.mem");
+		File dctFile = new File(dctFilePath);
 
-		if (serialObj.exists() && loadFromObj(serialObj)) {
+		if (DictionaryFile.isUpToDate(binFile, dctFile, serialObj)
+				&& loadFromBin(binFile)) {
 
+		} else if (DictionaryFile.isUpToDate(serialObj, dctFile)
+				&& loadFromObj(serialObj)) {
+			saveToBin(binFile);
 		} else {
 			try {
-				wordIndexTable = new short[PRIME_INDEX_LENGTH];
-				charIndexTable = new char[PRIME_INDEX_LENGTH];
-				for (int i = 0; i < PRIME_INDEX_LENGTH; i++) {
-					// init
-					charIndexTable[i] = 0;
-					wordIndexTable[i] = -1;
-				}
-				wordItem_charArrayTable = new char[GB2312_CHAR_NUM][][];
-				wordItem_frequencyTable = new int[GB2312_CHAR_NUM][];
-				loadMainDataFromFile(dctFilePath);
-				expandDelimiterData();
-				mergeSameWords();
-				sortEachItems();
+				buildFromDct(dctFilePath);
 			} catch (IOException e) {
 				throw new RuntimeException(e.getMessage());
 			}
 
-			saveToObj(serialObj);
+			saveToBin(binFile);
 		}
 	}
 
 	/**
-	 * 从jar内部加载词典库文件，要求保证WordDictionary类当前路径中有coredict.mem文件，以将其作为序列化对象加载
+	 * 从jar内部加载词典库文件，优先使用WordDictionary类当前路径中的coredict.bin，没有时再将coredict.mem作为序列化对象加载。
+	 * 加载coredict.mem后，如果指定了AnalyzerProfile.ANALYSIS_DATA_DIR并打开了AnalyzerProfile.WRITE_BIN，会在该目录下生成coredict.bin
 	 * 
 	 * @param dctFileName
 	 *            词典库文件的路径
@@ -107,8 +236,90 @@ public class WordDictionary extends AbstractDictionary {
 	 * @throws IOException
 	 */
 	public void load() throws ClassNotFoundException, IOException {
+		loadCount++;
+		ByteBuffer buffer = DictionaryFile.openResource(getClass(), "coredict.bin");
+		if (buffer != null) {
+			loadFromBuffer(buffer);
+			return;
+		}
 		InputStream input = this.getClass().getResourceAsStream("coredict.mem");
+		if (input == null)
+			throw new FileNotFoundException("coredict.mem");
 		loadFromObjectInputStream(input);
+		String wordDictRoot = AnalyzerProfile.ANALYSIS_DATA_DIR;
+		if (wordDictRoot.length() != 0 && new File(wordDictRoot).isDirectory())
+			saveToBin(new File(wordDictRoot, "coredict.bin"));
+	}
+
+	/**
+	 * 解析词典库源文件coredict.dct，展开标点、排序并合并相同的词，生成紧凑结构和trie
+	 */
+	private void buildFromDct(String dctFilePath) throws IOException {
+		rowChars = new char[GB2312_CHAR_NUM];
+		wordItem_charArrayTable = new char[GB2312_CHAR_NUM][][];
+		wordItem_frequencyTable = new int[GB2312_CHAR_NUM][];
+		loadMainDataFromFile(dctFilePath);
+		expandDelimiterData();
+		sortEachItems();
+		mergeSameWords();
+		flatten();
+		buildTrie();
+	}
+
+	/** 从coredict.bin映射加载 */
+	private boolean loadFromBin(File binFile) {
+		try {
+			loadFromBuffer(DictionaryFile.map(binFile));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * 在coredict.bin的内容上切出各个数组的视图，格式如下(big endian)：
+	 * 
+	 * <pre>
+	 * int     magic = BIN_MAGIC
+	 * int     version = BIN_VERSION
+	 * int     rowCount, wordCount, charCount, trieLength
+	 * int     rowOffsets[rowCount + 1]
+	 * int     wordOffsets[wordCount + 1]
+	 * int     frequencies[wordCount]
+	 * char    rowChars[rowCount]
+	 * char    wordChars[charCount]
+	 * char    charCodes[65536]       (DoubleArrayTrie)
+	 * int     base[trieLength]
+	 * int     check[trieLength]
+	 * int     crc32                  (见DictionaryFile.verifyChecksum)
+	 * </pre>
+	 */
+	private void loadFromBuffer(ByteBuffer buffer) throws IOException {
+		DictionaryFile.checkHeader(buffer, BIN_MAGIC, BIN_VERSION);
+		// 文件被截断或者损坏时，切出视图和建表过程中的越界都作为IOException抛出，由调用者退回到源文件
+		try {
+			int rowCount = buffer.getInt();
+			int wordCount = buffer.getInt();
+			int charCount = buffer.getInt();
+			int trieLength = buffer.getInt();
+			if (rowCount != GB2312_CHAR_NUM)
+				throw new IOException("dictionary layout mismatch");
+			rowOffsets = DictionaryFile.sliceInts(buffer, rowCount + 1);
+			wordOffsets = DictionaryFile.sliceInts(buffer, wordCount + 1);
+			frequencies = DictionaryFile.sliceInts(buffer, wordCount);
+			rowChars = new char[rowCount];
+			DictionaryFile.sliceChars(buffer, rowCount).get(rowChars);
+			wordChars = DictionaryFile.sliceChars(buffer, charCount);
+			trie = DoubleArrayTrie.read(buffer, trieLength);
+			DictionaryFile.checkEnd(buffer);
+			buildCharTables();
+			maxWordLength = computeMaxWordLength();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated dictionary file");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("corrupt dictionary file: " + e.getMessage());
+		}
 	}
 
 	/** 从序列化对象加载 */
@@ -122,6 +333,10 @@ public class WordDictionary extends AbstractDictionary {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} catch (ClassCastException e) {
+			e.printStackTrace();
+		} catch (IndexOutOfBoundsException e) {
+			e.printStackTrace();
 		}
 		return false;
 	}
@@ -134,27 +349,185 @@ public class WordDictionary extends AbstractDictionary {
 	 */
 	private void loadFromObjectInputStream(InputStream serialObjInputStream)
 			throws IOException, ClassNotFoundException {
-		ObjectInputStream input = new ObjectInputStream(serialObjInputStream);
-		wordIndexTable = (short[]) input.readObject();
-		charIndexTable = (char[]) input.readObject();
+		ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(
+				serialObjInputStream));
+		// 旧格式用hash表记录每一行的首字，这里只需要从中取出每一行的首字
+		short[] wordIndexTable = (short[]) input.readObject();
+		char[] charIndexTable = (char[]) input.readObject();
 		wordItem_charArrayTable = (char[][][]) input.readObject();
 		wordItem_frequencyTable = (int[][]) input.readObject();
 		input.close();
+		rowChars = new char[wordItem_charArrayTable.length];
+		for (int i = 0; i < charIndexTable.length; i++) {
+			if (charIndexTable[i] != 0)
+				rowChars[wordIndexTable[i]] = charIndexTable[i];
+		}
+		flatten();
+		buildTrie();
+	}
+
+	/**
+	 * 将构建时使用的wordItem_charArrayTable和wordItem_frequencyTable转换成紧凑的连续存储结构
+	 */
+	private void flatten() {
+		int rowCount = wordItem_charArrayTable.length;
+		int wordCount = 0, charCount = 0;
+		for (int i = 0; i < rowCount; i++) {
+			if (wordItem_charArrayTable[i] == null)
+				continue;
+			wordCount += wordItem_charArrayTable[i].length;
+			for (char[] word : wordItem_charArrayTable[i]) {
+				if (word != null)
+					charCount += word.length;
+			}
+		}
+
+		int[] rows = new int[rowCount + 1];
+		int[] offsets = new int[wordCount + 1];
+		int[] freqs = new int[wordCount];
+		char[] chars = new char[charCount];
+		int w = 0, c = 0;
+		for (int i = 0; i < rowCount; i++) {
+			rows[i] = w;
+			if (wordItem_charArrayTable[i] == null)
+				continue;
+			for (int j = 0; j < wordItem_charArrayTable[i].length; j++) {
+				char[] word = wordItem_charArrayTable[i][j];
+				offsets[w] = c;
+				freqs[w] = wordItem_frequencyTable[i][j];
+				if (word != null) {
+					System.arraycopy(word, 0, chars, c, word.length);
+					c += word.length;
+				}
+				w++;
+			}
+		}
+		rows[rowCount] = w;
+		offsets[wordCount] = c;
+
+		rowOffsets = IntBuffer.wrap(rows);
+		wordOffsets = IntBuffer.wrap(offsets);
+		frequencies = IntBuffer.wrap(freqs);
+		wordChars = CharBuffer.wrap(chars);
+		wordItem_charArrayTable = null;
+		wordItem_frequencyTable = null;
+		buildCharTables();
+	}
+
+	/**
+	 * 根据每一行的首字生成charRowTable和charFrequencyTable。单字词去掉首字后为空，排序后总是一行中的第一个词
+	 */
+	private void buildCharTables() {
+		charRowTable = new short[CHAR_TABLE_LENGTH];
+		charFrequencyTable = new int[CHAR_TABLE_LENGTH];
+		Arrays.fill(charRowTable, (short) -1);
+		for (int row = 0; row < rowChars.length; row++) {
+			char c = rowChars[row];
+			int first = rowOffsets.get(row);
+			if (c == 0 || first == rowOffsets.get(row + 1))
+				continue;
+			charRowTable[c] = (short) row;
+			if (wordOffsets.get(first) == wordOffsets.get(first + 1))
+				charFrequencyTable[c] = frequencies.get(first);
+		}
+	}
+
+	/**
+	 * 用合并、排序后的全部词构建双数组trie，词的编号就是它在frequencies中的位置
+	 */
+	private void buildTrie() {
+		int wordCount = frequencies.capacity();
+		char[][] keys = new char[wordCount][];
+		int[] values = new int[wordCount];
+		for (int row = 0; row < rowChars.length; row++) {
+			for (int w = rowOffsets.get(row); w < rowOffsets.get(row + 1); w++) {
+				int offset = wordOffsets.get(w);
+				char[] key = new char[wordOffsets.get(w + 1) - offset + 1];
+				key[0] = rowChars[row];
+				for (int k = 1; k < key.length; k++)
+					key[k] = wordChars.get(offset + k - 1);
+				keys[w] = key;
+				values[w] = w;
+			}
+		}
+		trie = DoubleArrayTrie.build(keys, values);
+		maxWordLength = computeMaxWordLength();
 	}
 
-	/** 存储文件到序列化对象 */
-	private void saveToObj(File serialObj) {
+	private int computeMaxWordLength() {
+		int max = 0;
+		for (int w = 0; w < frequencies.capacity(); w++) {
+			int length = wordOffsets.get(w + 1) - wordOffsets.get(w) + 1;
+			if (length > max)
+				max = length;
+		}
+		return max;
+	}
+
+	/**
+	 * 打开了AnalyzerProfile.WRITE_BIN时将词典存储为coredict.bin，失败时只打印错误，下次启动会重新构建
+	 */
+	private void saveToBin(File binFile) {
+		if (!AnalyzerProfile.WRITE_BIN)
+			return;
 		try {
-			ObjectOutputStream output = new ObjectOutputStream(
-					new FileOutputStream(serialObj));
-			output.writeObject(wordIndexTable);
-			output.writeObject(charIndexTable);
-			output.writeObject(wordItem_charArrayTable);
-			output.writeObject(wordItem_frequencyTable);
+			writeBin(binFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** 将词典写成coredict.bin，格式见loadFromBuffer */
+	void writeBin(File binFile) throws IOException {
+		DictionaryFile.Output output = new DictionaryFile.Output(binFile);
+		try {
+			int rowCount = rowOffsets.capacity() - 1;
+			int wordCount = frequencies.capacity();
+			int charCount = wordChars.capacity();
+			output.writeInt(BIN_MAGIC);
+			output.writeInt(BIN_VERSION);
+			output.writeInt(rowCount);
+			output.writeInt(wordCount);
+			output.writeInt(charCount);
+			output.writeInt(trie.size());
+			for (int i = 0; i <= rowCount; i++)
+				output.writeInt(rowOffsets.get(i));
+			for (int i = 0; i <= wordCount; i++)
+				output.writeInt(wordOffsets.get(i));
+			for (int i = 0; i < wordCount; i++)
+				output.writeInt(frequencies.get(i));
+			for (int i = 0; i < rowCount; i++)
+				output.writeChar(rowChars[i]);
+			for (int i = 0; i < charCount; i++)
+				output.writeChar(wordChars.get(i));
+			trie.write(output);
+			output.finish();
+		} finally {
 			output.close();
-		} catch (Exception e) {
+		}
+	}
 
+	/**
+	 * 逐个比较本词典与other中每个词的词频，用来验证生成的coredict.bin与构建结果一致
+	 * 
+	 * @return 词频不同或者只在一方存在的词的个数
+	 */
+	int countDifferences(WordDictionary other) {
+		int differences = Math.abs(other.frequencies.capacity()
+				- frequencies.capacity());
+		char[] word = new char[maxWordLength];
+		for (int row = 0; row < rowChars.length; row++) {
+			word[0] = rowChars[row];
+			for (int w = rowOffsets.get(row); w < rowOffsets.get(row + 1); w++) {
+				int offset = wordOffsets.get(w);
+				int length = wordOffsets.get(w + 1) - offset + 1;
+				for (int k = 1; k < length; k++)
+					word[k] = wordChars.get(offset + k - 1);
+				if (other.getFrequency(word, 0, length) != frequencies.get(w))
+					differences++;
+			}
 		}
+		return differences;
 	}
 
 	/**
@@ -170,134 +543,91 @@ public class WordDictionary extends AbstractDictionary {
 			throws FileNotFoundException, IOException {
 		int i, cnt, length, total = 0;
 		// 文件中只统计了6763个汉字加5个空汉字符3756~3760，其中第3756个用来存储符号信息。
-		int[] buffer = new int[3];
-		byte[] intBuffer = new byte[4];
-		String tmpword;
-		RandomAccessFile dctFile = new RandomAccessFile(dctFilePath, "r");
-
-		// 字典中第一个汉字出现的位置是0 最后一个是6767
-		for (i = GB2312_FIRST_CHAR; i < GB2312_FIRST_CHAR + CHAR_NUM_IN_FILE; i++) {
-			// if (i == 5231)
-			// System.out.println(i);
-
-			dctFile.read(intBuffer); // 原词库文件在c下开发，所以写入的文件为little
-			// endian编码 而java为big endian ，需要转换
-			cnt = ByteBuffer.wrap(intBuffer).order(ByteOrder.LITTLE_ENDIAN).getInt();
-			if (cnt <= 0) {
-				wordItem_charArrayTable[i] = null;
-				wordItem_frequencyTable[i] = null;
-				continue;
-			}
-			wordItem_charArrayTable[i] = new char[cnt][];
-			wordItem_frequencyTable[i] = new int[cnt];
-			total += cnt;
-			int j = 0;
-			while (j < cnt) {
-				dctFile.read(intBuffer);
-				buffer[0] = ByteBuffer.wrap(intBuffer).order(ByteOrder.LITTLE_ENDIAN).getInt();// frequency
-				dctFile.read(intBuffer);
-				buffer[1] = ByteBuffer.wrap(intBuffer).order(ByteOrder.LITTLE_ENDIAN).getInt();// length;
-				dctFile.read(intBuffer);
-				buffer[2] = ByteBuffer.wrap(intBuffer).order(ByteOrder.LITTLE_ENDIAN).getInt();// handle;
-				
-				wordItem_frequencyTable[i][j] = buffer[0];
-				
-				length = buffer[1];
-				if (length > 0) {
-					// 按这个长度读入字节到lchbuffer
-					byte[] lchBuffer = new byte[length];
-					dctFile.read(lchBuffer);
-					tmpword = new String(lchBuffer, "GB2312");
-					wordItem_charArrayTable[i][j] = tmpword.toCharArray();
-				} else {
-					wordItem_charArrayTable[i][j] = null;
+		char[] charBuffer = new char[16];
+		// 原词库文件在c下开发，所以写入的文件为little endian编码，映射后按little endian顺序直接读取
+		ByteBuffer dctFile = DictionaryFile.mapSource(new File(dctFilePath));
+
+		try {
+			// 字典中第一个汉字出现的位置是0 最后一个是6767
+			for (i = GB2312_FIRST_CHAR; i < GB2312_FIRST_CHAR + CHAR_NUM_IN_FILE; i++) {
+				cnt = dctFile.getInt();
+				if (cnt <= 0) {
+					wordItem_charArrayTable[i] = null;
+					wordItem_frequencyTable[i] = null;
+					continue;
+				}
+				wordItem_charArrayTable[i] = new char[cnt][];
+				wordItem_frequencyTable[i] = new int[cnt];
+				total += cnt;
+				for (int j = 0; j < cnt; j++) {
+					wordItem_frequencyTable[i][j] = dctFile.getInt(); // frequency
+					length = dctFile.getInt();
+					dctFile.getInt(); // handle
+					if (length > 0) {
+						// 每个汉字至少占一个字节，解码结果不会超过length个字符
+						if (charBuffer.length < length)
+							charBuffer = new char[length];
+						int charCount = decodeGB2312(dctFile, length, charBuffer);
+						wordItem_charArrayTable[i][j] = new char[charCount];
+						System.arraycopy(charBuffer, 0,
+								wordItem_charArrayTable[i][j], 0, charCount);
+					} else {
+						wordItem_charArrayTable[i][j] = null;
+					}
 				}
-				// System.out.println(indexTable[i].wordItems[j]);
-				j ++;
+				rowChars[i] = getCharByGB2312Id(i);
 			}
-			
-			String str = getCCByGB2312Id(i);
-			setTableIndex(str.charAt(0), i);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated dictionary file: " + dctFilePath);
 		}
-		dctFile.close();
 		return total;
 	}
 	
 	/**
-	 *  计算字符c在hash表中的应该在的位置 然后将地址列表中该位置的值优化 
-	 *  @param c
-	 *  @param i
-	 */
-	private boolean setTableIndex(char c, int i) {
-		int index = getAvaliableTableIndex(c);
-		if (index != -1) {
-			charIndexTable[index] = c;
-			wordIndexTable[index] = (short) i;
-			return true;
-		} else {
-			return false;
-		}
-	}
-
-	private int getAvaliableTableIndex(char c) {
-		int hash1 = (int) (hash1(c) % PRIME_INDEX_LENGTH);
-		int hash2 = hash2(c) % PRIME_INDEX_LENGTH;
-		if (hash1 < 0)
-			hash1 = PRIME_INDEX_LENGTH + hash1;
-		if (hash2 < 0)
-			hash2 = PRIME_INDEX_LENGTH + hash2;
-		int index = hash1;
-		int i = 1;
-		while (charIndexTable[index] != 0 && charIndexTable[index] != c
-				&& i < PRIME_INDEX_LENGTH) {
-			index = (hash1 + i * hash2) % PRIME_INDEX_LENGTH;
-			i++;
-		}
-
-		if (i < PRIME_INDEX_LENGTH
-				&& (charIndexTable[index] == 0 || charIndexTable[index] == c)) {
-			return (short) index;
-		} else
-			return -1;
-	}
-
-	/**
-	 * 原词库将所有标点符号的信息合并到一个列表里(从1开始的3755处)。这里将其展开，分别放到各个符号对应的列表中
+	 * 原词库将所有标点符号的信息合并到一个列表里(从1开始的3755处)。这里将其展开，分别放到各个符号对应的列表中。
+	 * 同一个符号的词不一定相邻，符号所在的行也可能已经有词，都追加到该行的末尾，之后由sortEachItems和mergeSameWords整理；
+	 * 首字不在GB2312中的词被丢弃
 	 */
 	private void expandDelimiterData() {
-		int i;
-		int cnt;
 		// 标点符号在从1开始的3755处, 将原始的标点符号对应的字典分配到对应的标点符号当中
 		int delimiterIndex = 3755 + GB2312_FIRST_CHAR;
-		i = 0;
-		while (i < wordItem_charArrayTable[delimiterIndex].length) {
-			char c = wordItem_charArrayTable[delimiterIndex][i][0];
+		char[][] words = wordItem_charArrayTable[delimiterIndex];
+		int[] frequencies = wordItem_frequencyTable[delimiterIndex];
+		int i = 0;
+		while (words != null && i < words.length) {
+			if (words[i] == null || words[i].length == 0) {
+				i++;
+				continue;
+			}
+			char c = words[i][0];
+			// 从i开始计数后面以c开头的词的个数
+			int k = i + 1;
+			while (k < words.length && words[k] != null && words[k].length > 0
+					&& words[k][0] == c)
+				k++;
 			int j = getGB2312Id(c); // 该标点符号所在位置的index值
-			if (wordItem_charArrayTable[j] == null) {
-				int k = i;
-				// 从i开始计数后面以j开头的符号的worditem的个数
-				while (k < wordItem_charArrayTable[delimiterIndex].length
-						&& wordItem_charArrayTable[delimiterIndex][k][0] == c) {
-					k ++;
-				}
-				// 此时的k-i为j的标点符号对应的wordItem的个数
-				cnt = k -1;
-				if (cnt != 0) {
-					wordItem_charArrayTable[j] = new char[cnt][];
-					wordItem_frequencyTable[j] = new int[cnt];
-				}
-				
-				// 为每一个wordItem赋值
-				for (k = 0; k < cnt; k++, i++) {
-					wordItem_frequencyTable[j][k] = wordItem_frequencyTable[delimiterIndex][i];
-					wordItem_charArrayTable[j][k] = new char[wordItem_charArrayTable[delimiterIndex][i].length - 1];
-					System.arraycopy(
-							wordItem_charArrayTable[delimiterIndex][i], 1,
-							wordItem_charArrayTable[j][k], 0,
-							wordItem_charArrayTable[j][k].length);
-				}
-				setTableIndex(c, j);
+			if (j < 0 || j >= GB2312_CHAR_NUM || j == delimiterIndex) {
+				i = k;
+				continue;
+			}
+			int old = wordItem_charArrayTable[j] == null ? 0
+					: wordItem_charArrayTable[j].length;
+			char[][] rowWords = new char[old + k - i][];
+			int[] rowFrequencies = new int[old + k - i];
+			if (old > 0) {
+				System.arraycopy(wordItem_charArrayTable[j], 0, rowWords, 0, old);
+				System.arraycopy(wordItem_frequencyTable[j], 0, rowFrequencies,
+						0, old);
+			}
+			// 为每一个wordItem赋值，去掉首字
+			for (int n = old; i < k; i++, n++) {
+				rowFrequencies[n] = frequencies[i];
+				rowWords[n] = new char[words[i].length - 1];
+				System.arraycopy(words[i], 1, rowWords[n], 0, rowWords[n].length);
 			}
+			wordItem_charArrayTable[j] = rowWords;
+			wordItem_frequencyTable[j] = rowFrequencies;
+			rowChars[j] = c;
 		}
 		// 将原来符号对应的数组删除
 		wordItem_charArrayTable[delimiterIndex] = null;
@@ -339,90 +669,76 @@ public class WordDictionary extends AbstractDictionary {
 		}
 	}
 	
+	/**
+	 * 将每一行的词按Utility.compareArray的顺序排序，词频随词一起移动。相同的词排序后相邻，由mergeSameWords合并
+	 */
 	private void sortEachItems() {
-		char[] tempArray;
-		int tempFreq;
 		for (int i = 0; i < wordItem_charArrayTable.length; i++) {
-			if (wordItem_charArrayTable[i] != null && wordItem_charArrayTable[i].length > 1) {
-				for (int j = 0; j < wordItem_charArrayTable[i].length - 1; j++) {
-					for (int k = j + 1; k < wordItem_charArrayTable[i].length; k ++) {
-						//TODO 相邻的比较 类似于冒泡 这里不好用快排 或者按照这个写一个快排也行。
-						if (Utility.compareArray(wordItem_charArrayTable[i][j], 0, wordItem_charArrayTable[i][k], 0) > 0) {
-							tempArray = wordItem_charArrayTable[i][j];
-							tempFreq = wordItem_frequencyTable[i][j];
-							wordItem_charArrayTable[i][j] = wordItem_charArrayTable[i][k];
-							wordItem_frequencyTable[i][j] = wordItem_frequencyTable[i][k];
-							wordItem_charArrayTable[i][k] = tempArray;
-							wordItem_frequencyTable[i][k] = tempFreq;
-						}
-					}
+			final char[][] words = wordItem_charArrayTable[i];
+			if (words == null || words.length < 2)
+				continue;
+			int[] freqs = wordItem_frequencyTable[i];
+			Integer[] order = new Integer[words.length];
+			for (int j = 0; j < order.length; j++)
+				order[j] = j;
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer left, Integer right) {
+					return Utility.compareArray(words[left], 0, words[right], 0);
 				}
-			} else {
-				// do nothing..
+			});
+			char[][] sortedWords = new char[words.length][];
+			int[] sortedFreqs = new int[words.length];
+			for (int j = 0; j < order.length; j++) {
+				sortedWords[j] = words[order[j]];
+				sortedFreqs[j] = freqs[order[j]];
 			}
+			wordItem_charArrayTable[i] = sortedWords;
+			wordItem_frequencyTable[i] = sortedFreqs;
 		}
 	}
 	
-	private short getWordItemTableIndex(char c) {
-		int hash1 = (int) (hash1(c) % PRIME_INDEX_LENGTH);
-		int hash2 = hash2(c) % PRIME_INDEX_LENGTH;
-		if (hash1 < 0)
-			hash1 += PRIME_INDEX_LENGTH;
-		if (hash2 < 0)
-			hash2 += PRIME_INDEX_LENGTH;
-		int index = hash1;
-		int i = 1;
-		while (charIndexTable[index] != 0 && charIndexTable[index] != c && i < PRIME_INDEX_LENGTH) {
-			index = (hash1 + i * hash2) % PRIME_INDEX_LENGTH;
-			i++;
-		}
-		
-		if (i < PRIME_INDEX_LENGTH && charIndexTable[index] == c)
-			return (short) index;
-		else
-			return -1;
-	}
-	
 	/**
-	 * 在字典库中查找单词对应的char数组为charArray的字符串。返回该单词在单词序列中的位置
+	 * 在字典库中查找buffer中从offset开始、长度为length的字符串。返回该单词在单词序列中的位置
 	 * 
-	 * @param charArray
-	 *            查找单词对应的char数组
+	 * @param buffer
+	 *            查找单词所在的char数组
+	 * @param offset
+	 *            单词的起始位置
+	 * @param length
+	 *            单词的长度
 	 * @return 单词在单词数组中的位置，如果没找到则返回-1
 	 */
-	private int findInTable(char[] charArray) {
-		if (charArray == null || charArray.length == 0)
+	private int findInTable(char[] buffer, int offset, int length) {
+		if (buffer == null || length == 0)
 			return -1;
-		short index = getWordItemTableIndex(charArray[0]);
-		if (index == -1)
+		int row = charRowTable[buffer[offset]];
+		if (row == -1)
 			return -1;
-		return findInTable(index, charArray);
+		return findInTable(row, buffer, offset, length);
 	}
 	
 	/**
-	 * 在字典库中查找单词对应的char数组为charArray的字符串。返回该单词在单词序列中的位置
+	 * 在字典库中查找buffer中从offset开始、长度为length的字符串。返回该单词在单词序列中的位置
 	 * 
-	 * @param knownHashIndex
-	 *            已知单词第一个字符charArray[0]在hash表中的位置，如果未计算，可以用函数int
-	 *            findInTable(char[] charArray) 代替
-	 * @param charArray
-	 *            查找单词对应的char数组
+	 * @param row
+	 *            已知单词第一个字符buffer[offset]所在的行，如果未计算，可以用函数int
+	 *            findInTable(char[] buffer, int offset, int length) 代替
 	 * @return 单词在单词数组中的位置，如果没找到则返回-1
 	 */
-	private int findInTable(short knownHashIndex, char[] charArray) {
-		if (charArray == null || charArray.length == 0)
+	private int findInTable(int row, char[] buffer, int offset, int length) {
+		if (buffer == null || length == 0)
 			return -1;
 		
-		char[][] items = wordItem_charArrayTable[wordIndexTable[knownHashIndex]];
-		int start = 0, end = items.length - 1;
+		int rowStart = rowOffsets.get(row);
+		int start = rowStart, end = rowOffsets.get(row + 1) - 1;
 		int mid = (start + end) / 2, cmpResult;
 		
 		// Binary search for the index of idArray.
 		while (start <= end) {
-			cmpResult = Utility.compareArray(items[mid], 0, charArray, 1);
+			cmpResult = compareWord(mid, buffer, offset + 1, offset + length);
 			
 			if (cmpResult == 0)
-				return mid; // find
+				return mid - rowStart; // find
 			else if (cmpResult < 0)
 				start = mid + 1;
 			else
@@ -433,6 +749,25 @@ public class WordDictionary extends AbstractDictionary {
 		return -1;
 	}
 	
+	/**
+	 * 比较第wordId个词(去掉首字后的部分)与buffer中[start, end)的部分，比较规则同Utility.compareArray
+	 * 
+	 * @return 0表示相等，1表示词典中的词较大，-1表示词典中的词较小
+	 */
+	private int compareWord(int wordId, char[] buffer, int start, int end) {
+		int li = wordOffsets.get(wordId), lend = wordOffsets.get(wordId + 1);
+		int ri = start;
+		while (li < lend && ri < end && wordChars.get(li) == buffer[ri]) {
+			li++;
+			ri++;
+		}
+		if (li == lend)
+			return ri == end ? 0 : -1;
+		if (ri == end)
+			return 1;
+		return wordChars.get(li) > buffer[ri] ? 1 : -1;
+	}
+	
 	/**
 	 * charArray这个单词对应的词组在不在WordDictionary中出现
 	 * 
@@ -440,7 +775,16 @@ public class WordDictionary extends AbstractDictionary {
 	 * @return true表示存在，false表示不存在
 	 */
 	public boolean isExist(char[] charArray) {
-		return findInTable(charArray) != -1;
+		return findInTable(charArray, 0, charArray.length) != -1;
+	}
+	
+	/**
+	 * buffer中从offset开始、长度为length的单词在不在WordDictionary中出现，不需要为单词另外分配数组
+	 * 
+	 * @return true表示存在，false表示不存在
+	 */
+	public boolean isExist(char[] buffer, int offset, int length) {
+		return findInTable(buffer, offset, length) != -1;
 	}
 	
 	/**
@@ -464,13 +808,74 @@ public class WordDictionary extends AbstractDictionary {
 	 * @return 满足前缀条件的第一个单词的位置
 	 */
 	public int getPrefixMatch(char[] charArray, int knowStart) {
-		short index = getWordItemTableIndex(charArray[0]);
-		if (index == -1)
+		int row = charRowTable[charArray[0]];
+		if (row == -1)
 			return -1;
-		// TODO 
+		int rowStart = rowOffsets.get(row), rowEnd = rowOffsets.get(row + 1);
+		int start = rowStart + knowStart, end = rowEnd;
+
+		// 以charArray为前缀的词在行内是连续的一段，二分查找第一个不比前缀小的词
+		while (start < end) {
+			int mid = (start + end) >>> 1;
+			if (comparePrefix(mid, charArray, 1) < 0)
+				start = mid + 1;
+			else
+				end = mid;
+		}
+		if (start < rowEnd && comparePrefix(start, charArray, 1) == 0)
+			return start - rowStart;
 		return -1;
 	}
-	
+
+	/**
+	 * 比较第wordId个词(去掉首字后的部分)是否以charArray从start开始的部分为前缀
+	 * 
+	 * @return 0表示是前缀，否则同compareWord
+	 */
+	private int comparePrefix(int wordId, char[] charArray, int start) {
+		int li = wordOffsets.get(wordId), lend = wordOffsets.get(wordId + 1);
+		int ri = start;
+		while (li < lend && ri < charArray.length
+				&& wordChars.get(li) == charArray[ri]) {
+			li++;
+			ri++;
+		}
+		if (ri == charArray.length)
+			return 0;
+		if (li == lend)
+			return -1;
+		return wordChars.get(li) > charArray[ri] ? 1 : -1;
+	}
+
+	/**
+	 * 一次遍历找出buffer中所有从start开始、在end之前结束的词典词及其词频，结果按词长递增的顺序给出。
+	 * 结果数组的长度不需要超过getMaxWordLength()
+	 * 
+	 * @param buffer
+	 *            输入的字符序列
+	 * @param start
+	 *            起始位置
+	 * @param end
+	 *            结束位置(不包含)
+	 * @param ends
+	 *            输出：每个词的结束位置(不包含)
+	 * @param freqs
+	 *            输出：每个词的词频
+	 * @return 找到的词的个数，最多为ends.length
+	 */
+	public int prefixSearch(char[] buffer, int start, int end, int[] ends,
+			int[] freqs) {
+		int count = trie.commonPrefixSearch(buffer, start, end, ends, freqs);
+		for (int i = 0; i < count; i++)
+			freqs[i] = frequencies.get(freqs[i]);
+		return count;
+	}
+
+	/** 词典中最长的词的长度，可以用来确定prefixSearch结果数组的大小 */
+	public int getMaxWordLength() {
+		return maxWordLength;
+	}
+
 	/**
 	 * 获取idArray对应的词的词频，若pos为-1则获取所有词性的词频
 	 * 
@@ -481,15 +886,43 @@ public class WordDictionary extends AbstractDictionary {
 	 * @return idArray对应的词频
 	 */
 	public int getFrequency(char[] charArray) {
-		short hashIndex = getWordItemTableIndex(charArray[0]);
-		if (hashIndex == -1)
+		return getFrequency(charArray, 0, charArray.length);
+	}
+	
+	/**
+	 * 获取buffer中从offset开始、长度为length的单词的词频，不需要为单词另外分配数组
+	 * 
+	 * @param buffer
+	 *            单词所在的char数组，例如整个句子
+	 * @param offset
+	 *            单词的起始位置
+	 * @param length
+	 *            单词的长度
+	 * @return 单词的词频，不存在时为0
+	 */
+	public int getFrequency(char[] buffer, int offset, int length) {
+		if (length == 0)
 			return 0;
-		int itemIndex = findInTable(hashIndex, charArray);
-		if (itemIndex != -1) // 再hash
-			return wordItem_frequencyTable[wordIndexTable[hashIndex]][itemIndex];
+		if (length == 1)
+			return charFrequencyTable[buffer[offset]];
+		int row = charRowTable[buffer[offset]];
+		if (row == -1)
+			return 0;
+		int itemIndex = findInTable(row, buffer, offset, length);
+		if (itemIndex != -1)
+			return frequencies.get(rowOffsets.get(row) + itemIndex);
 		return 0;
 	}
 	
+	/**
+	 * 获取单字词ch的词频，只需要一次数组访问
+	 * 
+	 * @return 单字词的词频，不存在时为0
+	 */
+	public int getFrequency(char ch) {
+		return charFrequencyTable[ch];
+	}
+	
 	/**
 	 * 判断charArray对应的字符串是否跟词典中charArray[0]对应的wordIndex的charArray相等,
 	 * 也就是说charArray的位置查找结果是不是就是wordIndex
@@ -501,10 +934,9 @@ public class WordDictionary extends AbstractDictionary {
 	 * @return 是否相等
 	 */
 	public boolean isEqual(char[] charArray, int itemIndex) {
-		short hashIndex = getWordItemTableIndex(charArray[0]);
-		return Utility.compareArray(charArray, 1,
-				wordItem_charArrayTable[wordIndexTable[hashIndex]][itemIndex],
-				0) == 0;
+		int row = charRowTable[charArray[0]];
+		return compareWord(rowOffsets.get(row) + itemIndex, charArray, 1,
+				charArray.length) == 0;
 	}
 
 	public static void main(String[] args) throws FileNotFoundException,
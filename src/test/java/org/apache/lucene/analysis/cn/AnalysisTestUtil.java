@@ -0,0 +1,49 @@
+package org.apache.lucene.analysis.cn;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * 测试共用的工具方法：把分词结果写成"词/起始-结束 "的形式，便于在断言中比较
+ */
+public final class AnalysisTestUtil {
+
+	private AnalysisTestUtil() {
+	}
+
+	/**
+	 * 读完并关闭stream
+	 */
+	public static String describe(TokenStream stream) throws IOException {
+		StringBuilder buffer = new StringBuilder();
+		Token reusableToken = new Token();
+		for (Token token = stream.next(reusableToken); token != null; token = stream
+				.next(reusableToken))
+			append(buffer, token);
+		stream.close();
+		return buffer.toString();
+	}
+
+	public static String describe(Analyzer analyzer, String text)
+			throws IOException {
+		return describe(analyzer.tokenStream("", new StringReader(text)));
+	}
+
+	public static String describe(List<Token> tokens) {
+		StringBuilder buffer = new StringBuilder();
+		for (Token token : tokens)
+			append(buffer, token);
+		return buffer.toString();
+	}
+
+	private static void append(StringBuilder buffer, Token token) {
+		buffer.append(token.term()).append('/').append(token.startOffset())
+				.append('-').append(token.endOffset()).append(' ');
+	}
+
+}
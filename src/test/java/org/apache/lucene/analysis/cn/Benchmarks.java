@@ -0,0 +1,50 @@
+package org.apache.lucene.analysis.cn;
+
+/**
+ * 基准测试共用的计时和结果汇集。
+ *
+ * 被测代码的结果都交给consume，写入一个volatile字段，JIT就不能把结果没有用到的计算当作死代码消除。
+ * 各个基准测试分布在cn、cn.smart和cn.smart.dict三个包中，所以这个类是public的。
+ */
+public final class Benchmarks {
+
+	private static volatile long sink;
+
+	private Benchmarks() {
+	}
+
+	/** 被计时的一段代码 */
+	public interface Task {
+
+		/**
+		 * @return 计算结果的汇总，例如词的个数，交给consume
+		 */
+		long run() throws Exception;
+
+	}
+
+	/**
+	 * 依次执行tasks，共重复repeats遍，前repeats-1遍用于预热。同一遍中的tasks交替执行，JIT对它们的优化程度相近
+	 *
+	 * @return 最后一遍中每个task所用的纳秒数
+	 */
+	public static long[] time(int repeats, Task... tasks) throws Exception {
+		long[] times = new long[tasks.length];
+		for (int r = 0; r < repeats; r++) {
+			for (int i = 0; i < tasks.length; i++) {
+				long before = System.nanoTime();
+				consume(tasks[i].run());
+				times[i] = System.nanoTime() - before;
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * 汇集被测代码的结果，防止计算被消除
+	 */
+	public static void consume(long value) {
+		sink += value;
+	}
+
+}
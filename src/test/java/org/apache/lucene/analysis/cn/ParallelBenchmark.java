@@ -0,0 +1,60 @@
+package org.apache.lucene.analysis.cn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Token;
+
+/**
+ * ParallelAnalyzer的扩展性：线程数从1增加到CPU的核数时每秒分析的文档数，以及相对单线程的加速比。
+ */
+public class ParallelBenchmark {
+
+	private static final String TEXT = "我从小就不由自主地认为自己长大以后一定得成为一个象我父亲一样的画家, 可能是父母潜移默化的影响。"
+			+ "其实我根本不知道作为画家意味着什么，我是否喜欢，最重要的是否适合我，我是否有这个才华。"
+			+ "美国高中都有专门的职业顾问，通过接触不同的课程，和各种心理，个性，兴趣很多方面的问答来帮助每个学生找到最感兴趣的专业。"
+			+ "这门课她花了2个多月才做完，这里只是很小的一部分。Lucene 2.4.1 版本的SmartChineseAnalyzer支持ＧＢ２３１２全角字符。";
+
+	private static final int DOCUMENTS = 4000;
+
+	public static void main(String[] args) throws Exception {
+		final List<String> texts = new ArrayList<String>();
+		for (int i = 0; i < DOCUMENTS; i++)
+			texts.add(TEXT);
+		SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer();
+		double single = 0;
+		for (int threads : threadCounts(Runtime.getRuntime()
+				.availableProcessors())) {
+			final ParallelAnalyzer parallel = new ParallelAnalyzer(analyzer,
+					threads);
+			long time = Benchmarks.time(3, new Benchmarks.Task() {
+				public long run() throws IOException {
+					long count = 0;
+					for (List<Token> tokens : parallel.analyze(texts))
+						count += tokens.size();
+					return count;
+				}
+			})[0];
+			parallel.close();
+			double rate = DOCUMENTS * 1e9 / time;
+			if (threads == 1)
+				single = rate;
+			System.out.println(threads + " threads: " + (int) rate
+					+ " documents/s, speedup " + Math.round(rate / single * 100)
+					/ 100.0);
+		}
+	}
+
+	/**
+	 * 要测试的线程数：小于cores的2的幂，最后是cores本身，例如6核时是1、2、4、6
+	 */
+	private static List<Integer> threadCounts(int cores) {
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int threads = 1; threads < cores; threads *= 2)
+			counts.add(threads);
+		counts.add(cores);
+		return counts;
+	}
+
+}
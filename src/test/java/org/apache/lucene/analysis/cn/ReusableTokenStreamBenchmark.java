@@ -0,0 +1,60 @@
+package org.apache.lucene.analysis.cn;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * 重用TokenStream链对小文档吞吐量的影响：每个文档调用tokenStream新建链，与reusableTokenStream重用同一线程的链，
+ * 每秒处理的文档数。文档越短，创建链(包括SentenceTokenizer的输入块和WordTokenizer的工作空间)的代价所占的比例越大。
+ */
+public class ReusableTokenStreamBenchmark {
+
+	private static final String[] DOCUMENTS = { "我购买了道具和服装", "中华人民共和国",
+			"Lucene 2.4.1", "研究生命起源", "美国高中都有专门的职业顾问", "手机" };
+
+	private static final int ROUNDS = 200000;
+
+	public static void main(String[] args) throws Exception {
+		final SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer(true);
+		final Token reusableToken = new Token();
+		long[] times = Benchmarks.time(2, new Benchmarks.Task() {
+			public long run() throws IOException {
+				long count = 0;
+				for (int r = 0; r < ROUNDS; r++) {
+					TokenStream ts = analyzer.tokenStream("", new StringReader(
+							DOCUMENTS[r % DOCUMENTS.length]));
+					count += consume(ts, reusableToken);
+				}
+				return count;
+			}
+		}, new Benchmarks.Task() {
+			public long run() throws IOException {
+				long count = 0;
+				for (int r = 0; r < ROUNDS; r++) {
+					TokenStream ts = analyzer.reusableTokenStream("",
+							new StringReader(DOCUMENTS[r % DOCUMENTS.length]));
+					count += consume(ts, reusableToken);
+				}
+				return count;
+			}
+		});
+		System.out.println(ROUNDS + " documents");
+		System.out.println("tokenStream: " + ROUNDS * 1000000000L / times[0]
+				+ " documents/s");
+		System.out.println("reusableTokenStream: " + ROUNDS * 1000000000L
+				/ times[1] + " documents/s");
+	}
+
+	private static int consume(TokenStream ts, Token reusableToken)
+			throws IOException {
+		int count = 0;
+		while (ts.next(reusableToken) != null)
+			count++;
+		ts.close();
+		return count;
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.apache.lucene.analysis.cn;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+
+public class TestParallelAnalyzer extends TestCase {
+
+	private static final String[] SENTENCES = { "我购买了道具和服装。",
+			"美国高中都有专门的职业顾问，通过接触不同的课程来帮助每个学生。",
+			"这门课她花了2个多月才做完，这里只是很小的一部分。",
+			"Lucene 2.4.1 版本的SmartChineseAnalyzer支持ＧＢ２３１２全角字符。", "" };
+
+	public void testSameAsSequential() throws IOException {
+		List<String> texts = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j <= i % 7; j++)
+				text.append(SENTENCES[(i + j) % SENTENCES.length]);
+			texts.add(text.toString());
+		}
+		Analyzer analyzer = new SmartChineseAnalyzer(true);
+		ParallelAnalyzer parallel = new ParallelAnalyzer(analyzer, 4);
+		List<List<Token>> results = parallel.analyze(texts);
+		parallel.close();
+
+		assertEquals(texts.size(), results.size());
+		for (int i = 0; i < texts.size(); i++)
+			assertEquals(AnalysisTestUtil.describe(sequential(analyzer, texts
+					.get(i))), AnalysisTestUtil.describe(results.get(i)));
+	}
+
+	private static List<Token> sequential(Analyzer analyzer, String text)
+			throws IOException {
+		List<Token> tokens = new ArrayList<Token>();
+		TokenStream stream = analyzer.tokenStream("", new StringReader(text));
+		for (Token token = stream.next(new Token()); token != null; token = stream
+				.next(new Token()))
+			tokens.add((Token) token.clone());
+		stream.close();
+		return tokens;
+	}
+
+}
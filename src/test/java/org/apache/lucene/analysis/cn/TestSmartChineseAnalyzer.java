@@ -47,6 +47,36 @@ public class TestSmartChineseAnalyzer extends TestCase {
 		ts.close();
 	}
 
+	/**
+	 * 同一线程重用的TokenStream链与每次新建的结果相同，包括上一个文档没有读完、句子很长以及最大句子长度改变的情况
+	 */
+	public void testReusableTokenStream() throws IOException {
+		SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer(true);
+		StringBuilder longText = new StringBuilder();
+		for (int i = 0; i < 3000; i++)
+			longText.append("我购买了道具和服装");
+		String[] texts = { "我购买了道具和服装。", longText.toString(),
+				"Lucene 2.4.1 版本的SmartChineseAnalyzer支持ＧＢ２３１２全角字符。", "" };
+		TokenStream first = analyzer.reusableTokenStream("", new StringReader(
+				"一个没有读完的文档。"));
+		first.next(new Token());
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < texts.length; i++) {
+				TokenStream ts = analyzer.reusableTokenStream("",
+						new StringReader(texts[i]));
+				assertSame(first, ts);
+				assertEquals(AnalysisTestUtil.describe(analyzer, texts[i]),
+						AnalysisTestUtil.describe(ts));
+			}
+		}
+		analyzer.setMaxSentenceLength(5);
+		TokenStream ts = analyzer.reusableTokenStream("", new StringReader(
+				texts[1]));
+		assertNotSame(first, ts);
+		assertEquals(AnalysisTestUtil.describe(analyzer, texts[1]),
+				AnalysisTestUtil.describe(ts));
+	}
+
 	/**
 	 * @param args
 	 * @throws IOException
@@ -0,0 +1,98 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.smart.dict.SegmentationContext;
+
+/**
+ * 每个句子分词时分配的字节数和耗时：每次新建词格和Token的segmentSentence(Token, int)，重用SegmentationContext的方式，
+ * 以及WordTokenizer使用的不生成中间Token、直接填充同一个Token的方式。
+ * 分配的字节数由HotSpot的com.sun.management.ThreadMXBean得到。
+ */
+public class AllocationBenchmark {
+
+	static final String TEXT = "我从小就不由自主地认为自己长大以后一定得成为一个象我父亲一样的画家, 可能是父母潜移默化的影响。"
+			+ "其实我根本不知道作为画家意味着什么，我是否喜欢，最重要的是否适合我，我是否有这个才华。"
+			+ "美国高中都有专门的职业顾问，通过接触不同的课程，和各种心理，个性，兴趣很多方面的问答来帮助每个学生找到最感兴趣的专业。"
+			+ "这门课她花了2个多月才做完，这里只是很小的一部分。Lucene 2.4.1 版本的SmartChineseAnalyzer支持ＧＢ２３１２全角字符。";
+
+	private static final int ROUNDS = 2000;
+
+	public static void main(String[] args) throws IOException {
+		List<Token> sentences = readSentences(TEXT);
+		WordSegmenter segmenter = new WordSegmenter();
+		SegmentationContext context = new SegmentationContext();
+
+		for (int warm = 0; warm < 2; warm++) {
+			long before = allocatedBytes();
+			long time = System.nanoTime();
+			long count = 0;
+			for (int r = 0; r < ROUNDS; r++) {
+				for (Token sentence : sentences)
+					count += segmenter.segmentSentence(sentence, 1).size();
+			}
+			long plainBytes = allocatedBytes() - before;
+			long plainTime = System.nanoTime() - time;
+
+			before = allocatedBytes();
+			time = System.nanoTime();
+			for (int r = 0; r < ROUNDS; r++) {
+				for (Token sentence : sentences)
+					count += segmenter.segmentSentence(sentence, 1, context).size();
+			}
+			long contextBytes = allocatedBytes() - before;
+			long contextTime = System.nanoTime() - time;
+
+			// WordTokenizer的方式：结果留在context中，逐个填充同一个Token
+			Token reusableToken = new Token();
+			before = allocatedBytes();
+			time = System.nanoTime();
+			for (int r = 0; r < ROUNDS; r++) {
+				for (Token sentence : sentences) {
+					int words = segmenter.segment(sentence, context);
+					for (int i = 0; i < words; i++)
+						segmenter.fillToken(reusableToken, sentence, i, context);
+					count += words;
+				}
+			}
+			long streamBytes = allocatedBytes() - before;
+			long streamTime = System.nanoTime() - time;
+
+			if (warm == 1) {
+				long n = (long) ROUNDS * sentences.size();
+				System.out.println(sentences.size() + " sentences, " + count / 3
+						/ ROUNDS + " words per round");
+				System.out.println("segmentSentence(Token, int): "
+						+ plainBytes / n + " bytes/sentence, " + plainTime / n
+						/ 1000 + " us/sentence");
+				System.out.println("segmentSentence(Token, int, SegmentationContext): "
+						+ contextBytes / n + " bytes/sentence, " + contextTime / n
+						/ 1000 + " us/sentence");
+				System.out.println("segment + fillToken: " + streamBytes / n
+						+ " bytes/sentence, " + streamTime / n / 1000
+						+ " us/sentence");
+			}
+		}
+	}
+
+	static List<Token> readSentences(String text) throws IOException {
+		List<Token> sentences = new ArrayList<Token>();
+		SentenceTokenizer tokenizer = new SentenceTokenizer(new StringReader(text));
+		for (Token token = tokenizer.next(new Token()); token != null; token = tokenizer
+				.next(new Token()))
+			sentences.add((Token) token.clone());
+		return sentences;
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import org.apache.lucene.analysis.cn.Benchmarks;
+
+/**
+ * 判断字符类型每个字符的耗时：原来用一串区间比较得到CharType、放入CharType[]，与查字符类型表、放入byte[]。
+ * 测试文本混合了汉字、半角和全角的字母数字以及标点。
+ */
+public class CharTypeBenchmark {
+
+	private static final String TEXT = AllocationBenchmark.TEXT
+			+ "ＡＢＣ１２３abcXYZ 0123456789　Ｌｕｃｅｎｅ２．４，Java™ 版本。";
+
+	private static final int ROUNDS = 200000;
+
+	public static void main(String[] args) throws Exception {
+		final char[] text = TEXT.toCharArray();
+		final CharType[] types = new CharType[text.length];
+		final byte[] codes = new byte[text.length];
+		long[] times = Benchmarks.time(3, new Benchmarks.Task() {
+			public long run() {
+				long sum = 0;
+				for (int r = 0; r < ROUNDS; r++) {
+					for (int i = 0; i < text.length; i++)
+						types[i] = classify(text[i]);
+					sum += types[r % text.length].ordinal();
+				}
+				return sum;
+			}
+		}, new Benchmarks.Task() {
+			public long run() {
+				long sum = 0;
+				for (int r = 0; r < ROUNDS; r++) {
+					Utility.getCharTypeCodes(text, 0, text.length, codes);
+					sum += codes[r % text.length];
+				}
+				return sum;
+			}
+		});
+		System.out.println(text.length + " chars");
+		System.out.println("range comparisons, CharType[]: " + 1.0 * times[0]
+				/ ROUNDS / text.length + " ns/char");
+		System.out.println("table lookup, byte[]: " + 1.0 * times[1] / ROUNDS
+				/ text.length + " ns/char");
+	}
+
+	/** 原来的Utility.getCharType，TestUtility用它检查字符类型表 */
+	static CharType classify(char ch) {
+		if (ch >= 0x4E00 && ch <= 0x9FA5)
+			return CharType.HANZI;
+		if ((ch >= 0x0041 && ch <= 0x005A) || (ch >= 0x0061 && ch <= 0x007A))
+			return CharType.LETTER;
+		if (ch >= 0x0030 && ch <= 0x0039)
+			return CharType.DIGIT;
+		if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n' || ch == '　')
+			return CharType.SPACE_LIKE;
+		if ((ch >= 0x0021 && ch <= 0x00BB) || (ch >= 0x2010 && ch <= 0x2642)
+				|| (ch >= 0x3001 && ch <= 0x301E))
+			return CharType.DELIMITER;
+		if ((ch >= 0xFF21 && ch <= 0xFF3A) || (ch >= 0xFF41 && ch <= 0xFF5A))
+			return CharType.FULLWIDTH_LETTER;
+		if (ch >= 0xFF10 && ch <= 0xFF19)
+			return CharType.FULLWIDTH_DIGIT;
+		if (ch >= 0xFE30 && ch <= 0xFF63)
+			return CharType.DELIMITER;
+		return CharType.OTHER;
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.Benchmarks;
+import org.apache.lucene.analysis.cn.smart.dict.SegmentationContext;
+
+/**
+ * 双向最大匹配相对HHMM的速度和分词质量：两种模式每秒处理的字符数，以及以HHMM的结果为参照，
+ * 按词的位置计算的最大匹配的准确率、召回率和完全相同的句子所占的比例。
+ * 参数是UTF-8编码的语料文件，没有参数时使用内置的语料。
+ */
+public class MaxMatchBenchmark {
+
+	private static final String TEXT = AllocationBenchmark.TEXT
+			+ "研究生命起源是一个古老的课题。他从马上下来，把门把手修好了。"
+			+ "结合成分子时，原子之间的距离会发生变化。这个门把手坏了，请你把手拿开。"
+			+ "乒乓球拍卖完了。中华人民共和国成立于一九四九年十月一日。";
+
+	private static final int MIN_CHARS = 2000000;
+
+	public static void main(String[] args) throws Exception {
+		String text = args.length > 0 ? readFile(args[0]) : TEXT;
+		List<Token> sentences = AllocationBenchmark.readSentences(text);
+		int chars = 0;
+		for (Token sentence : sentences)
+			chars += sentence.termLength();
+		int rounds = Math.max(1, MIN_CHARS / chars);
+
+		WordSegmenter hhmm = new WordSegmenter(SegmentationMode.HHMM);
+		WordSegmenter maxMatch = new WordSegmenter(
+				SegmentationMode.MAXIMUM_MATCHING);
+		SegmentationContext context = new SegmentationContext();
+		long[] times = Benchmarks.time(2, segmentAll(hhmm, sentences, rounds,
+				context), segmentAll(maxMatch, sentences, rounds, context));
+		long total = (long) chars * rounds;
+		System.out.println(sentences.size() + " sentences, " + chars
+				+ " chars, " + rounds + " rounds");
+		System.out.println("HHMM: " + total * 1000000000L / times[0]
+				+ " chars/s");
+		System.out.println("MAXIMUM_MATCHING: " + total * 1000000000L
+				/ times[1] + " chars/s");
+
+		int hhmmWords = 0, maxMatchWords = 0, sameWords = 0, sameSentences = 0;
+		for (Token sentence : sentences) {
+			Set<Long> expected = new HashSet<Long>();
+			for (Token token : hhmm.segmentSentence(sentence, 1, context))
+				expected.add(spanOf(token));
+			int matched = 0, count = 0;
+			for (Token token : maxMatch.segmentSentence(sentence, 1, context)) {
+				count++;
+				if (expected.contains(spanOf(token)))
+					matched++;
+			}
+			hhmmWords += expected.size();
+			maxMatchWords += count;
+			sameWords += matched;
+			if (matched == count && count == expected.size())
+				sameSentences++;
+		}
+		System.out.println("agreement with HHMM: precision "
+				+ percent(sameWords, maxMatchWords) + ", recall "
+				+ percent(sameWords, hhmmWords) + ", identical sentences "
+				+ percent(sameSentences, sentences.size()));
+	}
+
+	/** 将全部句子分词rounds遍 */
+	private static Benchmarks.Task segmentAll(final WordSegmenter segmenter,
+			final List<Token> sentences, final int rounds,
+			final SegmentationContext context) {
+		return new Benchmarks.Task() {
+			public long run() {
+				long count = 0;
+				for (int r = 0; r < rounds; r++) {
+					for (Token sentence : sentences)
+						count += segmenter.segmentSentence(sentence, 1, context)
+								.size();
+				}
+				return count;
+			}
+		};
+	}
+
+	private static Long spanOf(Token token) {
+		return ((long) token.startOffset() << 32) | token.endOffset();
+	}
+
+	private static String percent(int part, int total) {
+		return total == 0 ? "-" : (part * 1000 / total) / 10.0 + "%";
+	}
+
+	private static String readFile(String path) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(path), "UTF-8"));
+		StringBuilder buffer = new StringBuilder();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				buffer.append(line).append('\n');
+		} finally {
+			reader.close();
+		}
+		return buffer.toString();
+	}
+
+}
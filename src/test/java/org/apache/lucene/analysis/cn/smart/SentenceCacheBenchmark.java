@@ -0,0 +1,73 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.Benchmarks;
+import org.apache.lucene.analysis.cn.smart.dict.SegmentationContext;
+
+/**
+ * 句子缓存节省的分词时间：不使用缓存和使用4MB缓存时每个句子的平均分词时间，以及缓存的命中率。
+ * 大部分句子来自一个经常重复的标题集合，按偏斜的分布选取，其余是只出现一次的句子。
+ */
+public class SentenceCacheBenchmark {
+
+	private static final int HOT_COUNT = 2000;
+
+	private static final int ACCESS_COUNT = 200000;
+
+	/** 只出现一次的句子所占的比例 */
+	private static final double UNIQUE_RATIO = 0.2;
+
+	public static void main(String[] args) throws Exception {
+		List<Token> base = AllocationBenchmark
+				.readSentences(AllocationBenchmark.TEXT);
+		Random random = new Random(42);
+		final Token[] workload = new Token[ACCESS_COUNT];
+		for (int i = 0; i < workload.length; i++) {
+			String prefix;
+			if (random.nextDouble() < UNIQUE_RATIO) {
+				prefix = "第" + (1000000 + i) + "条";
+			} else {
+				double r = random.nextDouble();
+				prefix = "第" + (int) (HOT_COUNT * r * r * r) + "条";
+			}
+			String sentence = prefix
+					+ base.get(random.nextInt(base.size())).term();
+			char[] chars = sentence.toCharArray();
+			workload[i] = new Token(chars, 0, chars.length, 0, chars.length);
+		}
+
+		final SegmentationContext context = new SegmentationContext();
+		final SentenceCache[] cache = new SentenceCache[1];
+		long[] times = Benchmarks.time(2, new Benchmarks.Task() {
+			public long run() {
+				WordSegmenter plain = new WordSegmenter();
+				long count = 0;
+				for (Token sentence : workload)
+					count += plain.segmentSentence(sentence, 1, context).size();
+				return count;
+			}
+		}, new Benchmarks.Task() {
+			public long run() {
+				cache[0] = new SentenceCache(4 << 20);
+				WordSegmenter cached = new WordSegmenter(cache[0]);
+				long count = 0;
+				for (Token sentence : workload)
+					count += cached.segmentSentence(sentence, 1, context).size();
+				return count;
+			}
+		});
+		System.out.println(workload.length + " sentences, "
+				+ (int) (UNIQUE_RATIO * 100) + "% unique");
+		System.out.println("no cache: " + times[0] / workload.length
+				+ " ns/sentence");
+		System.out.println("4MB cache: " + times[1] / workload.length
+				+ " ns/sentence, hit rate "
+				+ (100 * cache[0].getHitCount() / (cache[0].getHitCount() + cache[0]
+						.getMissCount())) + "%");
+		System.out.println(cache[0]);
+	}
+
+}
@@ -0,0 +1,159 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.cn.Benchmarks;
+import org.apache.lucene.analysis.cn.SmartChineseAnalyzer;
+
+/**
+ * 切分句子的吞吐量：按块读入的SentenceTokenizer与原来逐个字符读入、用String.indexOf判断标点的实现，
+ * 在8M字符的输入上每秒切分的字符数；以及没有标点的长文本在限制与不限制句子长度时的分词时间。
+ */
+public class SentenceTokenizerBenchmark {
+
+	private static final int INPUT_CHARS = 8 * 1024 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		final char[] text = createInput(INPUT_CHARS);
+		long[] times = Benchmarks.time(3, new Benchmarks.Task() {
+			public long run() throws IOException {
+				return count(new LegacySentenceTokenizer(new CharArrayReader(text)));
+			}
+		}, new Benchmarks.Task() {
+			public long run() throws IOException {
+				return count(new SentenceTokenizer(new CharArrayReader(text)));
+			}
+		});
+		System.out.println(text.length / 1024 / 1024 + "M chars, "
+				+ count(new SentenceTokenizer(new CharArrayReader(text)))
+				+ " sentences");
+		System.out.println("char by char: " + text.length * 1000L / times[0]
+				+ " M chars/s");
+		System.out.println("block buffered: " + text.length * 1000L / times[1]
+				+ " M chars/s");
+		compareMaxSentenceLength();
+	}
+
+	/**
+	 * 去掉标点和换行的语料连成一个长句，比较不限制句子长度与默认最大长度时整个文本的分词时间
+	 */
+	static void compareMaxSentenceLength() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		while (builder.length() < 20000)
+			builder.append(AllocationBenchmark.TEXT.replaceAll("[。，！？；.,!?;\\s]", ""));
+		final String text = builder.toString();
+		final SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer();
+		long[] times = Benchmarks.time(3, new Benchmarks.Task() {
+			public long run() throws IOException {
+				analyzer.setMaxSentenceLength(0);
+				return count(analyzer.tokenStream("", new StringReader(text)));
+			}
+		}, new Benchmarks.Task() {
+			public long run() throws IOException {
+				analyzer.setMaxSentenceLength(SentenceTokenizer.DEFAULT_MAX_SENTENCE_LENGTH);
+				return count(analyzer.tokenStream("", new StringReader(text)));
+			}
+		});
+		System.out.println(text.length() + " chars without punctuation, "
+				+ count(analyzer.tokenStream("", new StringReader(text)))
+				+ " words");
+		System.out.println("unlimited sentence: " + times[0] / 1000000 + " ms");
+		System.out.println("maxSentenceLength "
+				+ SentenceTokenizer.DEFAULT_MAX_SENTENCE_LENGTH + ": " + times[1]
+				/ 1000000 + " ms");
+	}
+
+	private static long count(TokenStream stream) throws IOException {
+		long count = 0;
+		Token token = new Token();
+		while ((token = stream.next(token)) != null)
+			count++;
+		stream.close();
+		return count;
+	}
+
+	/** 重复测试语料，夹杂单个和连续的空白 */
+	static char[] createInput(int length) {
+		String line = AllocationBenchmark.TEXT + "\n" + AllocationBenchmark.TEXT
+				+ "  \r\n　 ";
+		char[] text = new char[length];
+		for (int i = 0; i < length; i++)
+			text[i] = line.charAt(i % line.length());
+		return text;
+	}
+
+	/**
+	 * 原来的实现：从BufferedReader中逐个字符读入，用String.indexOf判断标点和空白，句子先放在StringBuffer中再生成String
+	 */
+	static class LegacySentenceTokenizer extends Tokenizer {
+
+		private StringBuffer buffer = new StringBuffer();
+
+		private BufferedReader bufferInput;
+
+		private int tokenStart = 0, tokenEnd = 0;
+
+		private Token token = new Token();
+
+		LegacySentenceTokenizer(Reader reader) {
+			bufferInput = new BufferedReader(reader, 2048);
+		}
+
+		public Token next() throws IOException {
+			buffer.setLength(0);
+			int ci;
+			char ch, pch;
+			boolean atBegin = true;
+			tokenStart = tokenEnd;
+			ci = bufferInput.read();
+			ch = (char) ci;
+
+			while (true) {
+				if (ci == -1) {
+					break;
+				} else if (SentenceTokenizer.PUNCTION.indexOf(ch) != -1) {
+					buffer.append(ch);
+					tokenEnd++;
+					break;
+				} else if (atBegin && Utility.SPACES.indexOf(ch) != -1) {
+					tokenStart++;
+					tokenEnd++;
+					ci = bufferInput.read();
+					ch = (char) ci;
+				} else {
+					buffer.append(ch);
+					atBegin = false;
+					tokenEnd++;
+					pch = ch;
+					ci = bufferInput.read();
+					ch = (char) ci;
+					if (Utility.SPACES.indexOf(ch) != -1
+							&& Utility.SPACES.indexOf(pch) != -1) {
+						tokenEnd++;
+						break;
+					}
+				}
+			}
+			if (buffer.length() == 0)
+				return null;
+			else {
+				token.clear();
+				token.reinit(buffer.toString(), tokenStart, tokenEnd, "sentence");
+				return token;
+			}
+		}
+
+		public void close() throws IOException {
+			bufferInput.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.cn.AnalysisTestUtil;
+import org.apache.lucene.analysis.cn.SmartChineseAnalyzer;
+import org.apache.lucene.analysis.cn.smart.dict.DictionarySnapshot;
+import org.apache.lucene.analysis.cn.smart.dict.UserDictionary;
+
+public class TestSentenceCache extends TestCase {
+
+	private static final String TEXT = "我购买了道具和服装。我购买了道具和服装。"
+			+ "SmartChineseAnalyzer支持ＧＢ２３１２全角字符。我购买了道具和服装。";
+
+	public void testSameTokens() throws IOException {
+		SmartChineseAnalyzer plain = new SmartChineseAnalyzer();
+		SmartChineseAnalyzer cached = new SmartChineseAnalyzer();
+		SentenceCache cache = new SentenceCache(1 << 20);
+		cached.setSentenceCache(cache);
+		String expected = AnalysisTestUtil.describe(plain, TEXT);
+		assertEquals(expected, AnalysisTestUtil.describe(cached, TEXT));
+		assertEquals(expected, AnalysisTestUtil.describe(cached, TEXT));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(6, cache.getHitCount());
+	}
+
+	public void testUserDictionaryChange() throws IOException {
+		SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer();
+		SentenceCache cache = new SentenceCache(1 << 20);
+		analyzer.setSentenceCache(cache);
+		String text = "我喜欢三星盖乐世手机";
+		String before = AnalysisTestUtil.describe(analyzer, text);
+		UserDictionary userDict = UserDictionary.getInstance();
+		userDict.add("盖乐世", 1000);
+		try {
+			// 用户词典修改后缓存的结果失效
+			assertTrue(AnalysisTestUtil.describe(analyzer, text).indexOf(
+					"盖乐世/5-8") >= 0);
+		} finally {
+			userDict.remove("盖乐世");
+		}
+		assertEquals(before, AnalysisTestUtil.describe(analyzer, text));
+		assertEquals(0, cache.getHitCount());
+	}
+
+	/**
+	 * 结果按快照的代数失效，词典相同的新快照也不能使用旧快照的结果
+	 */
+	public void testSnapshotChange() {
+		SentenceCache cache = new SentenceCache(64 * 1024, 1);
+		DictionarySnapshot old = DictionarySnapshot.getCurrent();
+		DictionarySnapshot fresh = new DictionarySnapshot(old
+				.getWordDictionary(), old.getBigramDictionary());
+		assertTrue(old.getGeneration() != fresh.getGeneration());
+		char[] chars = "中华人民".toCharArray();
+		cache.put(chars, 0, chars.length, old, 0, new int[] { 0, 2, 2, 4 },
+				new byte[] { 2, 2 });
+		assertNotNull(cache.get(chars, 0, chars.length, old, 0));
+		assertNull(cache.get(chars, 0, chars.length, fresh, 0));
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * 经常访问的句子不会被一次性的大量句子冲掉
+	 */
+	public void testScanResistance() {
+		SentenceCache cache = new SentenceCache(64 * 1024, 1);
+		DictionarySnapshot snapshot = DictionarySnapshot.getCurrent();
+		int[] offsets = { 0, 2, 2, 4 };
+		byte[] wordTypes = { 2, 2 };
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++)
+				access(cache, "热门" + i, snapshot, offsets, wordTypes);
+		}
+		for (int i = 0; i < 100000; i++)
+			access(cache, "冷门" + i, snapshot, offsets, wordTypes);
+		int hits = 0;
+		for (int i = 0; i < 50; i++) {
+			char[] chars = ("热门" + i).toCharArray();
+			if (cache.get(chars, 0, chars.length, snapshot, 0) != null)
+				hits++;
+		}
+		assertTrue("hot sentences kept: " + hits, hits >= 45);
+		assertTrue(cache.getWeightedSize() <= cache.getMaxBytes());
+		assertTrue(cache.getEvictionCount() > 0);
+	}
+
+	private static void access(SentenceCache cache, String sentence,
+			DictionarySnapshot snapshot, int[] offsets, byte[] wordTypes) {
+		char[] chars = sentence.toCharArray();
+		if (cache.get(chars, 0, chars.length, snapshot, 0) == null)
+			cache.put(chars, 0, chars.length, snapshot, 0, offsets, wordTypes);
+	}
+
+}
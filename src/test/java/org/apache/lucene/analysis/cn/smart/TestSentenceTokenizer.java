@@ -0,0 +1,163 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.cn.AnalysisTestUtil;
+import org.apache.lucene.analysis.cn.smart.dict.UserDictionary;
+
+public class TestSentenceTokenizer extends TestCase {
+
+	public void testSentences() throws IOException {
+		assertEquals("我购买了道具和服装。/0-10 你好!/12-15 a b /15-20 c/20-21 ",
+				AnalysisTestUtil.describe(new SentenceTokenizer(
+						new StringReader("我购买了道具和服装。\n 你好!a b  c"))));
+		assertEquals("", AnalysisTestUtil.describe(new SentenceTokenizer(
+				new StringReader(" \r\n　"))));
+	}
+
+	/**
+	 * 输入被分成很小的块读入时，与原来逐个字符读入的实现结果相同
+	 */
+	public void testSameAsLegacy() throws IOException {
+		Random random = new Random(7);
+		String alphabet = "我们a1。，!.;  \r\n　\t";
+		for (int round = 0; round < 200; round++) {
+			char[] text = new char[random.nextInt(300)];
+			for (int i = 0; i < text.length; i++)
+				text[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+			String input = new String(text);
+			assertEquals(AnalysisTestUtil
+					.describe(new SentenceTokenizerBenchmark.LegacySentenceTokenizer(
+							new StringReader(input))), AnalysisTestUtil
+					.describe(new SentenceTokenizer(new ChunkedReader(input,
+							random))));
+		}
+		char[] large = SentenceTokenizerBenchmark.createInput(100000);
+		assertEquals(AnalysisTestUtil
+				.describe(new SentenceTokenizerBenchmark.LegacySentenceTokenizer(
+						new StringReader(new String(large)))), AnalysisTestUtil
+				.describe(new SentenceTokenizer(new StringReader(new String(
+						large)))));
+	}
+
+	/** 没有标点和连续空白的句子比块还长时扩大块 */
+	public void testLongSentence() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 40000; i++)
+			text.append('字');
+		text.append('。');
+		Token token = new SentenceTokenizer(new StringReader(text.toString()), 0)
+				.next(new Token());
+		assertEquals(text.toString(), token.term());
+		assertEquals(40001, token.endOffset());
+	}
+
+	/**
+	 * 超过最大长度的句子在字符类型变化的位置切分，切分后的句子首尾相接，没有丢失字符
+	 */
+	public void testMaxSentenceLength() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 500; i++)
+			text.append("中文abc12 ");
+		checkCuts(text.toString(), 100, true);
+	}
+
+	/** 全是汉字时在最后几个位置中切分 */
+	public void testHanziCut() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 300; i++)
+			text.append("我们购买了道具和服装");
+		checkCuts(text.toString(), 64, false);
+	}
+
+	/**
+	 * 用户词可以跨越字符类型变化的位置，这样的位置不能作为切分点
+	 */
+	public void testTypeBoundaryInsideUserWord() throws IOException {
+		UserDictionary userDict = UserDictionary.getInstance();
+		userDict.add("卡拉OK", 1000);
+		try {
+			// 最后一个类型变化的位置在"卡拉"与"OK"之间，前面还有一个在"a"之后
+			String text = "丂丂丂丂丂丂丂丂丂丂丂丂丂a丂丂卡拉OK丂丂丂丂";
+			Token token = new SentenceTokenizer(new StringReader(text), 20)
+					.next(new Token());
+			assertEquals(text.substring(0, 14), token.term());
+		} finally {
+			userDict.remove("卡拉OK");
+		}
+	}
+
+	/**
+	 * 全是汉字时，跨越切分点的用户词与核心词典的词一样计数，用户词不会被切断
+	 */
+	public void testHanziCutInsideUserWord() throws IOException {
+		UserDictionary userDict = UserDictionary.getInstance();
+		userDict.add("丄丅丆", 1000);
+		try {
+			// 核心词典中没有这些字组成的词，用户词在达到最大长度的位置结束
+			String text = "丂丂丂丂丂丂丂丂丂丂丂丂丂丂丂丂丂丄丅丆丂丂丂丂";
+			Token token = new SentenceTokenizer(new StringReader(text), 20)
+					.next(new Token());
+			assertEquals(text.substring(0, 17), token.term());
+		} finally {
+			userDict.remove("丄丅丆");
+		}
+	}
+
+	private static void checkCuts(String text, int maxLength,
+			boolean typeBoundary) throws IOException {
+		SentenceTokenizer tokenizer = new SentenceTokenizer(new StringReader(
+				text), maxLength);
+		int count = 0, end = 0;
+		for (Token token = tokenizer.next(new Token()); token != null; token = tokenizer
+				.next(new Token())) {
+			assertTrue(token.termLength() <= maxLength);
+			assertTrue(token.termLength() >= maxLength / 4);
+			// 前一个句子结束到这个句子开始之间只有空白
+			assertEquals("", text.substring(end, token.startOffset()).trim());
+			assertEquals(text.substring(token.startOffset(), token
+					.startOffset()
+					+ token.termLength()), token.term());
+			end = token.endOffset();
+			if (typeBoundary && end < text.length())
+				assertFalse(Character.isLetterOrDigit(text.charAt(end - 1))
+						&& Character.isLetterOrDigit(text.charAt(end))
+						&& Utility.getCharType(text.charAt(end - 1)) == Utility
+								.getCharType(text.charAt(end)));
+			count++;
+		}
+		assertEquals(text.length(), end);
+		assertTrue(count > text.length() / maxLength);
+	}
+
+	/** 每次只返回随机几个字符的Reader */
+	private static class ChunkedReader extends Reader {
+
+		private final StringReader in;
+
+		private final Random random;
+
+		ChunkedReader(String text, Random random) {
+			this.in = new StringReader(text);
+			this.random = random;
+		}
+
+		public int read(char[] buffer, int offset, int length)
+				throws IOException {
+			return in.read(buffer, offset, Math.min(length, 1 + random
+					.nextInt(3)));
+		}
+
+		public void close() {
+			in.close();
+		}
+
+	}
+
+}
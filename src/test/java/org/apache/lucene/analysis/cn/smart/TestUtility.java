@@ -0,0 +1,36 @@
+package org.apache.lucene.analysis.cn.smart;
+
+import junit.framework.TestCase;
+
+public class TestUtility extends TestCase {
+
+	/**
+	 * 字符类型表与原来按区间比较的规则对全部65536个字符给出相同的类型
+	 */
+	public void testCharTypeTable() {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			char ch = (char) c;
+			CharType expected = CharTypeBenchmark.classify(ch);
+			assertEquals(Integer.toHexString(c), expected, Utility
+					.getCharType(ch));
+			assertEquals(Integer.toHexString(c), expected.code(), Utility
+					.getCharTypeCode(ch));
+		}
+	}
+
+	/**
+	 * getCharTypeCodes从buffer的offset处开始，结果从codes的开头放起，codes中其余的位置不变
+	 */
+	public void testGetCharTypeCodes() {
+		char[] buffer = "。中文abcＡＢ１２ 12ÿ".toCharArray();
+		int offset = 1, length = buffer.length - 2;
+		byte[] codes = new byte[buffer.length];
+		codes[length] = 99;
+		Utility.getCharTypeCodes(buffer, offset, length, codes);
+		for (int i = 0; i < length; i++)
+			assertEquals(CharTypeBenchmark.classify(buffer[offset + i]).code(),
+					codes[i]);
+		assertEquals(99, codes[length]);
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+
+import org.apache.lucene.analysis.cn.Benchmarks;
+
+/**
+ * 核心词典的加载和查询代价：从coredict.mem反序列化与映射DictionaryCompiler生成的coredict.bin的启动时间，
+ * 以及在语料的每个位置查询单字和两字词词频的平均耗时。
+ */
+public class DictionaryBenchmark {
+
+	private static final int ROUNDS = 20;
+
+	/** 测试用的语料，中英文、数字、标点混合 */
+	static final String TEXT = "我从小就不由自主地认为自己长大以后一定得成为一个象我父亲一样的画家, 可能是父母潜移默化的影响。"
+			+ "其实我根本不知道作为画家意味着什么，我是否喜欢，最重要的是否适合我，我是否有这个才华。"
+			+ "美国高中都有专门的职业顾问，通过接触不同的课程，和各种心理，个性，兴趣很多方面的问答来帮助每个学生找到最感兴趣的专业。"
+			+ "这门课她花了2个多月才做完，这里只是很小的一部分。Lucene 2.4.1 版本的SmartChineseAnalyzer支持ＧＢ２３１２全角字符。";
+
+	public static void main(String[] args) throws Exception {
+		File dir = createDataDir();
+		compareStartup(dir);
+		compareLookup(WordDictionary.loadFrom(dir.getAbsolutePath()));
+	}
+
+	/**
+	 * 单字词频和首字定位的查询代价：对语料中的每个位置分别查询单字和两字词的词频
+	 */
+	static void compareLookup(WordDictionary dictionary) throws Exception {
+		char[] text = TEXT.toCharArray();
+		int rounds = 20000;
+		long[] times = Benchmarks.time(2, lookupAll(dictionary, text, 1,
+				rounds), lookupAll(dictionary, text, 2, rounds));
+		System.out.println("single char frequency: " + 1.0 * times[0]
+				/ rounds / text.length + " ns/lookup");
+		System.out.println("two char frequency: " + 1.0 * times[1] / rounds
+				/ text.length + " ns/lookup");
+	}
+
+	/** 在text的每个位置查询长度为length的词的词频，共rounds遍 */
+	private static Benchmarks.Task lookupAll(final WordDictionary dictionary,
+			final char[] text, final int length, final int rounds) {
+		return new Benchmarks.Task() {
+			public long run() {
+				long sum = 0;
+				for (int r = 0; r < rounds; r++) {
+					for (int i = 0; i + length <= text.length; i++)
+						sum += dictionary.getFrequency(text, i, length);
+				}
+				return sum;
+			}
+		};
+	}
+
+	/**
+	 * 比较从coredict.mem反序列化与映射coredict.bin两种方式的启动时间
+	 */
+	static void compareStartup(File dir) throws Exception {
+		File serialObj = new File(dir, "coredict.mem");
+		// 运行时不再生成coredict.bin，先用DictionaryCompiler从coredict.mem生成
+		WordDictionary.compile(dir.getAbsolutePath()).writeBin(
+				new File(dir, DictionaryCompiler.WORD_BIN));
+
+		long memFirst = 0, memTotal = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long before = System.nanoTime();
+			ObjectInputStream input = new ObjectInputStream(
+					new BufferedInputStream(new FileInputStream(serialObj)));
+			input.readObject();
+			input.readObject();
+			input.readObject();
+			input.readObject();
+			input.close();
+			long cost = System.nanoTime() - before;
+			if (i == 0)
+				memFirst = cost;
+			memTotal += cost;
+		}
+
+		long binFirst = 0, binTotal = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long before = System.nanoTime();
+			WordDictionary.loadFrom(dir.getAbsolutePath());
+			long cost = System.nanoTime() - before;
+			if (i == 0)
+				binFirst = cost;
+			binTotal += cost;
+		}
+
+		System.out.println("coredict.mem first: " + memFirst / 1000000.0
+				+ " ms, avg: " + memTotal / ROUNDS / 1000000.0 + " ms");
+		System.out.println("coredict.bin first: " + binFirst / 1000000.0
+				+ " ms, avg: " + binTotal / ROUNDS / 1000000.0 + " ms");
+	}
+
+	/** 将jar内的coredict.mem复制到一个临时目录中，作为词典目录 */
+	static File createDataDir() throws IOException {
+		File dir = File.createTempFile("analysis-data", "");
+		dir.delete();
+		dir.mkdirs();
+		dir.deleteOnExit();
+		InputStream input = WordDictionary.class.getResourceAsStream("coredict.mem");
+		OutputStream output = new FileOutputStream(new File(dir, "coredict.mem"));
+		byte[] buffer = new byte[1 << 16];
+		int n;
+		while ((n = input.read(buffer)) != -1)
+			output.write(buffer, 0, n);
+		output.close();
+		input.close();
+		new File(dir, "coredict.mem").deleteOnExit();
+		new File(dir, "coredict.bin").deleteOnExit();
+		return dir;
+	}
+
+}
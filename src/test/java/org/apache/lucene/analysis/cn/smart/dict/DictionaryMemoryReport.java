@@ -0,0 +1,146 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+import org.apache.lucene.analysis.cn.Benchmarks;
+
+/**
+ * 比较核心词典几种内存结构占用的堆内存：coredict.mem中每个词一个char[]的char[][][]结构，
+ * WordDictionary在堆上构建时使用的连续char池，以及FrontCodedWordTable的前缀压缩结构。
+ * 估计值按64位JVM、压缩指针下数组头16字节、8字节对齐计算；实测值是构建前后GC之后已用堆内存的差，只是参考。
+ * 最后比较两种结构查询全部词的词频的耗时。
+ */
+public class DictionaryMemoryReport {
+
+	public static void main(String[] args) throws Exception {
+		WordDictionary dictionary = WordDictionary.getInstance();
+		int rowCount = dictionary.getRowCount();
+		int wordCount = dictionary.getWordCount();
+		char[] suffix = new char[dictionary.getMaxWordLength()];
+		long charCount = 0;
+		for (int w = 0; w < wordCount; w++)
+			charCount += dictionary.getWordSuffix(w, suffix) + 1;
+		System.out.println(wordCount + " words, " + charCount + " chars, "
+				+ charCount * 2 + " bytes of text");
+
+		long before = usedMemory();
+		Object[] legacy = readLegacy();
+		long legacyMeasured = usedMemory() - before;
+		long legacyEstimate = estimateLegacy(legacy);
+		print("char[][][] (coredict.mem)", legacyEstimate, legacyMeasured,
+				wordCount);
+
+		// 连续char池：rowOffsets、wordOffsets、frequencies、wordChars以及以字符为下标的两个表，不含trie
+		long flatEstimate = FrontCodedWordTable.arrayBytes(rowCount + 1, 4)
+				+ FrontCodedWordTable.arrayBytes(wordCount + 1, 4)
+				+ FrontCodedWordTable.arrayBytes(wordCount, 4)
+				+ FrontCodedWordTable.arrayBytes((int) charCount - wordCount, 2)
+				+ FrontCodedWordTable.arrayBytes(rowCount, 2)
+				+ FrontCodedWordTable.arrayBytes(WordDictionary.CHAR_TABLE_LENGTH, 2)
+				+ FrontCodedWordTable.arrayBytes(WordDictionary.CHAR_TABLE_LENGTH, 4);
+		print("WordDictionary char pool", flatEstimate, -1, wordCount);
+
+		before = usedMemory();
+		FrontCodedWordTable table = dictionary.toFrontCoded();
+		long frontCodedMeasured = usedMemory() - before;
+		print("FrontCodedWordTable", table.estimateHeapBytes(),
+				frontCodedMeasured, wordCount);
+
+		// 保持引用直到测量结束
+		Benchmarks.consume(legacy.length + table.getWordCount());
+
+		compareLookup(dictionary, table);
+	}
+
+	/**
+	 * 两种结构查询全部词的词频的代价，WordDictionary在行内二分查找，FrontCodedWordTable按块二分查找后在块内顺序比较
+	 */
+	private static void compareLookup(final WordDictionary dictionary,
+			final FrontCodedWordTable table) throws Exception {
+		int wordCount = dictionary.getWordCount();
+		final char[][] words = new char[wordCount][];
+		char[] suffix = new char[dictionary.getMaxWordLength()];
+		for (int row = 0; row < dictionary.getRowCount(); row++) {
+			for (int w = dictionary.getRowStart(row); w < dictionary
+					.getRowStart(row + 1); w++) {
+				int length = dictionary.getWordSuffix(w, suffix);
+				words[w] = new char[length + 1];
+				words[w][0] = dictionary.getRowChar(row);
+				System.arraycopy(suffix, 0, words[w], 1, length);
+			}
+		}
+		long[] times = Benchmarks.time(5, new Benchmarks.Task() {
+			public long run() {
+				long sum = 0;
+				for (char[] word : words)
+					sum += dictionary.getFrequency(word, 0, word.length);
+				return sum;
+			}
+		}, new Benchmarks.Task() {
+			public long run() {
+				long sum = 0;
+				for (char[] word : words)
+					sum += table.getFrequency(word, 0, word.length);
+				return sum;
+			}
+		});
+		System.out.println("getFrequency: WordDictionary " + times[0]
+				/ wordCount + " ns/word, FrontCodedWordTable " + times[1]
+				/ wordCount + " ns/word");
+	}
+
+	/** 按coredict.mem的格式读出四个对象：wordIndexTable、charIndexTable、char[][][]和int[][] */
+	private static Object[] readLegacy() throws Exception {
+		InputStream input = WordDictionary.class
+				.getResourceAsStream("coredict.mem");
+		ObjectInputStream objects = new ObjectInputStream(
+				new BufferedInputStream(input));
+		try {
+			return new Object[] { objects.readObject(), objects.readObject(),
+					objects.readObject(), objects.readObject() };
+		} finally {
+			objects.close();
+		}
+	}
+
+	private static long estimateLegacy(Object[] legacy) {
+		short[] wordIndexTable = (short[]) legacy[0];
+		char[] charIndexTable = (char[]) legacy[1];
+		char[][][] words = (char[][][]) legacy[2];
+		int[][] frequencies = (int[][]) legacy[3];
+		long bytes = FrontCodedWordTable.arrayBytes(wordIndexTable.length, 2)
+				+ FrontCodedWordTable.arrayBytes(charIndexTable.length, 2)
+				+ FrontCodedWordTable.arrayBytes(words.length, 4)
+				+ FrontCodedWordTable.arrayBytes(frequencies.length, 4);
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] == null)
+				continue;
+			bytes += FrontCodedWordTable.arrayBytes(words[i].length, 4)
+					+ FrontCodedWordTable.arrayBytes(frequencies[i].length, 4);
+			for (char[] word : words[i]) {
+				if (word != null)
+					bytes += FrontCodedWordTable.arrayBytes(word.length, 2);
+			}
+		}
+		return bytes;
+	}
+
+	private static void print(String name, long estimate, long measured,
+			int wordCount) {
+		System.out.println(name + ": " + estimate / 1024 + " KB estimated, "
+				+ (measured < 0 ? "-" : measured / 1024 + " KB") + " measured, "
+				+ (estimate * 10 / wordCount) / 10.0 + " bytes/word");
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.analysis.cn.Benchmarks;
+
+/**
+ * 句子长度从5到500个字符时求一次最短路径的耗时：BiSegGraph按拓扑顺序的一遍动态规划，
+ * 与按边表Map和优先队列计算的旧方式，同时给出构建词格的耗时作为参照。
+ */
+public class ShortPathBenchmark {
+
+	private static final int[] LENGTHS = { 5, 10, 20, 50, 100, 200, 500 };
+
+	public static void main(String[] args) throws Exception {
+		final HHMMSegmenter segmenter = new HHMMSegmenter();
+		StringBuffer text = new StringBuffer();
+		while (text.length() < LENGTHS[LENGTHS.length - 1])
+			text.append(DictionaryBenchmark.TEXT);
+
+		for (int length : LENGTHS) {
+			final String sentence = text.substring(0, length);
+			final BiSegGraph graph = new BiSegGraph(segmenter
+					.createSegGraph(sentence));
+			final int rounds = 2000000 / length;
+			long[] times = Benchmarks.time(2, new Benchmarks.Task() {
+				public long run() {
+					long sum = 0;
+					for (int r = 0; r < rounds; r++)
+						sum += graph.findShortPath();
+					return sum;
+				}
+			}, new Benchmarks.Task() {
+				public long run() {
+					long sum = 0;
+					for (int r = 0; r < rounds; r++)
+						sum += queueShortPath(graph).size();
+					return sum;
+				}
+			}, new Benchmarks.Task() {
+				public long run() {
+					// 构建较慢，只执行十分之一的次数
+					for (int r = 0; r < rounds / 10; r++)
+						graph.build(segmenter.createSegGraph(sentence),
+								BigramDictionary.getInstance());
+					return graph.getEdgeCount();
+				}
+			});
+			List<Integer> expected = queueShortPath(graph);
+			int pathLength = graph.findShortPath();
+			for (int i = 0; i < pathLength; i++) {
+				if (expected.get(i) != graph.getPathIndex(i))
+					throw new IllegalStateException("path differs at " + length);
+			}
+			System.out.println("length " + length + ", tokens "
+					+ graph.getTokenCount() + ", edges " + graph.getEdgeCount()
+					+ ": array " + times[0] / rounds + " ns, queue " + times[1]
+					/ rounds + " ns, lattice build " + times[2] * 10 / rounds
+					+ " ns");
+		}
+	}
+
+	/**
+	 * 旧的计算方式：边按结束Token放在Map中，每个Token一个PathNode，用优先队列(Dijkstra)求最短路径
+	 */
+	static List<Integer> queueShortPath(BiSegGraph graph) {
+		int tokenCount = graph.getTokenCount();
+		Map<Integer, List<Integer>> edgeTable = new HashMap<Integer, List<Integer>>();
+		for (int from = 0; from < tokenCount; from++) {
+			for (int e = graph.getEdgeStart(from); e < graph.getEdgeEnd(from); e++) {
+				List<Integer> edges = edgeTable.get(from);
+				if (edges == null) {
+					edges = new ArrayList<Integer>();
+					edgeTable.put(from, edges);
+				}
+				edges.add(e);
+			}
+		}
+		PathNode[] nodes = new PathNode[tokenCount];
+		PriorityQueue<PathNode> queue = new PriorityQueue<PathNode>();
+		nodes[0] = new PathNode(0, 0, -1);
+		queue.add(nodes[0]);
+		while (!queue.isEmpty()) {
+			PathNode node = queue.poll();
+			if (node != nodes[node.index])
+				continue;
+			List<Integer> edges = edgeTable.get(node.index);
+			if (edges == null)
+				continue;
+			for (Integer e : edges) {
+				int to = graph.getEdgeTo(e);
+				double weight = node.weight + graph.getEdgeWeight(e);
+				if (nodes[to] == null || weight < nodes[to].weight
+						|| weight == nodes[to].weight && node.index < nodes[to].preNode) {
+					nodes[to] = new PathNode(to, weight, node.index);
+					queue.add(nodes[to]);
+				}
+			}
+		}
+		List<Integer> path = new ArrayList<Integer>();
+		for (int i = tokenCount - 1; i >= 0; i = nodes[i].preNode)
+			path.add(0, i);
+		return path;
+	}
+
+	private static class PathNode implements Comparable<PathNode> {
+
+		int index;
+
+		double weight;
+
+		int preNode;
+
+		PathNode(int index, double weight, int preNode) {
+			this.index = index;
+			this.weight = weight;
+			this.preNode = preNode;
+		}
+
+		public int compareTo(PathNode p) {
+			if (weight < p.weight)
+				return -1;
+			else if (weight > p.weight)
+				return 1;
+			return 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestBiSegGraph extends TestCase {
+
+	private static final String[] SENTENCES = { "我购买了道具和服装。",
+			"阳光海岸的研究生命起源", "这门课她花了2个多月才做完，SmartChineseAnalyzer支持ＧＢ２３１２。" };
+
+	private HHMMSegmenter segmenter = new HHMMSegmenter();
+
+	public void testFirstPathIsShortestPath() {
+		for (String sentence : SENTENCES) {
+			BiSegGraph graph = new BiSegGraph(segmenter.createSegGraph(sentence));
+			int length = graph.findShortPath();
+			int[] best = new int[length];
+			for (int i = 0; i < length; i++)
+				best[i] = graph.getPathIndex(i);
+
+			int[] indexes = new int[graph.getTokenCount()];
+			assertTrue(graph.findShortPaths(5) > 0);
+			assertEquals(length, graph.getPath(0, indexes));
+			for (int i = 0; i < length; i++)
+				assertEquals(best[i], indexes[i]);
+		}
+	}
+
+	public void testShortPathsMatchEnumeration() {
+		for (String sentence : SENTENCES) {
+			BiSegGraph graph = new BiSegGraph(segmenter.createSegGraph(sentence));
+			List<Double> all = new ArrayList<Double>();
+			enumerate(graph, 0, 0, all);
+			Collections.sort(all);
+
+			int k = 8;
+			int count = graph.findShortPaths(k);
+			assertEquals(Math.min(k, all.size()), count);
+			int[] indexes = new int[graph.getTokenCount()];
+			for (int rank = 0; rank < count; rank++) {
+				int length = graph.getPath(rank, indexes);
+				assertEquals(0, indexes[0]);
+				assertEquals(graph.getTokenCount() - 1, indexes[length - 1]);
+				assertEquals(all.get(rank), distance(graph, indexes, length),
+						1e-9);
+			}
+		}
+	}
+
+	public void testLongSentence() {
+		StringBuffer sentence = new StringBuffer();
+		for (int i = 0; i < 5; i++)
+			sentence.append("我从小就不由自主地认为自己长大以后一定得成为一个象我父亲一样的画家，可能是父母潜移默化的影响。");
+		BiSegGraph graph = new BiSegGraph(segmenter.createSegGraph(sentence
+				.toString()));
+		int count = graph.findShortPaths(16);
+		assertEquals(16, count);
+		int[] indexes = new int[graph.getTokenCount()];
+		List<String> paths = new ArrayList<String>();
+		double last = 0;
+		for (int rank = 0; rank < count; rank++) {
+			int length = graph.getPath(rank, indexes);
+			double distance = distance(graph, indexes, length);
+			assertTrue(distance >= last - 1e-9);
+			last = distance;
+			StringBuffer path = new StringBuffer();
+			for (int i = 0; i < length; i++)
+				path.append(indexes[i]).append(',');
+			assertFalse(paths.contains(path.toString()));
+			paths.add(path.toString());
+		}
+	}
+
+	/**
+	 * 几千字的句子，路径上有几千个Token，求k条最短路径时不会因为递归过深而栈溢出。
+	 * 在栈只有128K的线程中运行，计算所需的栈空间不随句子长度增加
+	 */
+	public void testVeryLongSentence() throws InterruptedException {
+		final StringBuffer sentence = new StringBuffer();
+		while (sentence.length() < 8000)
+			sentence.append("我从小就不由自主地认为自己长大以后一定得成为一个象我父亲一样的画家，可能是父母潜移默化的影响。");
+		final Throwable[] failure = new Throwable[1];
+		Runnable check = new Runnable() {
+			public void run() {
+				try {
+					checkShortPaths(sentence.toString());
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		};
+		Thread thread = new Thread(null, check, "k-best", 128 * 1024);
+		thread.start();
+		thread.join();
+		if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		assertNull(failure[0]);
+	}
+
+	private void checkShortPaths(String sentence) {
+		BiSegGraph graph = new BiSegGraph(segmenter.createSegGraph(sentence));
+		assertTrue(graph.findShortPath() > 4000);
+		int count = graph.findShortPaths(4);
+		assertEquals(4, count);
+		int[] indexes = new int[graph.getTokenCount()];
+		double last = 0;
+		for (int rank = 0; rank < count; rank++) {
+			int length = graph.getPath(rank, indexes);
+			assertEquals(graph.getTokenCount() - 1, indexes[length - 1]);
+			double distance = distance(graph, indexes, length);
+			assertTrue(distance >= last - 1e-9);
+			last = distance;
+		}
+	}
+
+	/** 枚举所有路径的长度 */
+	private void enumerate(BiSegGraph graph, int node, double distance,
+			List<Double> result) {
+		if (node == graph.getTokenCount() - 1) {
+			result.add(distance);
+			return;
+		}
+		for (int e = graph.getEdgeStart(node); e < graph.getEdgeEnd(node); e++)
+			enumerate(graph, graph.getEdgeTo(e), distance + graph.getEdgeWeight(e),
+					result);
+	}
+
+	private double distance(BiSegGraph graph, int[] indexes, int length) {
+		double distance = 0;
+		for (int i = 0; i + 1 < length; i++) {
+			boolean found = false;
+			for (int e = graph.getEdgeStart(indexes[i]); e < graph
+					.getEdgeEnd(indexes[i]); e++) {
+				if (graph.getEdgeTo(e) == indexes[i + 1]) {
+					distance += graph.getEdgeWeight(e);
+					found = true;
+				}
+			}
+			assertTrue(found);
+		}
+		return distance;
+	}
+
+}
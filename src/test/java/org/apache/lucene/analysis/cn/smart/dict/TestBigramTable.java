@@ -0,0 +1,88 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestBigramTable extends TestCase {
+
+	public void testFrequenciesPreserved() {
+		Random random = new Random(42);
+		BigramTable table = new BigramTable();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		long[] hashIds = new long[200000];
+		for (int i = 0; i < hashIds.length; i++) {
+			long hashId = random.nextLong();
+			// 一部分关联词重复出现，频率应当累加
+			if (i % 10 == 9)
+				hashId = hashIds[random.nextInt(i)];
+			hashIds[i] = hashId;
+			int frequency = random.nextInt(1000) + 1;
+			table.add(hashId, frequency);
+			Integer old = expected.get(hashId);
+			expected.put(hashId, old == null ? frequency : old + frequency);
+		}
+		table.trim();
+
+		for (Map.Entry<Long, Integer> entry : expected.entrySet())
+			assertEquals(entry.getValue().intValue(), table.get(entry.getKey()));
+		assertEquals(expected.size(), table.size() + table.getOverflowCount()
+				- countCollided(table, expected));
+		assertTrue(table.capacity() * BigramTable.LOAD_FACTOR >= table.size());
+	}
+
+	public void testFingerprintCollision() {
+		// 找出两个指纹相同的hash值
+		Map<Integer, Long> seen = new HashMap<Integer, Long>();
+		long first = 0, second = 0;
+		for (long hashId = 1;; hashId++) {
+			Long other = seen.put(BigramTable.fingerprint(hashId), hashId);
+			if (other != null) {
+				first = other;
+				second = hashId;
+				break;
+			}
+		}
+		BigramTable table = new BigramTable();
+		table.add(first, 3);
+		table.add(second, 5);
+		table.add(first, 4);
+		table.trim();
+		assertEquals(7, table.get(first));
+		assertEquals(5, table.get(second));
+		assertEquals(2, table.getOverflowCount());
+	}
+
+	public void testAbsent() {
+		BigramTable table = new BigramTable();
+		for (long hashId = 1; hashId <= 1000; hashId++)
+			table.add(hashId, 1);
+		table.trim();
+		assertEquals(0, table.get(0));
+		assertEquals(0, table.get(-12345L));
+		try {
+			table.add(2000, 1);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/** 指纹冲突的位置在table中占一个位置，对应的关联词都在overflowTable中 */
+	private int countCollided(BigramTable table, Map<Long, Integer> expected) {
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		for (Long hashId : expected.keySet()) {
+			int fp = BigramTable.fingerprint(hashId);
+			Integer old = counts.get(fp);
+			counts.put(fp, old == null ? 1 : old + 1);
+		}
+		int collided = 0;
+		for (Integer count : counts.values()) {
+			if (count > 1)
+				collided++;
+		}
+		return collided;
+	}
+
+}
@@ -0,0 +1,227 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestDictionaryCompiler extends TestCase {
+
+	private File dir;
+
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("dict", "");
+		dir.delete();
+		dir.mkdirs();
+		// 同一行中的词没有排序，"中国"的两次出现不相邻，标点在第3755行
+		writeDct(new File(dir, "coredict.dct"), new String[] { "中国", "中",
+				"人民", "中华", "中国", "，", "，" }, new int[] { 10, 20, 30, 40,
+				5, 7, 8 });
+		writeDct(new File(dir, "bigramdict.dct"), new String[] { "中国@人民",
+				"人民@中国", "中国@人民" }, new int[] { 3, 4, 6 });
+	}
+
+	protected void tearDown() {
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		dir.delete();
+	}
+
+	public void testCompile() throws Exception {
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+
+		WordDictionary words = WordDictionary.openBin(new File(dir,
+				DictionaryCompiler.WORD_BIN));
+		assertEquals(5, words.getWordCount());
+		assertEquals(15, words.getFrequency("中国".toCharArray()));
+		assertEquals(20, words.getFrequency('中'));
+		assertEquals(40, words.getFrequency("中华".toCharArray()));
+		assertEquals(30, words.getFrequency("人民".toCharArray()));
+		assertEquals(15, words.getFrequency('，'));
+
+		BigramDictionary bigrams = BigramDictionary.openBin(new File(dir,
+				DictionaryCompiler.BIGRAM_BIN));
+		assertEquals(9, bigrams.getFrequency("中国@人民".toCharArray()));
+		assertEquals(4, bigrams.getFrequency("人民@中国".toCharArray()));
+		assertEquals(0, bigrams.getFrequency("中华@人民".toCharArray()));
+	}
+
+	/**
+	 * 关联词典只有旧格式的bigramdict.mem时也能编译
+	 */
+	public void testCompileFromMem() throws Exception {
+		new File(dir, "bigramdict.dct").delete();
+		BigramDictionary hasher = BigramDictionary.getInstance();
+		long[] hashIds = new long[8];
+		int[] frequencies = new int[8];
+		hashIds[1] = hasher.hash1("中国@人民".toCharArray());
+		frequencies[1] = 9;
+		hashIds[5] = hasher.hash1("人民@中国".toCharArray());
+		frequencies[5] = 4;
+		ObjectOutputStream output = new ObjectOutputStream(
+				new FileOutputStream(new File(dir, "bigramdict.mem")));
+		output.writeObject(hashIds);
+		output.writeObject(frequencies);
+		output.close();
+
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		BigramDictionary bigrams = BigramDictionary.openBin(new File(dir,
+				DictionaryCompiler.BIGRAM_BIN));
+		assertEquals(9, bigrams.getFrequency("中国@人民".toCharArray()));
+		assertEquals(4, bigrams.getFrequency("人民@中国".toCharArray()));
+		assertEquals(0, bigrams.getFrequency("中华@人民".toCharArray()));
+	}
+
+	/**
+	 * 再次编译时改名覆盖已有的*.bin，不留下临时文件
+	 */
+	public void testRecompile() throws Exception {
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		writeDct(new File(dir, "coredict.dct"), new String[] { "中国", "中",
+				"人民", "，" }, new int[] { 3, 20, 30, 7 });
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		assertEquals(4, dir.list().length);
+		WordDictionary words = WordDictionary.openBin(new File(dir,
+				DictionaryCompiler.WORD_BIN));
+		assertEquals(3, words.getFrequency("中国".toCharArray()));
+	}
+
+	/**
+	 * 运行时从源文件加载词典不写词典目录，*.bin只由DictionaryCompiler生成
+	 */
+	public void testLoadDoesNotWriteBin() {
+		WordDictionary words = WordDictionary.loadFrom(dir.getPath());
+		assertEquals(15, words.getFrequency("中国".toCharArray()));
+		BigramDictionary.loadFrom(dir.getPath());
+		assertEquals(2, dir.list().length);
+	}
+
+	/**
+	 * *.bin被截断时加载退回到源文件，截断的位置可以在数组中间，也可以只少了最后的校验和
+	 */
+	public void testTruncatedBinFallsBack() throws Exception {
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		File wordBin = new File(dir, DictionaryCompiler.WORD_BIN);
+		File bigramBin = new File(dir, DictionaryCompiler.BIGRAM_BIN);
+		long[] wordLengths = { wordBin.length() / 2, wordBin.length() - 2, 20 };
+		long[] bigramLengths = { bigramBin.length() / 2,
+				bigramBin.length() - 2, 20 };
+		for (int i = 0; i < wordLengths.length; i++) {
+			truncate(wordBin, wordLengths[i]);
+			truncate(bigramBin, bigramLengths[i]);
+			try {
+				WordDictionary.openBin(wordBin);
+				fail();
+			} catch (IOException e) {
+				// 文件不完整
+			}
+			try {
+				BigramDictionary.openBin(bigramBin);
+				fail();
+			} catch (IOException e) {
+				// 文件不完整
+			}
+			WordDictionary words = WordDictionary.loadFrom(dir.getPath());
+			assertEquals(15, words.getFrequency("中国".toCharArray()));
+			BigramDictionary bigrams = BigramDictionary.loadFrom(dir.getPath());
+			assertEquals(9, bigrams.getFrequency("中国@人民".toCharArray()));
+		}
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		output.setLength(length);
+		output.close();
+	}
+
+	/**
+	 * 符号行中同一个符号的词不相邻、符号所在的行已经有词时合并到一起；首字不在GB2312中的词被丢弃
+	 */
+	public void testNonContiguousDelimiters() throws Exception {
+		writeDct(new File(dir, "coredict.dct"), new String[] { "中国", "，",
+				"。", "，，", "ab", "，", "！" }, new int[] { 10, 7, 3, 4, 5, 8, 2 });
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		WordDictionary words = WordDictionary.openBin(new File(dir,
+				DictionaryCompiler.WORD_BIN));
+		assertEquals(15, words.getFrequency('，'));
+		assertEquals(4, words.getFrequency("，，".toCharArray()));
+		assertEquals(3, words.getFrequency('。'));
+		assertEquals(2, words.getFrequency('！'));
+		assertEquals(0, words.getFrequency("ab".toCharArray()));
+		assertEquals(10, words.getFrequency("中国".toCharArray()));
+	}
+
+	public void testVerifyDetectsCorruption() throws Exception {
+		assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+		assertTrue(DictionaryCompiler.verify(dir.getPath()));
+
+		RandomAccessFile file = new RandomAccessFile(new File(dir,
+				DictionaryCompiler.WORD_BIN), "rw");
+		file.seek(file.length() / 2);
+		int b = file.read();
+		file.seek(file.length() / 2);
+		file.write(b ^ 1);
+		file.close();
+		assertFalse(DictionaryCompiler.verify(dir.getPath()));
+	}
+
+	public void testTruncatedSource() throws Exception {
+		RandomAccessFile file = new RandomAccessFile(new File(dir,
+				"bigramdict.dct"), "rw");
+		file.setLength(file.length() - 3);
+		file.close();
+		try {
+			BigramDictionary.compile(dir.getPath());
+			fail();
+		} catch (IOException e) {
+			// 文件不完整
+		}
+	}
+
+	/**
+	 * 按coredict.dct的格式写出词典：每个词放在首字所在的行中并去掉首字，首字是符号的词放在第3755行并保留首字
+	 */
+	static void writeDct(File file, String[] words, int[] frequencies)
+			throws IOException {
+		int first = AbstractDictionary.GB2312_FIRST_CHAR;
+		int delimiterRow = 3755 + first;
+		List<List<Integer>> rows = new ArrayList<List<Integer>>();
+		for (int i = 0; i < AbstractDictionary.CHAR_NUM_IN_FILE; i++)
+			rows.add(new ArrayList<Integer>());
+		for (int i = 0; i < words.length; i++) {
+			byte[] bytes = words[i].substring(0, 1).getBytes("GB2312");
+			int id = bytes.length < 2 ? -1 : ((bytes[0] & 0xFF) - 161) * 94
+					+ (bytes[1] & 0xFF) - 161;
+			rows.get((id < first ? delimiterRow : id) - first).add(i);
+		}
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		for (int row = 0; row < rows.size(); row++) {
+			writeIntLE(output, rows.get(row).size());
+			for (int i : rows.get(row)) {
+				String word = row + first == delimiterRow ? words[i] : words[i]
+						.substring(1);
+				byte[] bytes = word.getBytes("GB2312");
+				writeIntLE(output, frequencies[i]);
+				writeIntLE(output, bytes.length);
+				writeIntLE(output, 0);
+				output.write(bytes);
+			}
+		}
+		output.close();
+	}
+
+	private static void writeIntLE(DataOutputStream output, int value)
+			throws IOException {
+		output.writeInt(Integer.reverseBytes(value));
+	}
+
+}
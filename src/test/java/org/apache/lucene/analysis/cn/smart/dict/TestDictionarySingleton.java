@@ -0,0 +1,43 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import junit.framework.TestCase;
+
+public class TestDictionarySingleton extends TestCase {
+
+	public void testWordDictionaryLoadedOnce() {
+		WordDictionary first = WordDictionary.getInstance();
+		int loads = WordDictionary.loadCount;
+		assertTrue(loads > 0);
+		for (int i = 0; i < 10; i++)
+			assertSame(first, WordDictionary.getInstance());
+		assertEquals(loads, WordDictionary.loadCount);
+	}
+
+	public void testBigramDictionaryLoadedOnce() {
+		BigramDictionary first = BigramDictionary.getInstance();
+		int loads = BigramDictionary.loadCount;
+		assertTrue(loads > 0);
+		for (int i = 0; i < 10; i++)
+			assertSame(first, BigramDictionary.getInstance());
+		assertEquals(loads, BigramDictionary.loadCount);
+	}
+
+	public void testConcurrentGetInstance() throws InterruptedException {
+		final WordDictionary[] results = new WordDictionary[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread() {
+				public void run() {
+					results[n] = WordDictionary.getInstance();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		for (WordDictionary result : results)
+			assertSame(WordDictionary.getInstance(), result);
+	}
+
+}
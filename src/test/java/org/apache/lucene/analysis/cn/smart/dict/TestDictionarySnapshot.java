@@ -0,0 +1,103 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestDictionarySnapshot extends TestCase {
+
+	public void testInitialSnapshotUsesSingletons() {
+		DictionarySnapshot snapshot = DictionarySnapshot.getCurrent();
+		assertSame(snapshot, DictionarySnapshot.getCurrent());
+		assertSame(WordDictionary.getInstance(), snapshot.getWordDictionary());
+		assertSame(BigramDictionary.getInstance(), snapshot
+				.getBigramDictionary());
+	}
+
+	public void testPublishReplacesCurrent() {
+		DictionarySnapshot old = DictionarySnapshot.getCurrent();
+		DictionarySnapshot fresh = new DictionarySnapshot(old
+				.getWordDictionary(), old.getBigramDictionary());
+		assertSame(old, DictionarySnapshot.publish(fresh));
+		assertSame(fresh, DictionarySnapshot.getCurrent());
+		DictionarySnapshot.publish(old);
+	}
+
+	public void testSegmentationDuringSwap() throws InterruptedException {
+		final String sentence = "我购买了道具和服装";
+		final HHMMSegmenter segmenter = new HHMMSegmenter();
+		final String expected = offsets(segmenter.process(sentence));
+		final DictionarySnapshot old = DictionarySnapshot.getCurrent();
+		final boolean[] failed = new boolean[1];
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int r = 0; r < 200; r++) {
+						List<SegToken> result = segmenter.process(sentence);
+						if (!expected.equals(offsets(result)))
+							failed[0] = true;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int r = 0; r < 200; r++)
+			DictionarySnapshot.publish(new DictionarySnapshot(old
+					.getWordDictionary(), old.getBigramDictionary()));
+		for (Thread thread : threads)
+			thread.join();
+		DictionarySnapshot.publish(old);
+		assertFalse(failed[0]);
+	}
+
+	/**
+	 * 编译生成*.bin之后修改coredict.dct，重新加载时不使用旧的coredict.bin，新加入的词生效
+	 */
+	public void testReloadChangedDirectory() throws Exception {
+		File dir = File.createTempFile("dict", "");
+		dir.delete();
+		dir.mkdirs();
+		DictionarySnapshot old = DictionarySnapshot.getCurrent();
+		try {
+			File dctFile = new File(dir, "coredict.dct");
+			TestDictionaryCompiler.writeDct(dctFile, new String[] { "中华", "人民",
+					"，" }, new int[] { 100, 100, 1 });
+			TestDictionaryCompiler.writeDct(new File(dir, "bigramdict.dct"),
+					new String[] { "中华@人民" }, new int[] { 10 });
+			assertTrue(DictionaryCompiler.compile(dir.getPath(), dir.getPath()));
+
+			HHMMSegmenter segmenter = new HHMMSegmenter();
+			String sentence = "中华人民";
+			DictionarySnapshot.reload(dir.getPath());
+			assertEquals("-1-0 0-2 2-4 4-5 ", offsets(segmenter.process(sentence)));
+
+			TestDictionaryCompiler.writeDct(dctFile, new String[] { "中华", "人民",
+					"中华人民", "，" }, new int[] { 100, 100, 1000, 1 });
+			// 保证源文件比coredict.bin新，不依赖文件系统时间戳的精度
+			dctFile.setLastModified(new File(dir, DictionaryCompiler.WORD_BIN)
+					.lastModified() + 2000);
+			DictionarySnapshot snapshot = DictionarySnapshot.reload(dir
+					.getPath());
+			assertEquals(1000, snapshot.getWordDictionary().getFrequency(
+					"中华人民".toCharArray()));
+			assertEquals("-1-0 0-4 4-5 ", offsets(segmenter.process(sentence)));
+		} finally {
+			DictionarySnapshot.publish(old);
+			File[] files = dir.listFiles();
+			for (int i = 0; i < files.length; i++)
+				files[i].delete();
+			dir.delete();
+		}
+	}
+
+	private static String offsets(List<SegToken> path) {
+		StringBuilder buffer = new StringBuilder();
+		for (SegToken token : path)
+			buffer.append(token.startOffset).append('-').append(token.endOffset)
+					.append(' ');
+		return buffer.toString();
+	}
+
+}
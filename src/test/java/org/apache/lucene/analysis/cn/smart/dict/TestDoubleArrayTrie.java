@@ -0,0 +1,76 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestDoubleArrayTrie extends TestCase {
+
+	/** 字母表很小，随机的词有很多公共前缀，也有一个词是另一个词前缀的情况 */
+	private static final String ALPHABET = "abcde中国人民";
+
+	/**
+	 * 用随机的词构建trie，在随机文本的每个位置比较commonPrefixSearch和exactMatch与逐个子串查表的结果
+	 */
+	public void testSameAsBruteForce() {
+		Random random = new Random(42);
+		Map<String, Integer> keys = new HashMap<String, Integer>();
+		while (keys.size() < 3000)
+			keys.put(randomString(random, 1 + random.nextInt(6)), keys.size());
+		char[][] keyArray = new char[keys.size()][];
+		int[] values = new int[keys.size()];
+		int n = 0;
+		for (Map.Entry<String, Integer> entry : keys.entrySet()) {
+			keyArray[n] = entry.getKey().toCharArray();
+			values[n] = entry.getValue();
+			n++;
+		}
+		DoubleArrayTrie trie = DoubleArrayTrie.build(keyArray, values);
+
+		int[] ends = new int[8], found = new int[8];
+		for (int round = 0; round < 2000; round++) {
+			char[] text = (randomString(random, 10) + "xyz").toCharArray();
+			for (int start = 0; start < text.length; start++) {
+				int count = trie.commonPrefixSearch(text, start, text.length,
+						ends, found);
+				int expected = 0;
+				for (int end = start + 1; end <= text.length; end++) {
+					Integer value = keys.get(new String(text, start, end - start));
+					if (value != null) {
+						assertEquals(end, ends[expected]);
+						assertEquals(value.intValue(), found[expected]);
+						expected++;
+					}
+					assertEquals(value == null ? -1 : value.intValue(), trie
+							.exactMatch(text, start, end));
+				}
+				assertEquals(expected, count);
+			}
+		}
+	}
+
+	/** 结果数组放不下时只给出最短的几个词 */
+	public void testResultLimit() {
+		DoubleArrayTrie trie = DoubleArrayTrie.build(new char[][] {
+				"a".toCharArray(), "ab".toCharArray(), "abc".toCharArray() },
+				new int[] { 0, 1, 2 });
+		int[] ends = new int[2], values = new int[2];
+		char[] text = "abcd".toCharArray();
+		assertEquals(2, trie.commonPrefixSearch(text, 0, text.length, ends,
+				values));
+		assertEquals(2, ends[1]);
+		assertEquals(1, values[1]);
+		assertEquals(-1, trie.exactMatch(text, 0, 4));
+		assertEquals(-1, trie.exactMatch(text, 0, 0));
+	}
+
+	private static String randomString(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		return new String(chars);
+	}
+
+}
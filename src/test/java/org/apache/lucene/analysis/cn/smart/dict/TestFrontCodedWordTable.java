@@ -0,0 +1,47 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import junit.framework.TestCase;
+
+public class TestFrontCodedWordTable extends TestCase {
+
+	/**
+	 * 词典中的每个词都能找到，编号和词频与WordDictionary相同；词的各种变形(去掉、修改或者增加最后一个字)的结果也与WordDictionary相同
+	 */
+	public void testSameAsWordDictionary() {
+		WordDictionary dictionary = WordDictionary.getInstance();
+		FrontCodedWordTable table = dictionary.toFrontCoded();
+		assertEquals(dictionary.getWordCount(), table.getWordCount());
+		char[] word = new char[dictionary.getMaxWordLength() + 1];
+		char[] suffix = new char[word.length];
+		for (int row = 0; row < dictionary.getRowCount(); row++) {
+			word[0] = dictionary.getRowChar(row);
+			for (int w = dictionary.getRowStart(row); w < dictionary
+					.getRowStart(row + 1); w++) {
+				int length = dictionary.getWordSuffix(w, suffix) + 1;
+				System.arraycopy(suffix, 0, word, 1, length - 1);
+				assertEquals(w, table.find(word, 0, length));
+				assertEquals(dictionary.getWordFrequency(w), table
+						.getFrequency(word, 0, length));
+
+				assertSameFrequency(dictionary, table, word, length - 1);
+				word[length] = '的';
+				assertSameFrequency(dictionary, table, word, length + 1);
+				char last = word[length - 1];
+				word[length - 1] = (char) (last + 1);
+				assertSameFrequency(dictionary, table, word, length);
+				word[length - 1] = (char) (last - 1);
+				assertSameFrequency(dictionary, table, word, length);
+				word[length - 1] = last;
+			}
+		}
+		assertEquals(0, table.getFrequency("ＡＢ".toCharArray(), 0, 2));
+		assertTrue(table.estimateHeapBytes() > 0);
+	}
+
+	private static void assertSameFrequency(WordDictionary dictionary,
+			FrontCodedWordTable table, char[] word, int length) {
+		assertEquals(new String(word, 0, length), dictionary.getFrequency(word,
+				0, length), table.getFrequency(word, 0, length));
+	}
+
+}
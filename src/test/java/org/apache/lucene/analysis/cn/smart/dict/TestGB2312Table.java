@@ -0,0 +1,119 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 查表的GB2312转换与原来经过字符集编码、解码的结果相同
+ */
+public class TestGB2312Table extends TestCase {
+
+	private final AbstractDictionary dictionary = new UserDictionary();
+
+	public void testCharToId() throws UnsupportedEncodingException {
+		for (int c = 0; c < 65536; c++) {
+			char ch = (char) c;
+			byte[] buffer = Character.toString(ch).getBytes("GB2312");
+			short expected = -1;
+			if (buffer.length == 2)
+				expected = (short) (((buffer[0] & 0x0FF) - 161) * 94
+						+ (buffer[1] & 0x0FF) - 161);
+			assertEquals("char " + c, expected, dictionary.getGB2312Id(ch));
+		}
+	}
+
+	public void testIdToChar() throws UnsupportedEncodingException {
+		for (int id = -1; id <= AbstractDictionary.GB2312_CHAR_NUM + 1; id++) {
+			String expected = "";
+			if (id >= 0 && id <= AbstractDictionary.GB2312_CHAR_NUM)
+				expected = new String(new byte[] { (byte) (id / 94 + 161),
+						(byte) (id % 94 + 161) }, "GB2312");
+			assertEquals("id " + id, expected, dictionary.getCCByGB2312Id(id));
+		}
+		assertEquals('啊', dictionary
+				.getCharByGB2312Id(AbstractDictionary.GB2312_FIRST_CHAR));
+	}
+
+	/**
+	 * getCharByGB2312Id只对有效字符返回非0，有字符的区中无效的位(解码为'\uFFFD')也返回0
+	 */
+	public void testCharByIdOnlyValid() throws UnsupportedEncodingException {
+		int invalidInPopulatedRows = 0;
+		for (int id = 0; id < AbstractDictionary.GB2312_CHAR_NUM; id++) {
+			String decoded = new String(new byte[] { (byte) (id / 94 + 161),
+					(byte) (id % 94 + 161) }, "GB2312");
+			char expected = 0;
+			if (decoded.length() == 1 && decoded.charAt(0) != '\uFFFD')
+				expected = decoded.charAt(0);
+			else if (decoded.length() == 1)
+				invalidInPopulatedRows++;
+			assertEquals("id " + id, expected, dictionary.getCharByGB2312Id(id));
+		}
+		assertTrue(invalidInPopulatedRows > 0);
+	}
+
+	public void testDecode() throws UnsupportedEncodingException {
+		Random random = new Random(3);
+		char[] chars = new char[64];
+		for (int round = 0; round < 10000; round++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(20);
+			for (int i = 0; i < length; i++) {
+				char ch = random.nextInt(4) == 0 ? (char) random.nextInt(128)
+						: dictionary.getCharByGB2312Id(random.nextInt(94 * 87));
+				if (dictionary.getGB2312Id(ch) >= 0 || ch < 128)
+					text.append(ch);
+			}
+			byte[] bytes = text.toString().getBytes("GB2312");
+			int count = AbstractDictionary.decodeGB2312(bytes, 0,
+					bytes.length, chars);
+			assertEquals(new String(bytes, "GB2312"), new String(chars, 0,
+					count));
+		}
+	}
+
+	/**
+	 * 所有0x81-0xFE与0x40-0xFE的字节对，包括无效的和没有字符的，以及末尾单独的或者后面是ASCII的高位字节
+	 */
+	public void testDecodeAllPairs() throws UnsupportedEncodingException {
+		char[] chars = new char[4];
+		for (int b0 = 0x81; b0 <= 0xFE; b0++) {
+			for (int b1 = 0x40; b1 <= 0xFE; b1++)
+				assertSameDecoding(new byte[] { (byte) b0, (byte) b1 }, chars);
+		}
+		for (int b0 = 0x80; b0 <= 0xFF; b0++) {
+			assertSameDecoding(new byte[] { (byte) b0 }, chars);
+			assertSameDecoding(new byte[] { (byte) b0, 'a' }, chars);
+			assertSameDecoding(new byte[] { 'a', (byte) b0 }, chars);
+		}
+	}
+
+	/**
+	 * 随机的字节序列，无效的字节对与有效字符相邻
+	 */
+	public void testDecodeRandomBytes() throws UnsupportedEncodingException {
+		Random random = new Random(4);
+		char[] chars = new char[32];
+		for (int round = 0; round < 100000; round++) {
+			byte[] bytes = new byte[random.nextInt(chars.length)];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(128)
+						: 0x80 + random.nextInt(128));
+			assertSameDecoding(bytes, chars);
+		}
+	}
+
+	private static void assertSameDecoding(byte[] bytes, char[] chars)
+			throws UnsupportedEncodingException {
+		int count = AbstractDictionary.decodeGB2312(bytes, 0, bytes.length,
+				chars);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes)
+			hex.append(Integer.toHexString(b & 0xFF)).append(' ');
+		assertEquals(hex.toString(), new String(bytes, "GB2312"), new String(
+				chars, 0, count));
+	}
+
+}
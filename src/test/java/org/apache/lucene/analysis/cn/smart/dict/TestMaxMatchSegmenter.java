@@ -0,0 +1,84 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.cn.AnalysisTestUtil;
+import org.apache.lucene.analysis.cn.SmartChineseAnalyzer;
+import org.apache.lucene.analysis.cn.smart.SegmentationMode;
+
+public class TestMaxMatchSegmenter extends TestCase {
+
+	private final MaxMatchSegmenter segmenter = new MaxMatchSegmenter();
+
+	private final SegmentationContext context = new SegmentationContext();
+
+	public void testOverlapAmbiguity() {
+		// 正向是"研究生/命/起源"，逆向是"研究/生命/起源"，单字词少的优先
+		assertEquals("研究 生命 起源 ", segment("研究生命起源"));
+	}
+
+	public void testSameAsForwardAndBackward() {
+		assertEquals("我 购买 了 道具 和 服装 ", segment("我购买了道具和服装"));
+	}
+
+	public void testMixedText() {
+		// 字母串、数字串和空白的处理与HHMM相同
+		assertEquals("lucene 2 . 4 . 1 版本 ", segment("Lucene 2.4.1版本"));
+	}
+
+	/**
+	 * 句子最后一个位置没有Token开始时(空白、数字串、字母串、连续的标点)，结果仍然覆盖整个句子
+	 */
+	public void testTrailingNonHanzi() {
+		String[] sentences = { "研究生命起源\n", "我购买了2009", "我购买了Lucene",
+				"我购买了。。", "我购买了 ABC 123\r\n" };
+		for (int i = 0; i < sentences.length; i++) {
+			// 空白不属于任何Token
+			assertEquals(sentences[i].replaceAll("\\s", ""), join(sentences[i]));
+		}
+	}
+
+	public void testAnalyzer() throws IOException {
+		SmartChineseAnalyzer analyzer = new SmartChineseAnalyzer(false,
+				SegmentationMode.MAXIMUM_MATCHING);
+		assertEquals(SegmentationMode.MAXIMUM_MATCHING, analyzer
+				.getSegmentationMode());
+		assertEquals("研究/0-2 生命/2-4 起源/4-6 ,/6-7 我/7-8 购买/8-10 ",
+				AnalysisTestUtil.describe(analyzer, "研究生命起源，我购买"));
+		assertEquals(SegmentationMode.HHMM, new SmartChineseAnalyzer()
+				.getSegmentationMode());
+	}
+
+	private String segment(String sentence) {
+		char[] chars = sentence.toCharArray();
+		int count = segmenter.process(chars, 0, chars.length, context);
+		SegGraph segGraph = context.getSegGraph();
+		StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			int index = context.getBestPathIndex(i);
+			int start = segGraph.getStartOffset(index);
+			int end = segGraph.getEndOffset(index);
+			buffer.append(sentence.substring(start, end).toLowerCase()).append(
+					' ');
+		}
+		return buffer.toString();
+	}
+
+	/** 分词结果中各个词的原文直接相连 */
+	private String join(String sentence) {
+		char[] chars = sentence.toCharArray();
+		int count = segmenter.process(chars, 0, chars.length, context);
+		SegGraph segGraph = context.getSegGraph();
+		StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			int index = context.getBestPathIndex(i);
+			buffer.append(chars, segGraph.getStartOffset(index), segGraph
+					.getEndOffset(index)
+					- segGraph.getStartOffset(index));
+		}
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestUserDictionary extends TestCase {
+
+	private static final String SENTENCE = "我喜欢三星盖乐世手机";
+
+	private UserDictionary userDict;
+
+	private DictionarySnapshot snapshot;
+
+	protected void setUp() {
+		DictionarySnapshot current = DictionarySnapshot.getCurrent();
+		userDict = new UserDictionary();
+		snapshot = new DictionarySnapshot(current.getWordDictionary(), current
+				.getBigramDictionary(), userDict);
+	}
+
+	public void testAddAndRemove() {
+		HHMMSegmenter segmenter = new HHMMSegmenter();
+		assertFalse(offsets(segmenter.process(SENTENCE, snapshot)).contains(
+				" 5-8 "));
+		userDict.add("盖乐世", 1000);
+		assertTrue(userDict.contains("盖乐世"));
+		assertTrue(offsets(segmenter.process(SENTENCE, snapshot)).contains(
+				" 5-8 "));
+		userDict.remove("盖乐世");
+		assertFalse(userDict.contains("盖乐世"));
+		assertEquals(0, userDict.size());
+		assertFalse(offsets(segmenter.process(SENTENCE, snapshot)).contains(
+				" 5-8 "));
+	}
+
+	public void testBatch() {
+		String[] words = UserDictionaryBenchmark.randomWords(1000, new Random(1));
+		int[] frequencies = new int[words.length];
+		for (int i = 0; i < words.length; i++)
+			frequencies[i] = i;
+		userDict.addAll(words, frequencies);
+		userDict.addAll(new String[] { "盖乐世", "盖乐世" }, new int[] { 1, 2 });
+		assertEquals(1001, userDict.size());
+		char[] chars = "盖乐世".toCharArray();
+		assertEquals(2, userDict.getFrequency(chars, 0, chars.length));
+		for (int i = 0; i < words.length; i++)
+			assertTrue(userDict.contains(words[i]));
+
+		String[] half = new String[500];
+		System.arraycopy(words, 0, half, 0, half.length);
+		userDict.removeAll(half);
+		assertEquals(501, userDict.size());
+		assertFalse(userDict.contains(words[0]));
+		assertTrue(userDict.contains(words[999]));
+	}
+
+	public void testPrefixSearch() {
+		userDict.addAll(new String[] { "三星", "三星盖乐世", "乐世" }, new int[] {
+				10, 20, 30 });
+		char[] sentence = SENTENCE.toCharArray();
+		int[] ends = new int[userDict.getMaxWordLength()];
+		int[] freqs = new int[ends.length];
+		assertEquals(2, userDict.prefixSearch(sentence, 3, sentence.length,
+				ends, freqs));
+		assertEquals(5, ends[0]);
+		assertEquals(10, freqs[0]);
+		assertEquals(8, ends[1]);
+		assertEquals(20, freqs[1]);
+		// 词不能超出end
+		assertEquals(1, userDict.prefixSearch(sentence, 3, 7, ends, freqs));
+		assertEquals(0, userDict.prefixSearch(sentence, 0, sentence.length,
+				ends, freqs));
+	}
+
+	/**
+	 * 用户词可以以字母开头或者包含字母，在任何类型的字符处都会查找；在字母串中间结束的词不使用，分词结果仍然覆盖整个句子
+	 */
+	public void testMixedLetterAndHanzi() {
+		String sentence = "我买了一件T恤和A股的卡拉OK机";
+		HHMMSegmenter segmenter = new HHMMSegmenter();
+		String before = offsets(segmenter.process(sentence, snapshot));
+		assertFalse(before.contains(" 5-7 "));
+		assertFalse(before.contains(" 8-10 "));
+		userDict.addAll(new String[] { "T恤", "A股", "卡拉OK", "卡拉O" },
+				new int[] { 1000, 1000, 1000, 100000 });
+		List<SegToken> path = segmenter.process(sentence, snapshot);
+		String after = offsets(path);
+		assertTrue(after, after.contains(" 5-7 "));
+		assertTrue(after, after.contains(" 8-10 "));
+		assertTrue(after, after.contains(" 11-15 "));
+		assertFalse(after, after.contains(" 11-14 "));
+		for (int i = 1; i < path.size(); i++)
+			assertEquals(after, path.get(i - 1).endOffset, path.get(i).startOffset);
+		assertEquals(sentence.length(), path.get(path.size() - 1).startOffset);
+	}
+
+	public void testConcurrentAddAndRead() throws InterruptedException {
+		final String[] words = UserDictionaryBenchmark.randomWords(2000,
+				new Random(2));
+		final boolean[] failed = new boolean[1];
+		Thread reader = new Thread() {
+			public void run() {
+				// 添加之后的词一直可以查到，核心词典中的词不受影响
+				HHMMSegmenter segmenter = new HHMMSegmenter();
+				String expected = offsets(segmenter.process(SENTENCE));
+				for (int i = 0; i < words.length; i++) {
+					while (!userDict.contains(words[i]))
+						Thread.yield();
+					if (!expected.equals(offsets(segmenter.process(SENTENCE,
+							snapshot))))
+						failed[0] = true;
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < words.length; i += 100) {
+			String[] batch = new String[100];
+			System.arraycopy(words, i, batch, 0, batch.length);
+			userDict.addAll(batch, new int[batch.length]);
+		}
+		reader.join();
+		assertFalse(failed[0]);
+	}
+
+	private static String offsets(List<SegToken> path) {
+		StringBuilder buffer = new StringBuilder(" ");
+		for (SegToken token : path)
+			buffer.append(token.startOffset).append('-').append(token.endOffset)
+					.append(' ');
+		return buffer.toString();
+	}
+
+}
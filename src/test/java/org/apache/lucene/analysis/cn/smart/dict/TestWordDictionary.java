@@ -0,0 +1,97 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestWordDictionary extends TestCase {
+
+	private static final String TEXT = "中华人民共和国成立于一九四九年十月一日。研究生命起源是一个古老的课题。"
+			+ "我购买了道具和服装，他从马上下来，把门把手修好了。";
+
+	/**
+	 * prefixSearch给出的词与逐个长度调用getFrequency的结果相同，按词长递增
+	 */
+	public void testPrefixSearch() {
+		WordDictionary dictionary = WordDictionary.getInstance();
+		char[] text = TEXT.toCharArray();
+		int[] ends = new int[dictionary.getMaxWordLength()];
+		int[] freqs = new int[ends.length];
+		for (int start = 0; start < text.length; start++) {
+			int count = dictionary.prefixSearch(text, start, text.length, ends,
+					freqs);
+			int expected = 0;
+			for (int end = start + 1; end <= text.length
+					&& end - start <= ends.length; end++) {
+				if (!dictionary.isExist(text, start, end - start))
+					continue;
+				assertEquals(end, ends[expected]);
+				assertEquals(dictionary.getFrequency(text, start, end - start),
+						freqs[expected]);
+				expected++;
+			}
+			assertEquals(expected, count);
+		}
+	}
+
+	/**
+	 * getPrefixMatch返回行内第一个以前缀开头、编号不小于knowStart的词，与顺序查找的结果相同
+	 */
+	public void testGetPrefixMatch() {
+		WordDictionary dictionary = WordDictionary.getInstance();
+		Random random = new Random(42);
+		char[] suffix = new char[dictionary.getMaxWordLength()];
+		for (int row = 0; row < dictionary.getRowCount(); row++) {
+			int rowStart = dictionary.getRowStart(row);
+			int rowLength = dictionary.getRowStart(row + 1) - rowStart;
+			if (rowLength == 0)
+				continue;
+			// 取行中的一个词，用它的各个前缀查找
+			char[] word = wordOf(dictionary, row, rowStart
+					+ random.nextInt(rowLength), suffix);
+			for (int length = 1; length <= word.length; length++) {
+				char[] prefix = new char[length];
+				System.arraycopy(word, 0, prefix, 0, length);
+				int expected = firstMatch(dictionary, row, prefix, 0, suffix);
+				assertTrue(expected >= 0);
+				assertEquals(expected, dictionary.getPrefixMatch(prefix));
+				int knowStart = random.nextInt(rowLength + 1);
+				assertEquals(firstMatch(dictionary, row, prefix, knowStart,
+						suffix), dictionary.getPrefixMatch(prefix, knowStart));
+			}
+			// 加上一个不会出现在词中的字符后没有匹配
+			char[] missing = new char[word.length + 1];
+			System.arraycopy(word, 0, missing, 0, word.length);
+			missing[word.length] = '\uFFFF';
+			assertEquals(-1, dictionary.getPrefixMatch(missing));
+		}
+		assertEquals(-1, dictionary.getPrefixMatch("\uFFFF".toCharArray()));
+	}
+
+	private static char[] wordOf(WordDictionary dictionary, int row,
+			int wordId, char[] suffix) {
+		int length = dictionary.getWordSuffix(wordId, suffix);
+		char[] word = new char[length + 1];
+		word[0] = dictionary.getRowChar(row);
+		System.arraycopy(suffix, 0, word, 1, length);
+		return word;
+	}
+
+	/** 顺序查找行内第一个以prefix开头、编号不小于knowStart的词，返回它在行内的位置 */
+	private static int firstMatch(WordDictionary dictionary, int row,
+			char[] prefix, int knowStart, char[] suffix) {
+		int rowStart = dictionary.getRowStart(row);
+		for (int w = rowStart + knowStart; w < dictionary.getRowStart(row + 1); w++) {
+			char[] word = wordOf(dictionary, row, w, suffix);
+			if (word.length < prefix.length)
+				continue;
+			int i = 0;
+			while (i < prefix.length && word[i] == prefix[i])
+				i++;
+			if (i == prefix.length)
+				return w - rowStart;
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.apache.lucene.analysis.cn.smart.dict;
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.cn.Benchmarks;
+
+/**
+ * 用户词典的规模对性能的影响：成批添加10万个随机词所用的时间，以及用户词典为空和有10万个词时一段语料的分词时间。
+ */
+public class UserDictionaryBenchmark {
+
+	private static final int WORD_COUNT = 100000;
+
+	private static final int ROUNDS = 2000;
+
+	public static void main(String[] args) throws Exception {
+		final String[] words = randomWords(WORD_COUNT, new Random(42));
+		final int[] frequencies = new int[words.length];
+		for (int i = 0; i < frequencies.length; i++)
+			frequencies[i] = 100 + i % 1000;
+
+		final UserDictionary userDict = new UserDictionary();
+		long addTime = Benchmarks.time(3, new Benchmarks.Task() {
+			public long run() {
+				userDict.clear();
+				userDict.addAll(words, frequencies);
+				return userDict.size();
+			}
+		})[0];
+		System.out.println("addAll " + words.length + " words: " + addTime
+				/ 1000000 + " ms, size " + userDict.size());
+
+		DictionarySnapshot current = DictionarySnapshot.getCurrent();
+		DictionarySnapshot empty = new DictionarySnapshot(current
+				.getWordDictionary(), current.getBigramDictionary(),
+				new UserDictionary());
+		DictionarySnapshot loaded = new DictionarySnapshot(current
+				.getWordDictionary(), current.getBigramDictionary(), userDict);
+		long[] times = Benchmarks.time(2, segmentText(empty),
+				segmentText(loaded));
+		System.out.println("empty user dictionary: " + times[0] / ROUNDS
+				/ 1000 + " us/text");
+		System.out.println(words.length + " user words: " + times[1] / ROUNDS
+				/ 1000 + " us/text");
+	}
+
+	/** 用snapshot中的词典将语料分词ROUNDS遍 */
+	private static Benchmarks.Task segmentText(final DictionarySnapshot snapshot) {
+		final HHMMSegmenter segmenter = new HHMMSegmenter();
+		return new Benchmarks.Task() {
+			public long run() {
+				long count = 0;
+				for (int r = 0; r < ROUNDS; r++)
+					count += segmenter.process(DictionaryBenchmark.TEXT, snapshot)
+							.size();
+				return count;
+			}
+		};
+	}
+
+	/** 2到6个常用汉字组成的随机词 */
+	static String[] randomWords(int count, Random random) {
+		String[] words = new String[count];
+		char[] buffer = new char[6];
+		for (int i = 0; i < count; i++) {
+			int length = 2 + random.nextInt(5);
+			for (int j = 0; j < length; j++)
+				buffer[j] = (char) (0x4E00 + random.nextInt(0x51A5));
+			words[i] = new String(buffer, 0, length);
+		}
+		return words;
+	}
+
+}